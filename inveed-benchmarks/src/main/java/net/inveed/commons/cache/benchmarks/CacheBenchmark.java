@@ -0,0 +1,120 @@
+package net.inveed.commons.cache.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import net.inveed.commons.cache.Cache;
+import net.inveed.commons.cache.CachePolicy;
+
+/**
+ * Mixed get/put load of {@link Cache}, one benchmark per storage engine.
+ * Hit rate is controlled by the key space: with keySpaceFactor 1 all keys fit into the cache,
+ * with greater factors only a part of them does, and the hit rate depends on the distribution.
+ *
+ * Throughput and latency percentiles are reported by both modes; allocation rate by the GC profiler:
+ * <pre>java -jar target/benchmarks.jar CacheBenchmark -t 16 -prof gc</pre>
+ * Use {@link ThreadScaling} to run with 1 to 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheBenchmark {
+	// Length of per-thread key sequences, power of two
+	private static final int SEQUENCE_LENGTH = 1 << 16;
+	private static final int SEQUENCE_MASK = SEQUENCE_LENGTH - 1;
+
+	@Param({ "LRU", "STRIPED_LRU", "TINY_LFU", "ARRAY_LRU" })
+	public CachePolicy policy;
+
+	@Param({ "UNIFORM", "ZIPFIAN" })
+	public KeyDistribution distribution;
+
+	@Param({ "100", "90", "50" })
+	public int readPercent;
+
+	@Param({ "1", "4" })
+	public int keySpaceFactor;
+
+	@Param({ "100000" })
+	public int maximumSize;
+
+	Cache<Integer, Integer> cache;
+	Integer[] keys;
+	private final Function<Integer, Integer> loader = k -> k;
+
+	@State(Scope.Thread)
+	public static class Operations {
+		int[] keys;
+		boolean[] reads;
+		int position;
+
+		@Setup(Level.Trial)
+		public void setUp(CacheBenchmark benchmark, ThreadParams threads) {
+			long seed = threads.getThreadIndex();
+			this.keys = benchmark.distribution.generate(SEQUENCE_LENGTH, benchmark.keys.length, seed);
+			this.reads = new boolean[SEQUENCE_LENGTH];
+			Random random = new Random(seed);
+			for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+				this.reads[i] = random.nextInt(100) < benchmark.readPercent;
+			}
+			// Threads start at different positions even with the same sequences
+			this.position = random.nextInt(SEQUENCE_LENGTH);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.keys = Keys.boxed(this.maximumSize * this.keySpaceFactor);
+		this.cache = new Cache<>(this.policy.<Integer, Integer> createStorage());
+		this.cache.setMaxSize(this.maximumSize);
+		for (int i = 0; i < this.maximumSize; i++) {
+			this.cache.put(this.keys[i], this.keys[i]);
+		}
+	}
+
+	/**
+	 * Reads are plain gets, misses are not loaded.
+	 */
+	@Benchmark
+	public Integer getPut(Operations ops) {
+		int i = ops.position++ & SEQUENCE_MASK;
+		Integer key = this.keys[ops.keys[i]];
+		if (ops.reads[i]) {
+			return this.cache.get(key);
+		}
+		this.cache.put(key, key);
+		return key;
+	}
+
+	/**
+	 * Reads load missing values, as caches are used by applications.
+	 */
+	@Benchmark
+	public Integer readThrough(Operations ops) {
+		int i = ops.position++ & SEQUENCE_MASK;
+		Integer key = this.keys[ops.keys[i]];
+		if (ops.reads[i]) {
+			return this.cache.get(key, this.loader);
+		}
+		this.cache.put(key, key);
+		return key;
+	}
+}
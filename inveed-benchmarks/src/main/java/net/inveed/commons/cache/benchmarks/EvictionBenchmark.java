@@ -0,0 +1,71 @@
+package net.inveed.commons.cache.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import net.inveed.commons.cache.Cache;
+import net.inveed.commons.cache.CachePolicy;
+
+/**
+ * Puts of keys which are never in the cache, so every put evicts an entry.
+ * Tail latency (SampleTime mode) shows stalls caused by eviction, the GC profiler shows
+ * garbage produced per evicted entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvictionBenchmark {
+	// Keys are taken in a cycle, the pool is much larger than the cache
+	private static final int KEY_POOL_SIZE = 1 << 22;
+	private static final int KEY_POOL_MASK = KEY_POOL_SIZE - 1;
+
+	@Param({ "LRU", "STRIPED_LRU", "TINY_LFU", "ARRAY_LRU" })
+	public CachePolicy policy;
+
+	@Param({ "1000", "100000" })
+	public int maximumSize;
+
+	Cache<Integer, Integer> cache;
+	Integer[] keys;
+
+	@State(Scope.Thread)
+	public static class Operations {
+		int position;
+
+		@Setup(Level.Trial)
+		public void setUp(ThreadParams threads) {
+			// Threads put different keys
+			this.position = (int) ((long) KEY_POOL_SIZE * threads.getThreadIndex() / threads.getThreadCount());
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.keys = Keys.boxed(KEY_POOL_SIZE);
+		this.cache = new Cache<>(this.policy.<Integer, Integer> createStorage());
+		this.cache.setMaxSize(this.maximumSize);
+	}
+
+	@Benchmark
+	public Integer put(Operations ops) {
+		Integer key = this.keys[ops.position++ & KEY_POOL_MASK];
+		this.cache.put(key, key);
+		return key;
+	}
+}
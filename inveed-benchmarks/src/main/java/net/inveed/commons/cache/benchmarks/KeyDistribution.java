@@ -0,0 +1,70 @@
+package net.inveed.commons.cache.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Distribution of keys requested by benchmarks.
+ * Key sequences are generated before measurement, so generation doesn't affect results.
+ */
+public enum KeyDistribution {
+	/**
+	 * All keys are equally popular.
+	 */
+	UNIFORM,
+	/**
+	 * Zipfian distribution with skew 0.99, as in YCSB: a few keys are very popular, most keys are rarely used.
+	 * Popular keys are scattered over the key space.
+	 */
+	ZIPFIAN;
+
+	private static final double SKEW = 0.99;
+
+	/**
+	 * @return sequence of key indexes from 0 (inclusive) to keySpace (exclusive)
+	 */
+	public int[] generate(int length, int keySpace, long seed) {
+		Random random = new Random(seed);
+		int[] ret = new int[length];
+		if (this == UNIFORM) {
+			for (int i = 0; i < length; i++) {
+				ret[i] = random.nextInt(keySpace);
+			}
+			return ret;
+		}
+
+		// Cumulative probabilities of ranks
+		double[] cdf = new double[keySpace];
+		double sum = 0;
+		for (int i = 0; i < keySpace; i++) {
+			sum += 1 / Math.pow(i + 1, SKEW);
+			cdf[i] = sum;
+		}
+		// The same permutation for all threads, so they agree on popular keys
+		int[] keys = new int[keySpace];
+		for (int i = 0; i < keySpace; i++) {
+			keys[i] = i;
+		}
+		Random shuffle = new Random(keySpace);
+		for (int i = keySpace - 1; i > 0; i--) {
+			int j = shuffle.nextInt(i + 1);
+			int t = keys[i];
+			keys[i] = keys[j];
+			keys[j] = t;
+		}
+		for (int i = 0; i < length; i++) {
+			double p = random.nextDouble() * sum;
+			int rank = 0;
+			int high = keySpace - 1;
+			while (rank < high) {
+				int mid = (rank + high) >>> 1;
+				if (cdf[mid] < p) {
+					rank = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			ret[i] = keys[rank];
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,17 @@
+package net.inveed.commons.cache.benchmarks;
+
+/**
+ * Preallocated boxed keys, so benchmarks don't measure boxing.
+ */
+final class Keys {
+	private Keys() {
+	}
+
+	static Integer[] boxed(int count) {
+		Integer[] ret = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			ret[i] = Integer.valueOf(i);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,87 @@
+package net.inveed.commons.cache.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import net.inveed.commons.cache.CachePolicy;
+import net.inveed.commons.cache.ICacheStorage;
+import net.inveed.commons.cache.LRUStorage;
+
+/**
+ * Storage engines without {@link net.inveed.commons.cache.Cache} on top: hits and updates of present keys,
+ * so the storage doesn't grow and eviction isn't involved. Shows costs of the read buffer and of the LRU list
+ * maintenance, compare {@link LRUStorage} with other engines by the policy parameter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+	private static final int SEQUENCE_LENGTH = 1 << 16;
+	private static final int SEQUENCE_MASK = SEQUENCE_LENGTH - 1;
+
+	@Param({ "LRU", "STRIPED_LRU", "TINY_LFU", "ARRAY_LRU" })
+	public CachePolicy policy;
+
+	@Param({ "UNIFORM", "ZIPFIAN" })
+	public KeyDistribution distribution;
+
+	@Param({ "100000" })
+	public int size;
+
+	ICacheStorage<Integer, Integer> storage;
+	Integer[] keys;
+
+	@State(Scope.Thread)
+	public static class Operations {
+		int[] keys;
+		int position;
+
+		@Setup(Level.Trial)
+		public void setUp(StorageBenchmark benchmark, ThreadParams threads) {
+			this.keys = benchmark.distribution.generate(SEQUENCE_LENGTH, benchmark.size, threads.getThreadIndex());
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.keys = Keys.boxed(this.size);
+		this.storage = this.policy.createStorage();
+		this.storage.shrink(this.size);
+		for (Integer key : this.keys) {
+			this.storage.put(key, key);
+		}
+	}
+
+	@Benchmark
+	public Integer access(Operations ops) {
+		return this.storage.access(this.keys[ops.keys[ops.position++ & SEQUENCE_MASK]]);
+	}
+
+	@Benchmark
+	public Integer get(Operations ops) {
+		return this.storage.get(this.keys[ops.keys[ops.position++ & SEQUENCE_MASK]]);
+	}
+
+	@Benchmark
+	public Integer update(Operations ops) {
+		Integer key = this.keys[ops.keys[ops.position++ & SEQUENCE_MASK]];
+		this.storage.put(key, key);
+		return key;
+	}
+}
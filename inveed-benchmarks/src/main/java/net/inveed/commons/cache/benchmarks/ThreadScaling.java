@@ -0,0 +1,29 @@
+package net.inveed.commons.cache.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks selected by the usual JMH command line with 1, 2, 4, 8, 16, 32 and 64 threads one after another:
+ * <pre>java -cp target/benchmarks.jar net.inveed.commons.cache.benchmarks.ThreadScaling CacheBenchmark.getPut -p policy=LRU,TINY_LFU</pre>
+ * Thread count specified by -t is ignored.
+ */
+public final class ThreadScaling {
+	private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+	private ThreadScaling() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		for (int threads : THREADS) {
+			Options options = new OptionsBuilder()
+					.parent(cmd)
+					.threads(threads)
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
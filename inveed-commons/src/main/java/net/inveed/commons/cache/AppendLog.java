@@ -0,0 +1,296 @@
+package net.inveed.commons.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of cache records in a memory-mapped file.
+ * The file is mapped by regions of fixed size, a record never crosses region boundary.
+ * Record header is written last, so a record torn by a crash is ignored on the next open
+ * and the log is truncated before it;
+ * key and value are protected by a checksum.
+ * Appending should be done by one thread at a time, reading can be done concurrently with appending.
+ */
+final class AppendLog implements Closeable {
+	static final byte END = 0;
+	static final byte PUT = 1;
+	static final byte REMOVE = 2;
+	static final byte PADDING = 3;
+
+	private static final int MAGIC = 0x494E4C47;
+	private static final int VERSION = 1;
+	// Magic, version, region size
+	private static final int FILE_HEADER_SIZE = 12;
+	// Type, key length, value length, weight, checksum
+	private static final int RECORD_HEADER_SIZE = 17;
+
+	interface IRecordHandler {
+		void accept(byte type, long offset, byte[] key, int valueLength, int weight);
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final int regionSize;
+	// Copied on growth, so readers don't need a lock
+	private volatile MappedByteBuffer[] regions;
+	private volatile long position;
+
+	/**
+	 * Opens existing log or creates a new one.
+	 * Region size of existing log is taken from its header.
+	 */
+	AppendLog(File path, int regionSize) throws IOException {
+		this.file = new RandomAccessFile(path, "rw");
+		try {
+			this.channel = this.file.getChannel();
+			long length = this.file.length();
+			if (length == 0) {
+				if (regionSize < FILE_HEADER_SIZE + RECORD_HEADER_SIZE) {
+					throw new IllegalArgumentException("Region size is too small");
+				}
+				this.regionSize = regionSize;
+				this.regions = new MappedByteBuffer[0];
+				MappedByteBuffer header = this.region(0);
+				header.putInt(0, MAGIC);
+				header.putInt(4, VERSION);
+				header.putInt(8, regionSize);
+			} else {
+				if (length < FILE_HEADER_SIZE || this.file.readInt() != MAGIC) {
+					throw new IOException("File " + path + " is not a cache log");
+				}
+				int version = this.file.readInt();
+				if (version != VERSION) {
+					throw new IOException("Unsupported version " + version + " of cache log " + path);
+				}
+				this.regionSize = this.file.readInt();
+				if (this.regionSize < FILE_HEADER_SIZE + RECORD_HEADER_SIZE) {
+					throw new IOException("Invalid region size of cache log " + path);
+				}
+				this.regions = new MappedByteBuffer[0];
+				long count = (length + this.regionSize - 1) / this.regionSize;
+				for (int i = 0; i < count; i++) {
+					this.region(i);
+				}
+			}
+			this.position = FILE_HEADER_SIZE;
+		} catch (IOException | RuntimeException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	static int recordLength(int keyLength, int valueLength) {
+		return RECORD_HEADER_SIZE + keyLength + valueLength;
+	}
+
+	int getRegionSize() {
+		return this.regionSize;
+	}
+
+	/**
+	 * @return length of the log in bytes
+	 */
+	long size() {
+		return this.position;
+	}
+
+	/**
+	 * Reads all records from the beginning of the log and moves the end of the log after the last valid one.
+	 * @return false if the log has corrupted tail, records after it are ignored
+	 */
+	boolean scan(IRecordHandler handler) {
+		MappedByteBuffer[] rs = this.regions;
+		long size = (long) rs.length * this.regionSize;
+		long pos = FILE_HEADER_SIZE;
+		boolean clean = true;
+		CRC32 crc = new CRC32();
+		while (pos < size) {
+			ByteBuffer buf = rs[(int) (pos / this.regionSize)];
+			int offset = (int) (pos % this.regionSize);
+			byte type = buf.get(offset);
+			if (type == END) {
+				break;
+			}
+			if (type == PADDING) {
+				pos += this.regionSize - offset;
+				continue;
+			}
+			if ((type != PUT && type != REMOVE) || this.regionSize - offset < RECORD_HEADER_SIZE) {
+				clean = false;
+				break;
+			}
+			int keyLength = buf.getInt(offset + 1);
+			int valueLength = buf.getInt(offset + 5);
+			if (keyLength < 0 || valueLength < 0
+					|| (long) RECORD_HEADER_SIZE + keyLength + valueLength > this.regionSize - offset) {
+				clean = false;
+				break;
+			}
+			byte[] key = new byte[keyLength];
+			byte[] value = new byte[valueLength];
+			ByteBuffer dup = buf.duplicate();
+			dup.position(offset + RECORD_HEADER_SIZE);
+			dup.get(key);
+			dup.get(value);
+			crc.reset();
+			crc.update(key);
+			crc.update(value);
+			if ((int) crc.getValue() != buf.getInt(offset + 13)) {
+				clean = false;
+				break;
+			}
+			handler.accept(type, pos, key, valueLength, buf.getInt(offset + 9));
+			pos += recordLength(keyLength, valueLength);
+		}
+		this.position = pos;
+		return clean;
+	}
+
+	/**
+	 * Clears everything after the end of the log found by {@link #scan(IRecordHandler)}.
+	 * Torn or corrupted records and anything after them could be read again
+	 * when new records are appended over them, if they aren't cleared.
+	 * Only non-zero bytes are written, so the clean tail isn't touched.
+	 * @return true if something was cleared
+	 */
+	boolean truncate() {
+		MappedByteBuffer[] rs = this.regions;
+		boolean ret = false;
+		long pos = this.position;
+		for (int i = (int) (pos / this.regionSize); i < rs.length; i++) {
+			int from = i == pos / this.regionSize ? (int) (pos % this.regionSize) : 0;
+			ret |= clear(rs[i], from, this.regionSize);
+		}
+		if (ret) {
+			this.force();
+		}
+		return ret;
+	}
+
+	private static boolean clear(ByteBuffer buf, int from, int to) {
+		boolean ret = false;
+		int i = from;
+		for (; i < to && (i & 7) != 0; i++) {
+			if (buf.get(i) != 0) {
+				buf.put(i, (byte) 0);
+				ret = true;
+			}
+		}
+		for (; i + 8 <= to; i += 8) {
+			if (buf.getLong(i) != 0) {
+				buf.putLong(i, 0);
+				ret = true;
+			}
+		}
+		for (; i < to; i++) {
+			if (buf.get(i) != 0) {
+				buf.put(i, (byte) 0);
+				ret = true;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return offset of the record
+	 */
+	long append(byte type, byte[] key, byte[] value, int weight) throws IOException {
+		int length = recordLength(key.length, value.length);
+		long pos = this.reserve(length);
+		ByteBuffer buf = this.regions[(int) (pos / this.regionSize)].duplicate();
+		int offset = (int) (pos % this.regionSize);
+		CRC32 crc = new CRC32();
+		crc.update(key);
+		crc.update(value);
+		buf.putInt(offset + 1, key.length);
+		buf.putInt(offset + 5, value.length);
+		buf.putInt(offset + 9, weight);
+		buf.putInt(offset + 13, (int) crc.getValue());
+		buf.position(offset + RECORD_HEADER_SIZE);
+		buf.put(key);
+		buf.put(value);
+		// Record becomes visible for scan only when its type is written
+		buf.put(offset, type);
+		this.position = pos + length;
+		return pos;
+	}
+
+	/**
+	 * Copies the record to other log as is.
+	 * @return offset of the record in the target log
+	 */
+	long copyTo(long offset, AppendLog target) throws IOException {
+		ByteBuffer buf = this.regions[(int) (offset / this.regionSize)].duplicate();
+		int pos = (int) (offset % this.regionSize);
+		int length = recordLength(buf.getInt(pos + 1), buf.getInt(pos + 5));
+		byte[] record = new byte[length];
+		buf.position(pos);
+		buf.get(record);
+
+		long ret = target.reserve(length);
+		ByteBuffer tbuf = target.regions[(int) (ret / target.regionSize)].duplicate();
+		int tpos = (int) (ret % target.regionSize);
+		tbuf.position(tpos + 1);
+		tbuf.put(record, 1, length - 1);
+		tbuf.put(tpos, record[0]);
+		target.position = ret + length;
+		return ret;
+	}
+
+	byte[] readValue(long offset) {
+		ByteBuffer buf = this.regions[(int) (offset / this.regionSize)].duplicate();
+		int pos = (int) (offset % this.regionSize);
+		byte[] ret = new byte[buf.getInt(pos + 5)];
+		buf.position(pos + RECORD_HEADER_SIZE + buf.getInt(pos + 1));
+		buf.get(ret);
+		return ret;
+	}
+
+	// Finds place for the record, skipping the rest of the current region if the record doesn't fit
+	private long reserve(int length) throws IOException {
+		if (length > this.regionSize) {
+			throw new IllegalArgumentException("Record of " + length + " bytes doesn't fit into log region");
+		}
+		long pos = this.position;
+		int offset = (int) (pos % this.regionSize);
+		if (this.regionSize - offset < length) {
+			this.regions[(int) (pos / this.regionSize)].put(offset, PADDING);
+			pos += this.regionSize - offset;
+		}
+		this.region((int) (pos / this.regionSize));
+		return pos;
+	}
+
+	private MappedByteBuffer region(int index) throws IOException {
+		MappedByteBuffer[] rs = this.regions;
+		if (index < rs.length) {
+			return rs[index];
+		}
+		MappedByteBuffer ret = this.channel.map(FileChannel.MapMode.READ_WRITE, (long) index * this.regionSize, this.regionSize);
+		rs = Arrays.copyOf(rs, index + 1);
+		rs[index] = ret;
+		this.regions = rs;
+		return ret;
+	}
+
+	/**
+	 * Writes modified regions to the storage device.
+	 */
+	void force() {
+		for (MappedByteBuffer r : this.regions) {
+			r.force();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.file.close();
+	}
+}
@@ -0,0 +1,465 @@
+package net.inveed.commons.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * LRU storage without per-entry node objects.
+ * Keys, values and links of the recency list are kept in preallocated parallel arrays, removed entries
+ * are reused through a free list, so steady-state put, get and eviction allocate nothing.
+ * Capacity is taken from {@link #shrink(int)}, i.e. from {@link Cache#setMaxSize(int)}: when the storage
+ * is full, put evicts the least recently used entry in place. Until the capacity is set the arrays
+ * grow by doubling. Weight limit set by {@link #shrinkWeight(long)} evicts least recently used entries
+ * until the total weight fits; weights are kept in a parallel array as well.
+ * All operations take the lock; critical sections are short and don't allocate.
+ * Null keys are not supported.
+ */
+public final class ArrayLRUStorage<K, T> implements ICacheStorage<K, T> {
+	private static final int DEFAULT_CAPACITY = 16;
+	// Returned by putUnsafe when an entry should be evicted
+	private static final Object FULL = new Object();
+
+	private final class Table extends ArrayLRUTable {
+		Object[] keys;
+		int[] hashes;
+		int[] weights;
+
+		Table(int capacity) {
+			super(capacity);
+			this.keys = new Object[capacity];
+			this.hashes = new int[capacity];
+			this.weights = new int[capacity];
+		}
+
+		@Override
+		int hashOf(int entry) {
+			return this.hashes[entry];
+		}
+
+		@Override
+		void resizeKeys(int length) {
+			this.keys = Arrays.copyOf(this.keys, length);
+			this.hashes = Arrays.copyOf(this.hashes, length);
+			this.weights = Arrays.copyOf(this.weights, length);
+		}
+
+		@Override
+		void releaseKey(int entry) {
+			this.keys[entry] = null;
+			ArrayLRUStorage.this.weight -= this.weights[entry];
+		}
+
+		// Returns slot of the key or (-insertion slot - 1) if the key is absent
+		int find(Object key, int hash) {
+			int i = hash & this.mask;
+			int e;
+			while ((e = this.table[i]) != 0) {
+				if (this.hashes[e - 1] == hash && key.equals(this.keys[e - 1])) {
+					return i;
+				}
+				i = (i + 1) & this.mask;
+			}
+			return -i - 1;
+		}
+	}
+
+	private final Table table;
+	private final ReentrantLock lock = new ReentrantLock();
+	// Arrays grow until the capacity is set by shrink
+	private boolean bounded;
+
+	private volatile BiConsumer<? super K, ? super T> evictionListener;
+
+	private volatile IWeigher<? super K, ? super T> weigher;
+	// Modified under the lock only
+	private volatile long weight;
+
+	public ArrayLRUStorage() {
+		this.table = new Table(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates storage with arrays preallocated for the specified number of entries.
+	 */
+	public ArrayLRUStorage(int maxSize) {
+		this.table = new Table(maxSize);
+		this.bounded = true;
+	}
+
+	private static int hash(Object key) {
+		return ArrayLRUTable.spread(key.hashCode());
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(K key) {
+		if (key == null) {
+			return null;
+		}
+		int hash = hash(key);
+		this.lock.lock();
+		try {
+			int slot = this.table.find(key, hash);
+			if (slot < 0) {
+				return null;
+			}
+			return (T) this.table.values[this.table.table[slot] - 1];
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T access(K key) {
+		if (key == null) {
+			return null;
+		}
+		int hash = hash(key);
+		this.lock.lock();
+		try {
+			int slot = this.table.find(key, hash);
+			if (slot < 0) {
+				return null;
+			}
+			int e = this.table.table[slot] - 1;
+			this.table.touch(e);
+			return (T) this.table.values[e];
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public void put(K key, T value) {
+		this.getAndPut(key, value);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T getAndPut(K key, T value) {
+		if (key == null) {
+			throw new NullPointerException("key is null");
+		}
+		int hash = hash(key);
+		int itemWeight = this.weigh(key, value);
+		Object ret;
+		K evictedKey = null;
+		T evictedValue = null;
+		this.lock.lock();
+		try {
+			ret = this.putUnsafe(key, hash, value, itemWeight);
+			if (ret == FULL) {
+				int victim = this.table.first();
+				evictedKey = (K) this.table.keys[victim];
+				evictedValue = (T) this.table.values[victim];
+				this.table.removeEntry(victim);
+				ret = this.putUnsafe(key, hash, value, itemWeight);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+
+		BiConsumer<? super K, ? super T> listener = this.evictionListener;
+		if (evictedKey != null && listener != null) {
+			listener.accept(evictedKey, evictedValue);
+		}
+		return (T) ret;
+	}
+
+	// Returns replaced value or FULL if the storage is full and an entry should be evicted first
+	private Object putUnsafe(K key, int hash, T value, int itemWeight) {
+		int slot = this.table.find(key, hash);
+		if (slot >= 0) {
+			int e = this.table.table[slot] - 1;
+			Object ret = this.table.values[e];
+			this.table.values[e] = value;
+			this.weight += itemWeight - this.table.weights[e];
+			this.table.weights[e] = itemWeight;
+			this.table.touch(e);
+			return ret;
+		}
+		int e = this.table.newEntry();
+		if (e == ArrayLRUTable.NONE) {
+			if (this.bounded || this.table.capacity() >= ArrayLRUTable.MAX_CAPACITY) {
+				return FULL;
+			}
+			this.table.setCapacity((int) Math.min((long) this.table.capacity() * 2, ArrayLRUTable.MAX_CAPACITY));
+			e = this.table.newEntry();
+			slot = this.table.find(key, hash);
+		}
+		this.table.keys[e] = key;
+		this.table.hashes[e] = hash;
+		this.table.values[e] = value;
+		this.table.weights[e] = itemWeight;
+		this.weight += itemWeight;
+		this.table.addEntry(-slot - 1, e);
+		return null;
+	}
+
+	// Evicted keys and values are added to the list one after another
+	private void evictFirstUnsafe(ArrayList<Object> evicted) {
+		int victim = this.table.first();
+		if (evicted != null) {
+			evicted.add(this.table.keys[victim]);
+			evicted.add(this.table.values[victim]);
+		}
+		this.table.removeEntry(victim);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void notifyEvicted(ArrayList<Object> evicted) {
+		BiConsumer<? super K, ? super T> listener = this.evictionListener;
+		if (evicted == null || listener == null) {
+			return;
+		}
+		for (int i = 0; i < evicted.size(); i += 2) {
+			listener.accept((K) evicted.get(i), (T) evicted.get(i + 1));
+		}
+	}
+
+	@Override
+	public void remove(K key) {
+		this.getAndRemove(key);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T getAndRemove(K key) {
+		if (key == null) {
+			return null;
+		}
+		int hash = hash(key);
+		this.lock.lock();
+		try {
+			int slot = this.table.find(key, hash);
+			if (slot < 0) {
+				return null;
+			}
+			int e = this.table.table[slot] - 1;
+			T ret = (T) this.table.values[e];
+			this.table.removeEntry(e);
+			return ret;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets capacity of the storage and evicts least recently used entries to fit it.
+	 * Arrays are grown to the capacity, but never shrunk.
+	 * @param maxSize
+	 */
+	@Override
+	public void shrink(int maxSize) {
+		if (maxSize < 1) {
+			this.clear();
+			return;
+		}
+		ArrayList<Object> evicted = null;
+		this.lock.lock();
+		try {
+			if (this.bounded && this.table.capacity() == maxSize) {
+				return;
+			}
+			if (this.table.size() > maxSize && this.evictionListener != null) {
+				evicted = new ArrayList<>((this.table.size() - maxSize) * 2);
+			}
+			while (this.table.size() > maxSize) {
+				this.evictFirstUnsafe(evicted);
+			}
+			this.table.setCapacity(Math.min(maxSize, ArrayLRUTable.MAX_CAPACITY));
+			this.bounded = true;
+		} finally {
+			this.lock.unlock();
+		}
+		this.notifyEvicted(evicted);
+	}
+
+	/**
+	 * Evicts least recently used entries to fit required total weight.
+	 * @param maxWeight
+	 */
+	@Override
+	public void shrinkWeight(long maxWeight) {
+		if (this.weight <= maxWeight) {
+			return;
+		}
+		ArrayList<Object> evicted = this.evictionListener == null ? null : new ArrayList<>();
+		this.lock.lock();
+		try {
+			while (this.weight > maxWeight && this.table.size() > 0) {
+				this.evictFirstUnsafe(evicted);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		this.notifyEvicted(evicted);
+	}
+
+	@Override
+	public long weight() {
+		return this.weight;
+	}
+
+	/**
+	 * Sets weigher used to calculate weight of new entries.
+	 * Should be set before entries are added; without weigher every entry weighs 1.
+	 */
+	@Override
+	public void setWeigher(IWeigher<? super K, ? super T> weigher) {
+		this.weigher = weigher;
+	}
+
+	private int weigh(K key, T value) {
+		IWeigher<? super K, ? super T> w = this.weigher;
+		if (w == null) {
+			return 1;
+		}
+		int ret = w.weigh(key, value);
+		if (ret < 0) {
+			throw new IllegalArgumentException("Weight should not be negative");
+		}
+		return ret;
+	}
+
+	/**
+	 * Sets listener called for every entry evicted by put, {@link #shrink(int)} or {@link #shrinkWeight(long)}.
+	 * Listener is called after the lock is released.
+	 */
+	@Override
+	public void setEvictionListener(BiConsumer<? super K, ? super T> listener) {
+		this.evictionListener = listener;
+	}
+
+	@Override
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.table.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	@Override
+	public void clear() {
+		this.lock.lock();
+		try {
+			this.table.clearEntries();
+			this.weight = 0;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		if (key == null) {
+			return false;
+		}
+		int hash = hash(key);
+		this.lock.lock();
+		try {
+			return this.table.find(key, hash) >= 0;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Puts all entries under a single lock acquisition.
+	 */
+	@Override
+	public void putAll(Map<? extends K, ? extends T> m) {
+		int[] weights = new int[m.size()];
+		int i = 0;
+		for (Map.Entry<? extends K, ? extends T> e : m.entrySet()) {
+			if (e.getKey() == null) {
+				throw new NullPointerException("key is null");
+			}
+			weights[i++] = this.weigh(e.getKey(), e.getValue());
+		}
+		ArrayList<Object> evicted = this.evictionListener == null ? null : new ArrayList<>();
+		this.lock.lock();
+		try {
+			i = 0;
+			for (Map.Entry<? extends K, ? extends T> e : m.entrySet()) {
+				int hash = hash(e.getKey());
+				int itemWeight = weights[i++];
+				if (this.putUnsafe(e.getKey(), hash, e.getValue(), itemWeight) == FULL) {
+					this.evictFirstUnsafe(evicted);
+					this.putUnsafe(e.getKey(), hash, e.getValue(), itemWeight);
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		this.notifyEvicted(evicted);
+	}
+
+	/**
+	 * Removes all keys under a single lock acquisition.
+	 */
+	@Override
+	public void removeAll(Iterable<? extends K> keys) {
+		this.lock.lock();
+		try {
+			for (K key : keys) {
+				if (key == null) {
+					continue;
+				}
+				int slot = this.table.find(key, hash(key));
+				if (slot >= 0) {
+					this.table.removeEntry(this.table.table[slot] - 1);
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return snapshot of keys
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Set<K> keySet() {
+		this.lock.lock();
+		try {
+			HashSet<K> ret = new HashSet<>();
+			for (int e = this.table.first(); e != ArrayLRUTable.NONE; e = this.table.next(e)) {
+				ret.add((K) this.table.keys[e]);
+			}
+			return ret;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<K> keysInAccessOrder() {
+		this.lock.lock();
+		try {
+			ArrayList<K> ret = new ArrayList<>(this.table.size());
+			for (int e = this.table.first(); e != ArrayLRUTable.NONE; e = this.table.next(e)) {
+				ret.add((K) this.table.keys[e]);
+			}
+			return ret;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package net.inveed.commons.cache;
+
+import java.util.Arrays;
+
+/**
+ * Base of LRU tables without per-entry objects.
+ * Entries are identified by indexes in preallocated arrays: values and links of the recency list are
+ * kept in parallel arrays, the hash table is an open-addressing (linear probing) table of entry indexes.
+ * Removal from the table uses backward shift, so there are no tombstones.
+ * Subclasses keep keys in their own arrays and implement lookup by key.
+ * Not thread-safe.
+ */
+abstract class ArrayLRUTable {
+	static final int NONE = -1;
+	static final int MAX_CAPACITY = 1 << 29;
+
+	// Entry index + 1, 0 is an empty slot
+	int[] table;
+	int mask;
+	Object[] values;
+
+	private int[] previous;
+	private int[] next;
+	// Least recently used entry
+	private int first = NONE;
+	// Most recently used entry
+	private int last = NONE;
+	// Free entries, linked through next
+	private int free = NONE;
+	// Entries below this index were used at least once
+	private int allocated;
+	private int size;
+	private int capacity;
+
+	ArrayLRUTable(int capacity) {
+		checkCapacity(capacity);
+		this.capacity = capacity;
+		this.values = new Object[capacity];
+		this.previous = new int[capacity];
+		this.next = new int[capacity];
+		this.table = new int[tableSize(capacity)];
+		this.mask = this.table.length - 1;
+	}
+
+	private static void checkCapacity(int capacity) {
+		if (capacity < 1 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("Capacity should be from 1 to " + MAX_CAPACITY);
+		}
+	}
+
+	// Load factor is kept under 0.5, so probe sequences stay short
+	private static int tableSize(int capacity) {
+		int ret = 2;
+		while (ret < capacity * 2) {
+			ret <<= 1;
+		}
+		return ret;
+	}
+
+	static int spread(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		return h ^ (h >>> 13);
+	}
+
+	/**
+	 * @return hash of the entry key, should be the same as used for lookup
+	 */
+	abstract int hashOf(int entry);
+
+	/**
+	 * Called when entry arrays are resized to the specified length.
+	 */
+	abstract void resizeKeys(int length);
+
+	/**
+	 * Called when the entry is removed, used to release key references.
+	 */
+	void releaseKey(int entry) {
+	}
+
+	final int size() {
+		return this.size;
+	}
+
+	final int capacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Changes the capacity. Arrays are grown if required, but never shrunk;
+	 * entries should be evicted by the caller before the capacity is decreased.
+	 */
+	final void setCapacity(int capacity) {
+		checkCapacity(capacity);
+		if (capacity < this.size) {
+			throw new IllegalStateException("Capacity is less then size");
+		}
+		if (capacity > this.values.length) {
+			this.values = Arrays.copyOf(this.values, capacity);
+			this.previous = Arrays.copyOf(this.previous, capacity);
+			this.next = Arrays.copyOf(this.next, capacity);
+			this.resizeKeys(capacity);
+		}
+		if (tableSize(capacity) > this.table.length) {
+			this.table = new int[tableSize(capacity)];
+			this.mask = this.table.length - 1;
+			for (int e = this.first; e != NONE; e = this.next[e]) {
+				int i = this.hashOf(e) & this.mask;
+				while (this.table[i] != 0) {
+					i = (i + 1) & this.mask;
+				}
+				this.table[i] = e + 1;
+			}
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return index of a new entry or {@link #NONE} if the table is full
+	 */
+	final int newEntry() {
+		if (this.size >= this.capacity) {
+			return NONE;
+		}
+		if (this.free != NONE) {
+			int ret = this.free;
+			this.free = this.next[ret];
+			return ret;
+		}
+		return this.allocated++;
+	}
+
+	/**
+	 * Adds new entry as the most recently used one.
+	 * @param slot empty slot of the table found by the key lookup
+	 */
+	final void addEntry(int slot, int entry) {
+		this.table[slot] = entry + 1;
+		this.linkLast(entry);
+		this.size++;
+	}
+
+	final void removeEntry(int entry) {
+		this.deleteSlot(this.slotOf(entry));
+		this.unlink(entry);
+		this.values[entry] = null;
+		this.releaseKey(entry);
+		this.next[entry] = this.free;
+		this.free = entry;
+		this.size--;
+	}
+
+	/**
+	 * Marks the entry as the most recently used.
+	 */
+	final void touch(int entry) {
+		if (entry == this.last) {
+			return;
+		}
+		this.unlink(entry);
+		this.linkLast(entry);
+	}
+
+	/**
+	 * @return least recently used entry or {@link #NONE}
+	 */
+	final int first() {
+		return this.first;
+	}
+
+	/**
+	 * @return next entry in the recency order or {@link #NONE}
+	 */
+	final int next(int entry) {
+		return this.next[entry];
+	}
+
+	final void clearEntries() {
+		for (int e = this.first; e != NONE; e = this.next[e]) {
+			this.releaseKey(e);
+		}
+		Arrays.fill(this.table, 0);
+		Arrays.fill(this.values, 0, this.allocated, null);
+		this.first = NONE;
+		this.last = NONE;
+		this.free = NONE;
+		this.allocated = 0;
+		this.size = 0;
+	}
+
+	private int slotOf(int entry) {
+		int i = this.hashOf(entry) & this.mask;
+		while (this.table[i] != entry + 1) {
+			i = (i + 1) & this.mask;
+		}
+		return i;
+	}
+
+	// Moves following entries of the probe sequence back, so lookups don't stop at the freed slot
+	private void deleteSlot(int slot) {
+		int i = slot;
+		int j = slot;
+		while (true) {
+			j = (j + 1) & this.mask;
+			int e = this.table[j];
+			if (e == 0) {
+				break;
+			}
+			int home = this.hashOf(e - 1) & this.mask;
+			// Entry can be moved to i only if its home slot is not between i (exclusive) and j (inclusive)
+			boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+			if (!between) {
+				this.table[i] = e;
+				i = j;
+			}
+		}
+		this.table[i] = 0;
+	}
+
+	private void linkLast(int entry) {
+		this.previous[entry] = this.last;
+		this.next[entry] = NONE;
+		if (this.last != NONE) {
+			this.next[this.last] = entry;
+		} else {
+			this.first = entry;
+		}
+		this.last = entry;
+	}
+
+	private void unlink(int entry) {
+		int p = this.previous[entry];
+		int n = this.next[entry];
+		if (p != NONE) {
+			this.next[p] = n;
+		} else {
+			this.first = n;
+		}
+		if (n != NONE) {
+			this.previous[n] = p;
+		} else {
+			this.last = p;
+		}
+	}
+}
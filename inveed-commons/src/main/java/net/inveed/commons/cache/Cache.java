@@ -1,44 +1,614 @@
 package net.inveed.commons.cache;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.inveed.commons.utils.AsyncHelper;
 
 public class Cache<K, V> {
-	private LRUStorage<K, V> cache = new LRUStorage<K, V>();
-	private int maxSize = 0;
+	private static final Logger LOG = LoggerFactory.getLogger(Cache.class);
+	
+	private final Object _lock = new Object();
+	private final String name;
+	private final ICacheStorage<K, V> cache;
+	// 0 - not limited
+	private volatile int maxSize = 0;
+	private volatile long maxWeight = 0;
+	
+	// Created when expiration is configured
+	private volatile ExpirationTracker<K> expiration;
+	
+	// Incremented by clear, values loaded by loads started before clear are not cached
+	private final AtomicLong generation = new AtomicLong();
+	
+	// In-flight loads, one per key
+	private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+	
+	// Load which remembers the thread calling the loader, so the loader can't wait for itself
+	private static final class PendingLoad<V> extends CompletableFuture<V> {
+		// null when the loader returned, e.g. a future of asynchronous load
+		volatile Thread owner = Thread.currentThread();
+	}
+	
+	// 0 - refresh is disabled
+	private volatile long refreshAfterWriteNanos = 0;
+	private volatile Executor refreshExecutor = ForkJoinPool.commonPool();
+	// In-flight refreshes, one per key
+	private final ConcurrentHashMap<K, CompletableFuture<V>> refreshing = new ConcurrentHashMap<>();
+	
+	private volatile IStatsCounter stats = IStatsCounter.DISABLED;
+	
+	private static final class RemovalListenerRegistration<K, V> {
+		final IRemovalListener<? super K, ? super V> listener;
+		// null - synchronous dispatch
+		final Executor executor;
+		
+		RemovalListenerRegistration(IRemovalListener<? super K, ? super V> listener, Executor executor) {
+			this.listener = listener;
+			this.executor = executor;
+		}
+	}
+	private final CopyOnWriteArrayList<RemovalListenerRegistration<K, V>> removalListeners = new CopyOnWriteArrayList<>();
+	
+	// null - changes aren't written anywhere
+	private volatile ICacheWriter<K, V> writer;
+	private ObjectName mbeanName;
 	
 	public Cache() {
+		this(null, new LRUStorage<K, V>());
+	}
+	
+	/**
+	 * Creates cache with specified storage engine, e.g. {@link StripedLRUStorage} for highly concurrent caches.
+	 * @param storage
+	 */
+	public Cache(ICacheStorage<K, V> storage) {
+		this(null, storage);
+	}
+	
+	/**
+	 * Creates named cache. Configuration for the name is applied from {@link CacheManager#configure(java.util.Properties)}.
+	 * @param name unique name of the cache
+	 */
+	public Cache(String name) {
+		this(name, new LRUStorage<K, V>());
+	}
+	
+	/**
+	 * Creates named cache with specified storage engine.
+	 * The cache is registered in {@link CacheManager} at the end of this constructor,
+	 * so constructors of subclasses run when the cache can already be used by other threads.
+	 * @param name unique name of the cache, can be null
+	 * @param storage
+	 */
+	public Cache(String name, ICacheStorage<K, V> storage) {
+		if (storage == null) {
+			throw new NullPointerException("storage is null");
+		}
+		this.name = name;
+		this.cache = storage;
+		// Values of evicted entries are needed by removal listeners only
+		this.cache.setEvictionListener(this::onEvicted, false);
+		// Should stay the last statement: the registry publishes the cache safely, but only the state set before it
 		CacheManager.INSTANCE.register(this);
 	}
+	
+	/**
+	 * @return name of the cache or null for anonymous cache
+	 */
+	public String getName() {
+		return this.name;
+	}
+	
+	private void onEvicted(K key, V value) {
+		this.stats.recordEviction();
+		ExpirationTracker<K> exp = this.expiration;
+		if (exp != null) {
+			// The key could be put again after the eviction
+			exp.untrackIf(key, (k) -> !this.cache.containsKey(k));
+		}
+		this.notifyRemoval(key, value, RemovalCause.SIZE);
+	}
+	
+	/**
+	 * Adds listener called synchronously, in the thread which removed the entry.
+	 * Storages call it after their locks are released.
+	 */
+	public void addRemovalListener(IRemovalListener<? super K, ? super V> listener) {
+		this.addRemovalListener(listener, null);
+	}
+	
+	/**
+	 * Adds listener called asynchronously by the executor, so slow listeners don't delay cache operations.
+	 * @param executor executor used to call the listener, null for synchronous calls
+	 */
+	public void addRemovalListener(IRemovalListener<? super K, ? super V> listener, Executor executor) {
+		if (listener == null) {
+			throw new NullPointerException("listener is null");
+		}
+		synchronized (this._lock) {
+			this.removalListeners.add(new RemovalListenerRegistration<>(listener, executor));
+			this.cache.setEvictionListener(this::onEvicted, true);
+		}
+	}
+	
+	public void removeRemovalListener(IRemovalListener<? super K, ? super V> listener) {
+		synchronized (this._lock) {
+			this.removalListeners.removeIf(r -> r.listener == listener);
+			this.cache.setEvictionListener(this::onEvicted, this.hasRemovalListeners());
+		}
+	}
+	
+	/**
+	 * Sets write-through writer: explicit puts and removes are written to the store synchronously,
+	 * before the cache is changed. Values loaded by the cache, evictions and expirations aren't written.
+	 * @param writer writer of the store, null to disable writing
+	 */
+	public void setWriter(ICacheWriter<K, V> writer) {
+		this.writer = writer;
+	}
+	
+	public ICacheWriter<K, V> getWriter() {
+		return this.writer;
+	}
+	
+	/**
+	 * Enables write-behind: changes are queued, coalesced by key and written to the store
+	 * asynchronously by batches.
+	 * @return writer which can be used to flush pending changes; it should be closed when the cache isn't used anymore
+	 * @see WriteBehindWriter
+	 */
+	public WriteBehindWriter<K, V> setWriteBehind(ICacheWriter<K, V> writer, ScheduledExecutorService executor, 
+			int batchSize, long flushInterval, TimeUnit unit) {
+		WriteBehindWriter<K, V> ret = new WriteBehindWriter<>(writer, executor, batchSize, flushInterval, unit);
+		this.writer = ret;
+		return ret;
+	}
+	
+	private boolean hasRemovalListeners() {
+		return !this.removalListeners.isEmpty();
+	}
+	
+	private void notifyRemoval(K key, V value, RemovalCause cause) {
+		if (value == null) {
+			return;
+		}
+		for (RemovalListenerRegistration<K, V> r : this.removalListeners) {
+			if (r.executor == null) {
+				callRemovalListener(r.listener, key, value, cause);
+				continue;
+			}
+			try {
+				r.executor.execute(() -> callRemovalListener(r.listener, key, value, cause));
+			} catch (RuntimeException e) {
+				LOG.warn("Cannot dispatch removal notification", e);
+			}
+		}
+	}
+	
+	private static <K, V> void callRemovalListener(IRemovalListener<? super K, ? super V> listener, K key, V value, RemovalCause cause) {
+		try {
+			listener.onRemoval(key, value, cause);
+		} catch (RuntimeException e) {
+			LOG.warn("Removal listener failed", e);
+		}
+	}
 
+	/**
+	 * Puts the value. When a writer is set, the value is written by the writer first;
+	 * if the writer fails, the cache isn't changed.
+	 */
 	public void put(K key, V obj) {
-		this.cache.put(key, obj);
+		ICacheWriter<K, V> w = this.writer;
+		if (w != null) {
+			w.write(key, obj);
+		}
+		this.putInternal(key, obj);
+	}
+	
+	// Put without writing to the writer, used for loaded values as well
+	private void putInternal(K key, V obj) {
+		ExpirationTracker<K> exp = this.expiration;
+		ExpirationTracker.Entry<K> tracked = exp == null ? null : exp.startWrite(key);
+		V prev = null;
+		boolean notify = this.hasRemovalListeners();
+		try {
+			if (notify) {
+				prev = this.cache.getAndPut(key, obj);
+			} else {
+				this.cache.put(key, obj);
+			}
+		} finally {
+			if (tracked != null) {
+				exp.endWrite(tracked);
+			}
+		}
+		if (prev != obj) {
+			this.notifyRemoval(key, prev, RemovalCause.REPLACED);
+		}
 		this.freeSpace();
+		if (exp != null) {
+			this.expire(exp);
+		}
 	}
 
 	private void freeSpace() {
-		this.cache.shrink(getMaxSize());
+		int ms = this.maxSize;
+		if (ms > 0) {
+			this.cache.shrink(ms);
+		}
+		long mw = this.maxWeight;
+		if (mw > 0) {
+			this.cache.shrinkWeight(mw);
+		}
 	}
 
+	/**
+	 * @return number of entries, including expired entries which weren't cleaned up yet.
+	 */
 	public long size() {
 		return this.cache.size();
 	}
 
+	/**
+	 * Removes the value. When a writer is set, the key is deleted by the writer first;
+	 * if the writer fails, the cache isn't changed.
+	 */
 	public void remove(K key) {
+		ICacheWriter<K, V> w = this.writer;
+		if (w != null) {
+			w.delete(key);
+		}
+		this.remove(key, RemovalCause.EXPLICIT);
+	}
+	
+	private void remove(K key, RemovalCause cause) {
+		boolean notify = this.hasRemovalListeners();
+		ExpirationTracker<K> exp = this.expiration;
+		if (exp == null) {
+			this.notifyRemoval(key, this.removeStored(key, notify), cause);
+			return;
+		}
+		// Storage and tracking are changed together, so a concurrent put isn't left untracked
+		ArrayList<V> removed = new ArrayList<>(1);
+		if (exp.remove(key, () -> removed.add(this.removeStored(key, notify)))) {
+			this.notifyRemoval(key, removed.get(0), cause);
+		}
+	}
+	
+	// Returns removed value if it's required for notifications
+	private V removeStored(K key, boolean notify) {
+		if (notify) {
+			return this.cache.getAndRemove(key);
+		}
 		this.cache.remove(key);
+		return null;
+	}
+	
+	/**
+	 * Removes the key if its value is still expired: a value put after the expiration was checked is kept.
+	 * @return true if the key was removed
+	 */
+	private boolean removeExpired(ExpirationTracker<K> exp, K key) {
+		boolean notify = this.hasRemovalListeners();
+		ArrayList<V> removed = new ArrayList<>(1);
+		if (!exp.removeExpired(key, () -> removed.add(this.removeStored(key, notify)))) {
+			return false;
+		}
+		this.notifyRemoval(key, removed.get(0), RemovalCause.EXPIRED);
+		this.stats.recordExpiration();
+		return true;
 	}
 	
 	public V get(K oid) {
-		V ret = this.cache.get(oid);
+		V ret = this.getInternal(oid);
+		if (ret == null) {
+			this.stats.recordMiss();
+		} else {
+			this.stats.recordHit();
+		}
+		return ret;
+	}
+	
+	// Lookup without recording statistics
+	private V getInternal(K key) {
+		V ret = this.cache.access(key);
+		if (ret == null) {
+			return null;
+		}
+		ExpirationTracker<K> exp = this.expiration;
+		if (exp != null) {
+			if (exp.isExpired(key)) {
+				// If the key was written again meanwhile, the read happened before the write
+				this.removeExpired(exp, key);
+				return null;
+			}
+			exp.onAccess(key);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns cached value or loads it. 
+	 * Only one loader call is made per missing key, concurrent callers wait for its result.
+	 * Null values are not cached.
+	 * @throws IllegalStateException if the loader gets the same key from the cache with a loader
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		if (loader == null) {
+			throw new NullPointerException("loader is null");
+		}
+		V ret = this.get(key);
 		if (ret != null) {
-			this.cache.put(oid, ret);
+			if (this.needsRefresh(key)) {
+				this.refresh(key, loader);
+			}
+			return ret;
 		}
 		
-		return ret;
+		PendingLoad<V> f = new PendingLoad<>();
+		CompletableFuture<V> prev = this.loading.putIfAbsent(key, f);
+		if (prev != null) {
+			checkNotRecursive(key, prev);
+			return AsyncHelper.join(prev);
+		}
+		try {
+			// Value could be loaded by other thread while we were checking in-flight loads
+			ret = this.getInternal(key);
+			if (ret == null) {
+				long gen = this.generation.get();
+				ret = this.load(key, loader);
+				if (ret != null) {
+					this.putLoaded(key, ret, gen);
+				}
+			}
+			f.complete(ret);
+			return ret;
+		} catch (RuntimeException | Error e) {
+			f.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.loading.remove(key, f);
+		}
+	}
+	
+	/**
+	 * Returns cached value or loads it asynchronously. 
+	 * Only one loader call is made per missing key, concurrent callers get the same future.
+	 * Null values are not cached.
+	 */
+	public CompletableFuture<V> getAsync(K key, Function<? super K, ? extends CompletableFuture<? extends V>> loader) {
+		if (loader == null) {
+			throw new NullPointerException("loader is null");
+		}
+		V ret = this.get(key);
+		if (ret != null) {
+			if (this.needsRefresh(key)) {
+				this.refresh(key, () -> loader.apply(key));
+			}
+			return CompletableFuture.completedFuture(ret);
+		}
+		
+		PendingLoad<V> f = new PendingLoad<>();
+		CompletableFuture<V> prev = this.loading.putIfAbsent(key, f);
+		if (prev != null) {
+			return prev;
+		}
+		
+		CompletableFuture<? extends V> lf;
+		long gen = this.generation.get();
+		long start = System.nanoTime();
+		try {
+			ret = this.getInternal(key);
+			if (ret != null) {
+				this.loading.remove(key, f);
+				f.complete(ret);
+				return f;
+			}
+			lf = loader.apply(key);
+			if (lf == null) {
+				throw new NullPointerException("loader returned null future");
+			}
+		} catch (RuntimeException | Error e) {
+			this.stats.recordLoadFailure(System.nanoTime() - start);
+			this.loading.remove(key, f);
+			f.completeExceptionally(e);
+			return f;
+		}
+		// Loader returned, other loads of this thread can wait for the future
+		f.owner = null;
+		
+		lf.whenComplete((v, e) -> {
+			this.recordLoad(start, e);
+			if (e == null && v != null) {
+				this.putLoaded(key, v, gen);
+			}
+			this.loading.remove(key, f);
+			if (e != null) {
+				f.completeExceptionally(e);
+			} else {
+				f.complete(v);
+			}
+		});
+		return f;
 	}
 
+	// Waiting for own load would block forever, so the recursive call fails like ConcurrentHashMap.computeIfAbsent
+	private static void checkNotRecursive(Object key, CompletableFuture<?> load) {
+		if (load instanceof PendingLoad && ((PendingLoad<?>) load).owner == Thread.currentThread()) {
+			throw new IllegalStateException("Recursive load of key " + key);
+		}
+	}
+
+	// Puts loaded value unless the cache was cleared after the load was started
+	private void putLoaded(K key, V value, long gen) {
+		if (this.generation.get() != gen) {
+			return;
+		}
+		this.putInternal(key, value);
+		if (this.generation.get() != gen && this.cache.get(key) == value) {
+			// Cleared while putting
+			this.cache.remove(key);
+		}
+	}
+	
+	private V load(K key, Function<? super K, ? extends V> loader) {
+		long start = System.nanoTime();
+		try {
+			V ret = loader.apply(key);
+			this.stats.recordLoadSuccess(System.nanoTime() - start);
+			return ret;
+		} catch (RuntimeException | Error e) {
+			this.stats.recordLoadFailure(System.nanoTime() - start);
+			throw e;
+		}
+	}
+	
+	private void recordLoad(long start, Throwable failure) {
+		long time = System.nanoTime() - start;
+		if (failure == null) {
+			this.stats.recordLoadSuccess(time);
+		} else {
+			this.stats.recordLoadFailure(time);
+		}
+	}
+	
+	/**
+	 * Enables refresh-ahead: when an entry older than the specified time is read by a loading get
+	 * ({@link #get(Object, Function)} or {@link #getAsync(Object, Function)}), the value is reloaded in background.
+	 * Stale value is returned until the new one is loaded.
+	 * Applies to entries put after this call.
+	 */
+	public void setRefreshAfterWrite(long duration, TimeUnit unit) {
+		if (duration < 1) {
+			throw new IllegalArgumentException("Duration should be greater then zero");
+		}
+		this.getExpiration();
+		this.refreshAfterWriteNanos = unit.toNanos(duration);
+	}
+	
+	/**
+	 * Sets executor used to run synchronous loaders for refresh. Common fork-join pool is used by default.
+	 */
+	public void setRefreshExecutor(Executor executor) {
+		if (executor == null) {
+			throw new NullPointerException("executor is null");
+		}
+		this.refreshExecutor = executor;
+	}
+	
+	private boolean needsRefresh(K key) {
+		long refreshNanos = this.refreshAfterWriteNanos;
+		if (refreshNanos <= 0) {
+			return false;
+		}
+		long writeTime = this.expiration.getWriteTime(key);
+		if (writeTime == ExpirationTracker.NOT_TRACKED) {
+			return false;
+		}
+		return ExpirationTracker.now() - writeTime >= refreshNanos;
+	}
+	
+	/**
+	 * Reloads value in background. Current value is available until the new one is loaded.
+	 * Only one refresh per key runs at a time, concurrent calls get the same future.
+	 * @return future with the new value
+	 */
+	public CompletableFuture<V> refresh(K key, Function<? super K, ? extends V> loader) {
+		if (loader == null) {
+			throw new NullPointerException("loader is null");
+		}
+		Executor executor = this.refreshExecutor;
+		return this.refresh(key, () -> CompletableFuture.supplyAsync(() -> loader.apply(key), executor));
+	}
+	
+	private CompletableFuture<V> refresh(K key, Supplier<? extends CompletableFuture<? extends V>> loader) {
+		CompletableFuture<V> f = new CompletableFuture<>();
+		CompletableFuture<V> prev = this.refreshing.putIfAbsent(key, f);
+		if (prev != null) {
+			return prev;
+		}
+		
+		ExpirationTracker<K> exp = this.expiration;
+		long writeTime = exp == null ? ExpirationTracker.NOT_TRACKED : exp.getWriteTime(key);
+		long gen = this.generation.get();
+		CompletableFuture<? extends V> lf;
+		long start = System.nanoTime();
+		try {
+			lf = loader.get();
+			if (lf == null) {
+				throw new NullPointerException("loader returned null future");
+			}
+		} catch (RuntimeException | Error e) {
+			this.stats.recordLoadFailure(System.nanoTime() - start);
+			LOG.warn("Cannot refresh cache entry", e);
+			this.refreshing.remove(key, f);
+			f.completeExceptionally(e);
+			return f;
+		}
+		
+		lf.whenComplete((v, e) -> {
+			this.recordLoad(start, e);
+			if (e != null) {
+				LOG.warn("Cannot refresh cache entry", e);
+			} else if (v != null) {
+				// Don't overwrite value which was put while refreshing
+				if (exp == null || exp.getWriteTime(key) == writeTime) {
+					this.putLoaded(key, v, gen);
+				}
+			}
+			this.refreshing.remove(key, f);
+			if (e != null) {
+				f.completeExceptionally(e);
+			} else {
+				f.complete(v);
+			}
+		});
+		return f;
+	}
+
+	/**
+	 * Removes all entries. When removal listeners are set, entries are removed one by one
+	 * to notify listeners, otherwise the storage is cleared at once.
+	 * Safe under concurrent use: puts made concurrently with clear either stay or are removed,
+	 * values of loads started before clear are returned to their callers, but not cached.
+	 * Callers already waiting for such loads get their values as well; new callers start new loads.
+	 */
 	public void clear() {
-		this.cache = new LRUStorage<>();
+		this.generation.incrementAndGet();
+		this.loading.clear();
+		this.refreshing.clear();
+		if (this.hasRemovalListeners()) {
+			for (K key : this.cache.keySet()) {
+				this.notifyRemoval(key, this.cache.getAndRemove(key), RemovalCause.EXPLICIT);
+			}
+		}
+		this.cache.clear();
+		ExpirationTracker<K> exp = this.expiration;
+		if (exp != null) {
+			// Puts made concurrently with clear stay tracked
+			exp.untrackAllIf((k) -> !this.cache.containsKey(k));
+		}
 	}
 	
 	public int getMaxSize() {
@@ -53,18 +623,419 @@ public class Cache<K, V> {
 		this.freeSpace();
 	}
 	
+	public long getMaxWeight() {
+		return this.maxWeight;
+	}
+	
+	/**
+	 * Limits total weight of entries calculated by weigher. 
+	 * Least recently used entries are evicted until total weight fits.
+	 * @see #setWeigher(IWeigher)
+	 */
+	public void setMaxWeight(long maxWeight) {
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("Weight should be greater then zero");
+		}
+		// Applied to the storage first: if the storage fails, the limit isn't kept and later puts aren't affected
+		this.cache.shrinkWeight(maxWeight);
+		this.maxWeight = maxWeight;
+	}
+	
+	/**
+	 * Sets weigher used for weight-based eviction. Should be set before entries are added.
+	 */
+	public void setWeigher(IWeigher<? super K, ? super V> weigher) {
+		if (weigher == null) {
+			throw new NullPointerException("weigher is null");
+		}
+		this.cache.setWeigher(weigher);
+	}
+	
+	/**
+	 * @return total weight of entries, equals to size if weigher wasn't set.
+	 */
+	public long getWeight() {
+		return this.cache.weight();
+	}
+	
+	/**
+	 * Entries expire after the specified time since they were put into the cache.
+	 * Applies to entries put after this call.
+	 */
+	public void setExpireAfterWrite(long duration, TimeUnit unit) {
+		if (duration < 1) {
+			throw new IllegalArgumentException("Duration should be greater then zero");
+		}
+		this.getExpiration().setExpireAfterWriteNanos(unit.toNanos(duration));
+	}
+	
+	/**
+	 * Entries expire after the specified time since they were put or read last time.
+	 * Applies to entries put after this call.
+	 */
+	public void setExpireAfterAccess(long duration, TimeUnit unit) {
+		if (duration < 1) {
+			throw new IllegalArgumentException("Duration should be greater then zero");
+		}
+		this.getExpiration().setExpireAfterAccessNanos(unit.toNanos(duration));
+	}
+	
+	private ExpirationTracker<K> getExpiration() {
+		ExpirationTracker<K> ret = this.expiration;
+		if (ret != null) {
+			return ret;
+		}
+		synchronized (this._lock) {
+			if (this.expiration == null) {
+				this.expiration = new ExpirationTracker<>();
+			}
+			return this.expiration;
+		}
+	}
+	
+	/**
+	 * Removes expired entries. Cache does it on writes as well, 
+	 * so calling it explicitly is required only for caches which are rarely modified.
+	 */
+	public void cleanUp() {
+		ExpirationTracker<K> exp = this.expiration;
+		if (exp != null) {
+			this.expire(exp);
+		}
+	}
+	
+	/**
+	 * Schedules periodic {@link #cleanUp()}.
+	 * @return future which can be used to cancel cleaning.
+	 */
+	public ScheduledFuture<?> scheduleCleanUp(ScheduledExecutorService executor, long period, TimeUnit unit) {
+		if (executor == null) {
+			throw new NullPointerException("executor is null");
+		}
+		return executor.scheduleAtFixedRate(this::cleanUp, period, period, unit);
+	}
+	
+	private void expire(ExpirationTracker<K> exp) {
+		boolean notify = this.hasRemovalListeners();
+		for (K key : exp.expire()) {
+			// Entry could be put again after expiration, the new value shouldn't be removed
+			ArrayList<V> removed = new ArrayList<>(1);
+			boolean expired = exp.ifUntracked(key, () -> removed.add(this.removeStored(key, notify)));
+			if (expired) {
+				if (notify) {
+					this.notifyRemoval(key, removed.get(0), RemovalCause.EXPIRED);
+				}
+				this.stats.recordExpiration();
+			}
+		}
+	}
+	
+	/**
+	 * Enables or disables statistics. Statistics are disabled by default and cost nothing then.
+	 * Enabling statistics resets collected values.
+	 */
+	public void setRecordStats(boolean recordStats) {
+		this.stats = recordStats ? new StatsCounter() : IStatsCounter.DISABLED;
+	}
+	
+	public boolean isRecordingStats() {
+		return this.stats != IStatsCounter.DISABLED;
+	}
+	
+	/**
+	 * @return snapshot of statistics. Only size and weight are set if statistics are disabled.
+	 */
+	public CacheStats getStats() {
+		return this.stats.snapshot(this.cache.size(), this.cache.weight());
+	}
+	
+	/**
+	 * Registers {@link CacheStatsMXBean} for this cache in the platform MBean server.
+	 * The MBean doesn't keep the cache from being garbage collected.
+	 * @param name name of the cache, used as "name" property of the MBean object name
+	 * @throws IllegalStateException if MBean of another cache with the same name is registered
+	 */
+	public void registerMBean(String name) {
+		if (name == null) {
+			throw new NullPointerException("name is null");
+		}
+		synchronized (this._lock) {
+			if (this.mbeanName != null) {
+				CacheStatsBean.unregister(this.mbeanName);
+				this.mbeanName = null;
+			}
+			this.mbeanName = CacheStatsBean.register("type=Cache,name=" + ObjectName.quote(name), this, Cache::getStats);
+		}
+	}
+	
+	/**
+	 * Registers {@link CacheStatsMXBean} for this named cache.
+	 */
+	public void registerMBean() {
+		if (this.name == null) {
+			throw new IllegalStateException("Cache has no name");
+		}
+		this.registerMBean(this.name);
+	}
+	
+	public void unregisterMBean() {
+		synchronized (this._lock) {
+			if (this.mbeanName != null) {
+				CacheStatsBean.unregister(this.mbeanName);
+				this.mbeanName = null;
+			}
+		}
+	}
+	
 	public boolean containsKey(K key) {
-		return this.cache.containsKey(key);
+		if (!this.cache.containsKey(key)) {
+			return false;
+		}
+		ExpirationTracker<K> exp = this.expiration;
+		return exp == null || !exp.isExpired(key);
 	}
 	
+	/**
+	 * Puts all entries as a batch: storage locks are taken once and eviction runs once at the end.
+	 * When a writer is set, entries are written by the writer first.
+	 */
 	public void putAll(Map<? extends K, ? extends V> m) {
-		for (K key : m.keySet()) {
-			this.put(key, m.get(key));
+		if (m.isEmpty()) {
+			return;
+		}
+		ICacheWriter<K, V> w = this.writer;
+		if (w != null) {
+			w.writeAll(m);
+		}
+		this.putAllInternal(m);
+	}
+	
+	// Batch put without writing to the writer, used for loaded values and snapshots as well
+	void putAllInternal(Map<? extends K, ? extends V> m) {
+		ExpirationTracker<K> exp = this.expiration;
+		ArrayList<ExpirationTracker.Entry<K>> tracked = null;
+		if (exp != null) {
+			tracked = new ArrayList<>(m.size());
+			for (K key : m.keySet()) {
+				tracked.add(exp.startWrite(key));
+			}
+		}
+		try {
+			if (this.hasRemovalListeners()) {
+				// Replaced values are required for notifications
+				for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+					V prev = this.cache.getAndPut(e.getKey(), e.getValue());
+					if (prev != e.getValue()) {
+						this.notifyRemoval(e.getKey(), prev, RemovalCause.REPLACED);
+					}
+				}
+			} else {
+				this.cache.putAll(m);
+			}
+		} finally {
+			if (tracked != null) {
+				for (ExpirationTracker.Entry<K> e : tracked) {
+					exp.endWrite(e);
+				}
+			}
+		}
+		this.freeSpace();
+		if (exp != null) {
+			this.expire(exp);
+		}
+	}
+	
+	/**
+	 * Returns cached values of the keys.
+	 * @return map of found entries in the order of keys, missing and expired keys are absent
+	 */
+	public Map<K, V> getAll(Iterable<? extends K> keys) {
+		LinkedHashMap<K, V> ret = this.getAllInternal(keys);
+		int requested = 0;
+		for (@SuppressWarnings("unused") K key : keys) {
+			requested++;
+		}
+		this.stats.recordHits(ret.size());
+		this.stats.recordMisses(requested - ret.size());
+		return ret;
+	}
+	
+	// Batch lookup without recording statistics
+	private LinkedHashMap<K, V> getAllInternal(Iterable<? extends K> keys) {
+		Map<K, V> found = this.cache.accessAll(keys);
+		LinkedHashMap<K, V> ret = new LinkedHashMap<>();
+		ExpirationTracker<K> exp = this.expiration;
+		for (K key : keys) {
+			V value = found.get(key);
+			if (value == null) {
+				continue;
+			}
+			if (exp != null) {
+				if (exp.isExpired(key)) {
+					this.removeExpired(exp, key);
+					continue;
+				}
+				exp.onAccess(key);
+			}
+			ret.put(key, value);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns cached values of the keys, loading missing ones with a single call of the bulk loader.
+	 * Keys which are being loaded by other threads are not passed to the loader, their loads are awaited instead.
+	 * Loaded entries are put into the cache as a batch; null values are not cached.
+	 * @param bulkLoader gets set of missing keys and returns map of loaded values,
+	 * keys without values can be absent in the map
+	 * @return map of found and loaded entries, keys without values are absent
+	 */
+	public Map<K, V> getAll(Iterable<? extends K> keys, Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+		if (bulkLoader == null) {
+			throw new NullPointerException("bulkLoader is null");
+		}
+		LinkedHashSet<K> missing = new LinkedHashSet<>();
+		for (K key : keys) {
+			missing.add(key);
+		}
+		Map<K, V> ret = this.getAll(keys);
+		missing.removeAll(ret.keySet());
+		if (missing.isEmpty()) {
+			return ret;
+		}
+		
+		// Own loads of this thread can't be completed or started concurrently, so they are checked in advance
+		for (K key : missing) {
+			checkNotRecursive(key, this.loading.get(key));
+		}
+		LinkedHashMap<K, CompletableFuture<V>> own = new LinkedHashMap<>();
+		LinkedHashMap<K, CompletableFuture<V>> others = new LinkedHashMap<>();
+		for (K key : missing) {
+			CompletableFuture<V> f = new PendingLoad<>();
+			CompletableFuture<V> prev = this.loading.putIfAbsent(key, f);
+			if (prev == null) {
+				own.put(key, f);
+			} else {
+				others.put(key, prev);
+			}
 		}
+		
+		if (!own.isEmpty()) {
+			try {
+				// Values could be loaded by other threads while we were checking in-flight loads
+				Map<K, V> loaded = this.getAllInternal(own.keySet());
+				Set<K> toLoad = new LinkedHashSet<>(own.keySet());
+				toLoad.removeAll(loaded.keySet());
+				if (!toLoad.isEmpty()) {
+					long gen = this.generation.get();
+					Map<? extends K, ? extends V> result = this.loadAll(toLoad, bulkLoader);
+					LinkedHashMap<K, V> values = new LinkedHashMap<>();
+					for (Map.Entry<? extends K, ? extends V> e : result.entrySet()) {
+						if (e.getKey() != null && e.getValue() != null) {
+							values.put(e.getKey(), e.getValue());
+						}
+					}
+					if (this.generation.get() == gen) {
+						this.putAllInternal(values);
+					}
+					loaded.putAll(values);
+				}
+				for (Map.Entry<K, CompletableFuture<V>> e : own.entrySet()) {
+					V value = loaded.get(e.getKey());
+					if (value != null) {
+						ret.put(e.getKey(), value);
+					}
+					e.getValue().complete(value);
+				}
+			} catch (RuntimeException | Error e) {
+				for (CompletableFuture<V> f : own.values()) {
+					f.completeExceptionally(e);
+				}
+				throw e;
+			} finally {
+				for (Map.Entry<K, CompletableFuture<V>> e : own.entrySet()) {
+					this.loading.remove(e.getKey(), e.getValue());
+				}
+			}
+		}
+		
+		for (Map.Entry<K, CompletableFuture<V>> e : others.entrySet()) {
+			V value = AsyncHelper.join(e.getValue());
+			if (value != null) {
+				ret.put(e.getKey(), value);
+			}
+		}
+		return ret;
 	}
 	
+	private Map<? extends K, ? extends V> loadAll(Set<K> keys, Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+		long start = System.nanoTime();
+		try {
+			Map<? extends K, ? extends V> ret = bulkLoader.apply(keys);
+			if (ret == null) {
+				throw new NullPointerException("bulkLoader returned null");
+			}
+			this.stats.recordLoadSuccess(System.nanoTime() - start);
+			return ret;
+		} catch (RuntimeException | Error e) {
+			this.stats.recordLoadFailure(System.nanoTime() - start);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Removes all specified keys as a batch. When removal listeners are set or entries expire, keys are removed one by one.
+	 * When a writer is set, keys are deleted by the writer first.
+	 */
+	public void invalidateAll(Iterable<? extends K> keys) {
+		ICacheWriter<K, V> w = this.writer;
+		if (w != null) {
+			ArrayList<K> list = new ArrayList<>();
+			for (K key : keys) {
+				list.add(key);
+			}
+			w.deleteAll(list);
+		}
+		ExpirationTracker<K> exp = this.expiration;
+		if (exp != null) {
+			// One by one, storage and tracking of every key are changed together
+			for (K key : keys) {
+				this.remove(key, RemovalCause.EXPLICIT);
+			}
+		} else if (this.hasRemovalListeners()) {
+			for (K key : keys) {
+				this.notifyRemoval(key, this.cache.getAndRemove(key), RemovalCause.EXPLICIT);
+			}
+		} else {
+			this.cache.removeAll(keys);
+		}
+	}
+	
+	/**
+	 * @return keys of the storage; depending on the storage it's either a read-only concurrent view or a snapshot.
+	 * Use {@link CacheSnapshot} to dump contents of the cache.
+	 */
 	public Set<K> keySet() {
 		return this.cache.keySet();
 	}
+	
+	/**
+	 * @return snapshot of keys from the least to the most recently used
+	 */
+	List<K> keysInAccessOrder() {
+		return this.cache.keysInAccessOrder();
+	}
+	
+	// Lookup which doesn't change recency and doesn't record statistics
+	V peek(K key) {
+		V ret = this.cache.get(key);
+		if (ret == null) {
+			return null;
+		}
+		ExpirationTracker<K> exp = this.expiration;
+		if (exp != null && exp.isExpired(key)) {
+			return null;
+		}
+		return ret;
+	}
 }
-
@@ -0,0 +1,111 @@
+package net.inveed.commons.cache;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of a named cache, read from properties with "cache.&lt;name&gt;." prefix:
+ * <ul>
+ * <li>policy - {@link CachePolicy} name, applied when the cache is created by {@link CacheManager#getOrCreateCache(String)}</li>
+ * <li>maxSize</li>
+ * <li>maxWeight</li>
+ * <li>expireAfterWrite - milliseconds</li>
+ * <li>expireAfterAccess - milliseconds</li>
+ * <li>refreshAfterWrite - milliseconds</li>
+ * <li>recordStats - true/false</li>
+ * </ul>
+ */
+final class CacheConfig {
+	static final String PREFIX = "cache.";
+	
+	private final String name;
+	private CachePolicy policy;
+	private Integer maxSize;
+	private Long maxWeight;
+	private Long expireAfterWrite;
+	private Long expireAfterAccess;
+	private Long refreshAfterWrite;
+	private Boolean recordStats;
+	
+	private CacheConfig(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * @return configuration of the cache or null if properties contain nothing for it.
+	 */
+	static CacheConfig parse(String name, Properties props) {
+		String prefix = PREFIX + name + ".";
+		CacheConfig ret = new CacheConfig(name);
+		boolean found = false;
+		try {
+			String v = props.getProperty(prefix + "policy");
+			if (v != null) {
+				ret.policy = CachePolicy.valueOf(v.trim().toUpperCase());
+				found = true;
+			}
+			v = props.getProperty(prefix + "maxSize");
+			if (v != null) {
+				ret.maxSize = Integer.valueOf(v.trim());
+				found = true;
+			}
+			v = props.getProperty(prefix + "maxWeight");
+			if (v != null) {
+				ret.maxWeight = Long.valueOf(v.trim());
+				found = true;
+			}
+			v = props.getProperty(prefix + "expireAfterWrite");
+			if (v != null) {
+				ret.expireAfterWrite = Long.valueOf(v.trim());
+				found = true;
+			}
+			v = props.getProperty(prefix + "expireAfterAccess");
+			if (v != null) {
+				ret.expireAfterAccess = Long.valueOf(v.trim());
+				found = true;
+			}
+			v = props.getProperty(prefix + "refreshAfterWrite");
+			if (v != null) {
+				ret.refreshAfterWrite = Long.valueOf(v.trim());
+				found = true;
+			}
+			v = props.getProperty(prefix + "recordStats");
+			if (v != null) {
+				ret.recordStats = Boolean.valueOf(v.trim());
+				found = true;
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid configuration of cache " + name + ": " + e.getMessage(), e);
+		}
+		return found ? ret : null;
+	}
+	
+	String getName() {
+		return this.name;
+	}
+	
+	CachePolicy getPolicy() {
+		return this.policy == null ? CachePolicy.LRU : this.policy;
+	}
+	
+	void applyTo(Cache<?, ?> cache) {
+		if (this.maxSize != null) {
+			cache.setMaxSize(this.maxSize);
+		}
+		if (this.maxWeight != null) {
+			cache.setMaxWeight(this.maxWeight);
+		}
+		if (this.expireAfterWrite != null) {
+			cache.setExpireAfterWrite(this.expireAfterWrite, TimeUnit.MILLISECONDS);
+		}
+		if (this.expireAfterAccess != null) {
+			cache.setExpireAfterAccess(this.expireAfterAccess, TimeUnit.MILLISECONDS);
+		}
+		if (this.refreshAfterWrite != null) {
+			cache.setRefreshAfterWrite(this.refreshAfterWrite, TimeUnit.MILLISECONDS);
+		}
+		if (this.recordStats != null && this.recordStats != cache.isRecordingStats()) {
+			cache.setRecordStats(this.recordStats);
+		}
+	}
+}
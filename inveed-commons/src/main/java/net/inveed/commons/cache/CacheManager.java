@@ -1,22 +1,205 @@
 package net.inveed.commons.cache;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of all caches. Caches are held by weak references, so unused caches can be garbage collected.
+ */
 public class CacheManager {
+	private static final Logger LOG = LoggerFactory.getLogger(CacheManager.class);
 	public static final CacheManager INSTANCE = new CacheManager();
-	private ArrayList<Cache<?, ?>> caches = new ArrayList<>();
+	
+	private static final class CacheRef extends WeakReference<Cache<?, ?>> {
+		final String name;
+		
+		CacheRef(Cache<?, ?> cache, String name, ReferenceQueue<Cache<?, ?>> queue) {
+			super(cache, queue);
+			this.name = name;
+		}
+	}
+	
+	private final Set<CacheRef> caches = ConcurrentHashMap.newKeySet();
+	private final ConcurrentHashMap<String, CacheRef> namedCaches = new ConcurrentHashMap<>();
+	private final ReferenceQueue<Cache<?, ?>> collected = new ReferenceQueue<>();
+	private volatile Properties properties = new Properties();
+	private ObjectName mbeanName;
 	
 	private CacheManager() {}
+	
+	/**
+	 * Configures the cache and publishes it. Called as the last step of the cache construction.
+	 * @throws IllegalArgumentException if a cache with the same name is registered
+	 */
 	void register(Cache<?, ?> cache) {
-		this.caches.add(cache);
+		this.expungeCollected();
+		String name = cache.getName();
+		CacheRef ref = new CacheRef(cache, name, this.collected);
+		if (name != null) {
+			// Configured before the cache is visible to others: a failed configuration leaves the registry unchanged
+			Properties props = this.properties;
+			CacheConfig config = CacheConfig.parse(name, props);
+			if (config != null) {
+				config.applyTo(cache);
+			}
+			CacheRef prev = this.namedCaches.putIfAbsent(name, ref);
+			if (prev != null && (prev.get() != null || !this.namedCaches.replace(name, prev, ref))) {
+				throw new IllegalArgumentException("Cache with name " + name + " already registered");
+			}
+			if (props != this.properties) {
+				// Reconfigured concurrently, configure() could miss the cache
+				config = this.getConfig(name);
+				if (config != null) {
+					config.applyTo(cache);
+				}
+			}
+		}
+		this.caches.add(ref);
+	}
+	
+	private void expungeCollected() {
+		CacheRef ref;
+		while ((ref = (CacheRef) this.collected.poll()) != null) {
+			this.caches.remove(ref);
+			if (ref.name != null) {
+				this.namedCaches.remove(ref.name, ref);
+			}
+		}
+	}
+	
+	private CacheConfig getConfig(String name) {
+		return CacheConfig.parse(name, this.properties);
+	}
+	
+	/**
+	 * Sets configuration of named caches, see {@link CacheConfig} for the list of properties.
+	 * Configuration is applied to existing caches as well, except the policy.
+	 */
+	public void configure(Properties properties) {
+		if (properties == null) {
+			throw new NullPointerException("properties is null");
+		}
+		Properties copy = new Properties();
+		copy.putAll(properties);
+		this.properties = copy;
+		
+		this.expungeCollected();
+		for (CacheRef ref : this.namedCaches.values()) {
+			Cache<?, ?> c = ref.get();
+			if (c == null) {
+				continue;
+			}
+			CacheConfig config = this.getConfig(ref.name);
+			if (config != null) {
+				config.applyTo(c);
+			}
+		}
+	}
+	
+	/**
+	 * @return cache registered with the name or null
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> Cache<K, V> getCache(String name) {
+		if (name == null) {
+			return null;
+		}
+		CacheRef ref = this.namedCaches.get(name);
+		if (ref == null) {
+			return null;
+		}
+		return (Cache<K, V>) ref.get();
 	}
 	
 	/**
-	 * Clear all caches
+	 * Returns cache registered with the name, or creates it using policy from configuration.
+	 */
+	public <K, V> Cache<K, V> getOrCreateCache(String name) {
+		if (name == null) {
+			throw new NullPointerException("name is null");
+		}
+		Cache<K, V> ret = this.getCache(name);
+		if (ret != null) {
+			return ret;
+		}
+		synchronized (this.namedCaches) {
+			ret = this.getCache(name);
+			if (ret != null) {
+				return ret;
+			}
+			CacheConfig config = this.getConfig(name);
+			CachePolicy policy = config == null ? CachePolicy.LRU : config.getPolicy();
+			LOG.debug("Creating cache {} with policy {}", name, policy);
+			return new Cache<K, V>(name, policy.<K, V>createStorage());
+		}
+	}
+	
+	/**
+	 * @return names of registered caches
+	 */
+	public Set<String> getCacheNames() {
+		this.expungeCollected();
+		return Collections.unmodifiableSet(this.namedCaches.keySet());
+	}
+	
+	private List<Cache<?, ?>> getCaches() {
+		this.expungeCollected();
+		ArrayList<Cache<?, ?>> ret = new ArrayList<>(this.caches.size());
+		for (CacheRef ref : this.caches) {
+			Cache<?, ?> c = ref.get();
+			if (c != null) {
+				ret.add(c);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Clear all caches. 
+	 * Doesn't lock the registry, so caches can be used and created while flushing.
+	 * Values of loads in flight aren't put into cleared caches, see {@link Cache#clear()}.
 	 */
 	public void flush() {
-		for (Cache<?, ?> c : this.caches) {
+		for (Cache<?, ?> c : this.getCaches()) {
 			c.clear();
 		}
 	}
+	
+	/**
+	 * @return sum of statistics of all caches
+	 */
+	public CacheStats getStats() {
+		CacheStats ret = CacheStats.EMPTY;
+		for (Cache<?, ?> c : this.getCaches()) {
+			ret = ret.plus(c.getStats());
+		}
+		return ret;
+	}
+	
+	/**
+	 * Registers {@link CacheStatsMXBean} with aggregated statistics of all caches in the platform MBean server.
+	 */
+	public synchronized void registerMBean() {
+		if (this.mbeanName == null) {
+			this.mbeanName = CacheStatsBean.register("type=CacheManager", this, CacheManager::getStats);
+		}
+	}
+	
+	public synchronized void unregisterMBean() {
+		if (this.mbeanName != null) {
+			CacheStatsBean.unregister(this.mbeanName);
+			this.mbeanName = null;
+		}
+	}
 }
@@ -0,0 +1,36 @@
+package net.inveed.commons.cache;
+
+/**
+ * Eviction policy of caches created by {@link CacheManager}.
+ */
+public enum CachePolicy {
+	/**
+	 * {@link LRUStorage}
+	 */
+	LRU,
+	/**
+	 * {@link StripedLRUStorage}
+	 */
+	STRIPED_LRU,
+	/**
+	 * {@link TinyLfuStorage}
+	 */
+	TINY_LFU,
+	/**
+	 * {@link ArrayLRUStorage}
+	 */
+	ARRAY_LRU;
+	
+	public <K, V> ICacheStorage<K, V> createStorage() {
+		switch (this) {
+		case STRIPED_LRU:
+			return new StripedLRUStorage<>();
+		case TINY_LFU:
+			return new TinyLfuStorage<>();
+		case ARRAY_LRU:
+			return new ArrayLRUStorage<>();
+		default:
+			return new LRUStorage<>();
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package net.inveed.commons.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Dumps cache contents to a compact binary stream and warms a cache up from it.
+ * Keys are written from the least to the most recently used, so loading restores the eviction order.
+ * A snapshot contains either keys and values, or keys only; values of a keys-only snapshot are
+ * loaded by a bulk loader.
+ * Writing doesn't block writers of the cache: keys are copied from the storage first, then
+ * entries are serialized one by one. Entries changed during writing may be in any of their states,
+ * entries removed during writing are skipped.
+ *
+ * Format: magic, version, flags, then records of key length, key and (optionally) value length and value,
+ * terminated by -1 and the number of records.
+ */
+public final class CacheSnapshot {
+	private static final int MAGIC = 0x494E534E;
+	private static final int VERSION = 1;
+	private static final byte FLAG_VALUES = 1;
+	private static final int END = -1;
+	// Number of entries put into the cache at once when loading
+	private static final int LOAD_BATCH = 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private CacheSnapshot() {
+	}
+
+	/**
+	 * Writes snapshot into the file. The file is replaced atomically when the snapshot is complete.
+	 * @param valueSerializer serializer of values, null to write keys only
+	 * @return number of written entries
+	 */
+	public static <K, V> int write(Cache<K, V> cache, File file, ISerializer<K> keySerializer, ISerializer<V> valueSerializer) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		int ret;
+		try {
+			try (FileOutputStream out = new FileOutputStream(tmp)) {
+				ret = write(cache, out, keySerializer, valueSerializer);
+				out.getFD().sync();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp.toPath());
+			throw e;
+		}
+		return ret;
+	}
+
+	/**
+	 * Writes snapshot into the stream. The stream isn't closed.
+	 * @param valueSerializer serializer of values, null to write keys only
+	 * @return number of written entries
+	 */
+	public static <K, V> int write(Cache<K, V> cache, OutputStream out, ISerializer<K> keySerializer, ISerializer<V> valueSerializer) throws IOException {
+		if (keySerializer == null) {
+			throw new NullPointerException("keySerializer is null");
+		}
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		dos.writeByte(valueSerializer == null ? 0 : FLAG_VALUES);
+
+		List<K> keys = cache.keysInAccessOrder();
+		int ret = 0;
+		for (K key : keys) {
+			V value = cache.peek(key);
+			if (value == null) {
+				continue;
+			}
+			writeBytes(dos, keySerializer.serialize(key));
+			if (valueSerializer != null) {
+				writeBytes(dos, valueSerializer.serialize(value));
+			}
+			ret++;
+		}
+		dos.writeInt(END);
+		dos.writeInt(ret);
+		dos.flush();
+		return ret;
+	}
+
+	private static void writeBytes(DataOutputStream dos, byte[] data) throws IOException {
+		dos.writeInt(data.length);
+		dos.write(data);
+	}
+
+	/**
+	 * Loads snapshot with values from the file.
+	 * @see #load(Cache, InputStream, ISerializer, ISerializer, Function)
+	 */
+	public static <K, V> int load(Cache<K, V> cache, File file, ISerializer<K> keySerializer, ISerializer<V> valueSerializer) throws IOException {
+		try (FileInputStream in = new FileInputStream(file)) {
+			return load(cache, in, keySerializer, valueSerializer, null);
+		}
+	}
+
+	/**
+	 * Loads snapshot from the file, values of a keys-only snapshot are loaded by the bulk loader.
+	 * @see #load(Cache, InputStream, ISerializer, ISerializer, Function)
+	 */
+	public static <K, V> int load(Cache<K, V> cache, File file, ISerializer<K> keySerializer, ISerializer<V> valueSerializer,
+			Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) throws IOException {
+		try (FileInputStream in = new FileInputStream(file)) {
+			return load(cache, in, keySerializer, valueSerializer, bulkLoader);
+		}
+	}
+
+	/**
+	 * Puts entries of the snapshot into the cache by batches.
+	 * Entries already present in the cache are kept; loaded entries aren't passed to the cache writer.
+	 * If the stream is corrupted, entries loaded before the corrupted record stay in the cache.
+	 * @param valueSerializer serializer of values, can be null for keys-only snapshots
+	 * @param bulkLoader loader of values for keys-only snapshots, can be null for snapshots with values
+	 * @return number of loaded entries
+	 * @throws IOException if the stream isn't a valid snapshot
+	 */
+	public static <K, V> int load(Cache<K, V> cache, InputStream in, ISerializer<K> keySerializer, ISerializer<V> valueSerializer,
+			Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) throws IOException {
+		if (keySerializer == null) {
+			throw new NullPointerException("keySerializer is null");
+		}
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+		if (dis.readInt() != MAGIC) {
+			throw new IOException("Stream is not a cache snapshot");
+		}
+		int version = dis.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported version " + version + " of cache snapshot");
+		}
+		boolean hasValues = (dis.readByte() & FLAG_VALUES) != 0;
+		if (hasValues && valueSerializer == null) {
+			throw new IllegalArgumentException("Snapshot contains values, value serializer is required");
+		}
+		if (!hasValues && bulkLoader == null) {
+			throw new IllegalArgumentException("Snapshot contains keys only, bulk loader is required");
+		}
+
+		int ret = 0;
+		int count = 0;
+		LinkedHashMap<K, V> values = new LinkedHashMap<>();
+		LinkedHashSet<K> keys = new LinkedHashSet<>();
+		int length;
+		while ((length = dis.readInt()) != END) {
+			K key = keySerializer.deserialize(readBytes(dis, length));
+			count++;
+			if (hasValues) {
+				V value = valueSerializer.deserialize(readBytes(dis, dis.readInt()));
+				if (!cache.containsKey(key)) {
+					values.put(key, value);
+				}
+				if (values.size() >= LOAD_BATCH) {
+					ret += putBatch(cache, values);
+				}
+			} else {
+				if (!cache.containsKey(key)) {
+					keys.add(key);
+				}
+				if (keys.size() >= LOAD_BATCH) {
+					ret += loadBatch(cache, keys, bulkLoader);
+				}
+			}
+		}
+		ret += hasValues ? putBatch(cache, values) : loadBatch(cache, keys, bulkLoader);
+		if (dis.readInt() != count) {
+			throw new IOException("Cache snapshot is corrupted: number of records doesn't match");
+		}
+		return ret;
+	}
+
+	private static byte[] readBytes(DataInputStream dis, int length) throws IOException {
+		if (length < 0) {
+			throw new IOException("Cache snapshot is corrupted: invalid record length " + length);
+		}
+		byte[] ret = new byte[length];
+		dis.readFully(ret);
+		return ret;
+	}
+
+	private static <K, V> int putBatch(Cache<K, V> cache, LinkedHashMap<K, V> values) {
+		int ret = values.size();
+		if (ret > 0) {
+			cache.putAllInternal(values);
+			values.clear();
+		}
+		return ret;
+	}
+
+	private static <K, V> int loadBatch(Cache<K, V> cache, LinkedHashSet<K> keys,
+			Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+		if (keys.isEmpty()) {
+			return 0;
+		}
+		// The set is reused for the next batch, so the loader gets a copy
+		Map<? extends K, ? extends V> loaded = bulkLoader.apply(new LinkedHashSet<>(keys));
+		if (loaded == null) {
+			throw new NullPointerException("bulkLoader returned null");
+		}
+		// Keep the order of the snapshot, skipping keys without values
+		LinkedHashMap<K, V> values = new LinkedHashMap<>();
+		for (K key : keys) {
+			V value = loaded.get(key);
+			if (value != null) {
+				values.put(key, value);
+			}
+		}
+		keys.clear();
+		return putBatch(cache, values);
+	}
+}
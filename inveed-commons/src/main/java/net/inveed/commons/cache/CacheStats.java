@@ -0,0 +1,122 @@
+package net.inveed.commons.cache;
+
+/**
+ * Immutable snapshot of cache statistics.
+ * @see Cache#getStats()
+ * @see CacheManager#getStats()
+ */
+public final class CacheStats {
+	public static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+	private final long hitCount;
+	private final long missCount;
+	private final long loadSuccessCount;
+	private final long loadFailureCount;
+	private final long totalLoadTime;
+	private final long evictionCount;
+	private final long expirationCount;
+	private final long size;
+	private final long weight;
+
+	public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTime,
+			long evictionCount, long expirationCount, long size, long weight) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.loadSuccessCount = loadSuccessCount;
+		this.loadFailureCount = loadFailureCount;
+		this.totalLoadTime = totalLoadTime;
+		this.evictionCount = evictionCount;
+		this.expirationCount = expirationCount;
+		this.size = size;
+		this.weight = weight;
+	}
+
+	public long getHitCount() {
+		return this.hitCount;
+	}
+
+	public long getMissCount() {
+		return this.missCount;
+	}
+
+	public long getRequestCount() {
+		return this.hitCount + this.missCount;
+	}
+
+	/**
+	 * @return ratio of hits to all requests, 1.0 if there were no requests.
+	 */
+	public double getHitRate() {
+		long requests = this.getRequestCount();
+		return requests == 0 ? 1.0 : (double) this.hitCount / requests;
+	}
+
+	public long getLoadSuccessCount() {
+		return this.loadSuccessCount;
+	}
+
+	public long getLoadFailureCount() {
+		return this.loadFailureCount;
+	}
+
+	/**
+	 * @return total time spent in loaders, in nanoseconds
+	 */
+	public long getTotalLoadTime() {
+		return this.totalLoadTime;
+	}
+
+	/**
+	 * @return average time of a load, in nanoseconds
+	 */
+	public double getAverageLoadPenalty() {
+		long loads = this.loadSuccessCount + this.loadFailureCount;
+		return loads == 0 ? 0.0 : (double) this.totalLoadTime / loads;
+	}
+
+	/**
+	 * @return number of entries evicted because of size or weight limit
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount;
+	}
+
+	/**
+	 * @return number of entries removed because they expired
+	 */
+	public long getExpirationCount() {
+		return this.expirationCount;
+	}
+
+	public long getSize() {
+		return this.size;
+	}
+
+	public long getWeight() {
+		return this.weight;
+	}
+
+	/**
+	 * @return sum of this and other statistics
+	 */
+	public CacheStats plus(CacheStats other) {
+		return new CacheStats(
+				this.hitCount + other.hitCount,
+				this.missCount + other.missCount,
+				this.loadSuccessCount + other.loadSuccessCount,
+				this.loadFailureCount + other.loadFailureCount,
+				this.totalLoadTime + other.totalLoadTime,
+				this.evictionCount + other.evictionCount,
+				this.expirationCount + other.expirationCount,
+				this.size + other.size,
+				this.weight + other.weight);
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats {hits=" + this.hitCount + ", misses=" + this.missCount
+				+ ", loadSuccess=" + this.loadSuccessCount + ", loadFailure=" + this.loadFailureCount
+				+ ", totalLoadTime=" + this.totalLoadTime + ", evictions=" + this.evictionCount
+				+ ", expirations=" + this.expirationCount + ", size=" + this.size + ", weight=" + this.weight + "}";
+	}
+}
@@ -0,0 +1,141 @@
+package net.inveed.commons.cache;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics MBean of a cache or a cache manager. The bean references its owner weakly, so registration
+ * doesn't keep the owner from being collected; the bean of a collected owner unregisters itself
+ * when it is accessed or when another bean is registered with the same name.
+ */
+final class CacheStatsBean<T> implements CacheStatsMXBean {
+	static final String DOMAIN = "net.inveed.commons.cache";
+
+	// Beans registered by this class, to tell own stale beans from foreign ones
+	private static final ConcurrentHashMap<ObjectName, CacheStatsBean<?>> registered = new ConcurrentHashMap<>();
+
+	private final WeakReference<T> owner;
+	// Shouldn't reference the owner
+	private final Function<? super T, CacheStats> stats;
+	private final ObjectName name;
+
+	private CacheStatsBean(T owner, Function<? super T, CacheStats> stats, ObjectName name) {
+		this.owner = new WeakReference<>(owner);
+		this.stats = stats;
+		this.name = name;
+	}
+
+	/**
+	 * @throws IllegalStateException if MBean with the same name is already registered
+	 */
+	static <T> ObjectName register(String properties, T owner, Function<? super T, CacheStats> stats) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+			CacheStatsBean<?> prev = registered.get(name);
+			if (prev != null && prev.owner.get() == null) {
+				prev.unregister();
+			}
+			CacheStatsBean<T> bean = new CacheStatsBean<>(owner, stats, name);
+			server.registerMBean(bean, name);
+			registered.put(name, bean);
+			return name;
+		} catch (InstanceAlreadyExistsException e) {
+			throw new IllegalStateException("MBean " + properties + " is already registered", e);
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register cache MBean " + properties, e);
+		}
+	}
+
+	static void unregister(ObjectName name) {
+		CacheStatsBean<?> bean = registered.get(name);
+		if (bean != null) {
+			bean.unregister();
+		}
+	}
+
+	private void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (registered.remove(this.name, this)) {
+				server.unregisterMBean(this.name);
+			}
+		} catch (InstanceNotFoundException e) {
+			// Unregistered directly in the server
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot unregister cache MBean " + this.name, e);
+		}
+	}
+
+	private CacheStats stats() {
+		T o = this.owner.get();
+		if (o == null) {
+			this.unregister();
+			throw new IllegalStateException("Cache was garbage collected");
+		}
+		return this.stats.apply(o);
+	}
+
+	@Override
+	public long getHitCount() {
+		return this.stats().getHitCount();
+	}
+
+	@Override
+	public long getMissCount() {
+		return this.stats().getMissCount();
+	}
+
+	@Override
+	public double getHitRate() {
+		return this.stats().getHitRate();
+	}
+
+	@Override
+	public long getLoadSuccessCount() {
+		return this.stats().getLoadSuccessCount();
+	}
+
+	@Override
+	public long getLoadFailureCount() {
+		return this.stats().getLoadFailureCount();
+	}
+
+	@Override
+	public long getTotalLoadTime() {
+		return this.stats().getTotalLoadTime();
+	}
+
+	@Override
+	public double getAverageLoadPenalty() {
+		return this.stats().getAverageLoadPenalty();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return this.stats().getEvictionCount();
+	}
+
+	@Override
+	public long getExpirationCount() {
+		return this.stats().getExpirationCount();
+	}
+
+	@Override
+	public long getSize() {
+		return this.stats().getSize();
+	}
+
+	@Override
+	public long getWeight() {
+		return this.stats().getWeight();
+	}
+}
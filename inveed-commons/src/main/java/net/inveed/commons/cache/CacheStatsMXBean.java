@@ -0,0 +1,20 @@
+package net.inveed.commons.cache;
+
+/**
+ * JMX view of cache statistics.
+ * @see Cache#registerMBean(String)
+ * @see CacheManager#registerMBean()
+ */
+public interface CacheStatsMXBean {
+	long getHitCount();
+	long getMissCount();
+	double getHitRate();
+	long getLoadSuccessCount();
+	long getLoadFailureCount();
+	long getTotalLoadTime();
+	double getAverageLoadPenalty();
+	long getEvictionCount();
+	long getExpirationCount();
+	long getSize();
+	long getWeight();
+}
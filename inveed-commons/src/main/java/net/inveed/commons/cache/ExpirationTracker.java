@@ -0,0 +1,292 @@
+package net.inveed.commons.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Tracks write and access time of cache entries and finds expired ones using {@link TimerWheel}.
+ * Reads only update the access time of the entry; the timer is moved lazily when it fires.
+ * A key stays tracked while it's being written to the storage: tracking is stopped only by
+ * conditional removals, which are atomic with respect to the start of writes of the key and
+ * skip keys with writes in progress. So a value in the storage is always tracked.
+ */
+final class ExpirationTracker<K> {
+	static final class Entry<K> extends TimerWheel.Node<K> {
+		volatile long writeTime;
+		volatile long accessTime;
+		// Number of writes of the key to the storage in progress
+		final AtomicInteger writes = new AtomicInteger();
+
+		Entry(K key, long now) {
+			super(key);
+			this.writeTime = now;
+			this.accessTime = now;
+		}
+	}
+
+	static final long NOT_TRACKED = Long.MIN_VALUE;
+
+	// 0 - disabled
+	private volatile long expireAfterWriteNanos;
+	private volatile long expireAfterAccessNanos;
+
+	private final ConcurrentHashMap<K, Entry<K>> entries = new ConcurrentHashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final TimerWheel<K> wheel;
+	// Time of the last wheel advance, in wheel ticks
+	private volatile long lastTick;
+
+	ExpirationTracker() {
+		long now = now();
+		this.wheel = new TimerWheel<>(now);
+		this.lastTick = TimerWheel.ticks(now);
+	}
+
+	static long now() {
+		return System.nanoTime();
+	}
+
+	void setExpireAfterWriteNanos(long nanos) {
+		this.expireAfterWriteNanos = nanos;
+	}
+
+	void setExpireAfterAccessNanos(long nanos) {
+		this.expireAfterAccessNanos = nanos;
+	}
+
+	long getExpireAfterWriteNanos() {
+		return this.expireAfterWriteNanos;
+	}
+
+	long getExpireAfterAccessNanos() {
+		return this.expireAfterAccessNanos;
+	}
+
+	private static boolean isExpired(long deadline, long now) {
+		return deadline != Long.MAX_VALUE && deadline - now <= 0;
+	}
+
+	private long deadline(Entry<K> e) {
+		long ret = Long.MAX_VALUE;
+		long ew = this.expireAfterWriteNanos;
+		if (ew > 0) {
+			ret = e.writeTime + ew;
+		}
+		long ea = this.expireAfterAccessNanos;
+		if (ea > 0) {
+			ret = Math.min(ret, e.accessTime + ea);
+		}
+		return ret;
+	}
+
+	/**
+	 * Starts write of the key: the key is tracked with the current time as write time
+	 * and isn't removed from tracking until {@link #endWrite(Entry)} is called.
+	 * Should be called before the value is written to the storage.
+	 */
+	Entry<K> startWrite(K key) {
+		long now = now();
+		ArrayList<Entry<K>> created = new ArrayList<>(1);
+		Entry<K> e = this.entries.compute(key, (k, prev) -> {
+			Entry<K> ret = prev;
+			if (ret == null) {
+				ret = new Entry<>(k, now);
+				created.add(ret);
+			}
+			// Timer of a known entry fires too early now, it will be rescheduled then.
+			ret.writeTime = now;
+			ret.accessTime = now;
+			ret.writes.incrementAndGet();
+			return ret;
+		});
+		if (!created.isEmpty()) {
+			this.lock.lock();
+			try {
+				// Could be removed already, then it shouldn't be scheduled
+				if (!e.isScheduled() && this.entries.get(key) == e) {
+					e.time = this.deadline(e);
+					this.wheel.schedule(e);
+				}
+			} finally {
+				this.lock.unlock();
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * Should be called after the value is written to the storage, even if writing failed.
+	 */
+	void endWrite(Entry<K> e) {
+		e.writes.decrementAndGet();
+	}
+
+	void onAccess(K key) {
+		if (this.expireAfterAccessNanos <= 0) {
+			return;
+		}
+		Entry<K> e = this.entries.get(key);
+		if (e != null) {
+			e.accessTime = now();
+		}
+	}
+
+	/**
+	 * Runs the action for the key and stops tracking the key, atomically with respect to starts of writes.
+	 * Nothing is done if the key is being written: the write happens after the removal then.
+	 * @return false if the key is being written and the action wasn't run
+	 */
+	boolean remove(K key, Runnable action) {
+		return this.removeIf(key, (e) -> {
+			action.run();
+			return true;
+		});
+	}
+
+	/**
+	 * Runs the action if the key is tracked and expired, stopping tracking it,
+	 * atomically with respect to starts of writes: a new value written after the expiration was checked
+	 * is neither removed nor passed to the action.
+	 * @return true if the action was run
+	 */
+	boolean removeExpired(K key, Runnable action) {
+		return this.removeIf(key, (e) -> {
+			if (e == null || !isExpired(this.deadline(e), now())) {
+				return false;
+			}
+			action.run();
+			return true;
+		});
+	}
+
+	/**
+	 * Stops tracking the key if it's tracked, isn't being written and the condition returns true.
+	 * The condition is checked atomically with respect to starts of writes of the key,
+	 * so a write which starts after it doesn't lose tracking.
+	 */
+	void untrackIf(K key, Predicate<? super K> condition) {
+		this.removeIf(key, (e) -> e != null && condition.test(key));
+	}
+
+	/**
+	 * Stops tracking every key which isn't being written and for which the condition returns true.
+	 */
+	void untrackAllIf(Predicate<? super K> condition) {
+		for (K key : this.entries.keySet()) {
+			this.untrackIf(key, condition);
+		}
+	}
+
+	// The action gets the entry of the key or null for untracked key;
+	// it isn't called if the key is being written. Tracking is stopped if it returns true.
+	private boolean removeIf(K key, Predicate<Entry<K>> action) {
+		ArrayList<Entry<K>> removed = new ArrayList<>(1);
+		boolean[] ret = new boolean[1];
+		this.entries.compute(key, (k, e) -> {
+			if (e != null && e.writes.get() > 0) {
+				return e;
+			}
+			if (!action.test(e)) {
+				return e;
+			}
+			ret[0] = true;
+			if (e != null) {
+				removed.add(e);
+			}
+			return null;
+		});
+		if (!removed.isEmpty()) {
+			this.lock.lock();
+			try {
+				this.wheel.deschedule(removed.get(0));
+			} finally {
+				this.lock.unlock();
+			}
+		}
+		return ret[0];
+	}
+
+	/**
+	 * @return write time of the entry or {@link #NOT_TRACKED}
+	 */
+	long getWriteTime(K key) {
+		Entry<K> e = this.entries.get(key);
+		if (e == null) {
+			return NOT_TRACKED;
+		}
+		return e.writeTime;
+	}
+
+	boolean isExpired(K key) {
+		Entry<K> e = this.entries.get(key);
+		if (e == null) {
+			return false;
+		}
+		return isExpired(this.deadline(e), now());
+	}
+
+	/**
+	 * Advances timers and removes expired entries from tracking.
+	 * Does nothing if another thread is already doing it.
+	 * @return keys of expired entries.
+	 */
+	List<K> expire() {
+		long now = now();
+		long tick = TimerWheel.ticks(now);
+		if (tick == this.lastTick || !this.lock.tryLock()) {
+			// Nothing can expire within the same tick
+			return Collections.emptyList();
+		}
+		ArrayList<K> ret = new ArrayList<>();
+		try {
+			this.lastTick = tick;
+			this.wheel.advance(now, (n) -> {
+				Entry<K> e = (Entry<K>) n;
+				long deadline = this.deadline(e);
+				if (!isExpired(deadline, now)) {
+					e.time = deadline;
+					return false;
+				}
+				if (!this.entries.remove(e.key, e)) {
+					// Removed from tracking already
+					return true;
+				}
+				// Write which started before the removal has updated the times and is seen here
+				deadline = this.deadline(e);
+				if (!isExpired(deadline, now) || e.writes.get() > 0) {
+					if (this.entries.putIfAbsent(e.key, e) == null) {
+						e.time = deadline;
+						return false;
+					}
+					// Tracked by a new entry already
+					return true;
+				}
+				ret.add(e.key);
+				return true;
+			});
+		} finally {
+			this.lock.unlock();
+		}
+		return ret;
+	}
+
+	/**
+	 * Runs the action for the expired key unless the key is tracked again.
+	 * Writes of the key wait for the action, so a concurrent write either happens
+	 * before it and the action isn't run, or starts to track the key after it.
+	 * @return true if the action was run
+	 */
+	boolean ifUntracked(K key, Runnable action) {
+		return this.entries.compute(key, (k, e) -> {
+			if (e == null) {
+				action.run();
+			}
+			return e;
+		}) == null;
+	}
+}
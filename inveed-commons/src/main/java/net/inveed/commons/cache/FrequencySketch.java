@@ -0,0 +1,104 @@
+package net.inveed.commons.cache;
+
+/**
+ * Count-Min sketch with 4-bit counters, used to estimate how often a key was accessed.
+ * All counters are halved when the number of increments reaches 10 times the capacity,
+ * so old popularity fades out.
+ * Not thread-safe: should be used under the storage lock.
+ */
+final class FrequencySketch {
+	private static final long[] SEED = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	private static final int MAX_FREQUENCY = 15;
+
+	private long[] table;
+	private int tableMask;
+	private int sampleSize;
+	private int size;
+
+	FrequencySketch() {
+		this.ensureCapacity(16);
+	}
+
+	/**
+	 * Resizes the sketch for the specified number of entries. Collected frequencies are lost on resize.
+	 */
+	void ensureCapacity(long maximumSize) {
+		int maximum = (int) Math.min(maximumSize, Integer.MAX_VALUE >>> 1);
+		if (this.table != null && this.table.length >= maximum) {
+			return;
+		}
+		int length = 1;
+		while (length < maximum) {
+			length <<= 1;
+		}
+		this.table = new long[length];
+		this.tableMask = length - 1;
+		this.sampleSize = 10 * maximum;
+		if (this.sampleSize <= 0) {
+			this.sampleSize = Integer.MAX_VALUE;
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * @return estimated number of accesses, from 0 to 15
+	 */
+	int frequency(Object e) {
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		int ret = MAX_FREQUENCY;
+		for (int i = 0; i < 4; i++) {
+			int index = this.indexOf(hash, i);
+			int count = (int) ((this.table[index] >>> ((start + i) << 2)) & 0xfL);
+			ret = Math.min(ret, count);
+		}
+		return ret;
+	}
+
+	void increment(Object e) {
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= this.incrementAt(this.indexOf(hash, i), start + i);
+		}
+		if (added && ++this.size >= this.sampleSize) {
+			this.reset();
+		}
+	}
+
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = 0xfL << offset;
+		if ((this.table[i] & mask) != mask) {
+			this.table[i] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	// Halves all counters
+	private void reset() {
+		int count = 0;
+		for (int i = 0; i < this.table.length; i++) {
+			count += Long.bitCount(this.table[i] & ONE_MASK);
+			this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+		}
+		this.size = (this.size >>> 1) - (count >>> 2);
+	}
+
+	private int indexOf(int item, int i) {
+		long hash = (item + SEED[i]) * SEED[i];
+		hash += hash >>> 32;
+		return ((int) hash) & this.tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+}
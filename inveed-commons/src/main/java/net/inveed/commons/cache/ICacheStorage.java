@@ -0,0 +1,139 @@
+package net.inveed.commons.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Storage engine used by {@link Cache}.
+ * Implementations should be thread-safe and keep (at least approximate) LRU order for eviction.
+ */
+public interface ICacheStorage<K, T> {
+	T get(K key);
+	
+	/**
+	 * Returns value and marks it as recently used.
+	 */
+	default T access(K key) {
+		T ret = this.get(key);
+		if (ret != null) {
+			this.put(key, ret);
+		}
+		return ret;
+	}
+	
+	void put(K key, T value);
+	void remove(K key);
+	
+	/**
+	 * Puts the value.
+	 * Default implementation is not atomic, storages should override it.
+	 * @return replaced value or null
+	 */
+	default T getAndPut(K key, T value) {
+		T ret = this.get(key);
+		this.put(key, value);
+		return ret;
+	}
+	
+	/**
+	 * Removes the value.
+	 * Default implementation is not atomic, storages should override it.
+	 * @return removed value or null
+	 */
+	default T getAndRemove(K key) {
+		T ret = this.get(key);
+		this.remove(key);
+		return ret;
+	}
+
+	/**
+	 * Removes tired items to fit required size
+	 * @param maxSize
+	 */
+	void shrink(int maxSize);
+	
+	/**
+	 * Removes tired items to fit required total weight
+	 * @param maxWeight
+	 */
+	void shrinkWeight(long maxWeight);
+	
+	/**
+	 * @return total weight of all entries. Equals to size if weigher isn't set.
+	 */
+	default long weight() {
+		return this.size();
+	}
+	
+	/**
+	 * Sets weigher used to calculate weight of new entries, every entry weighs 1 without weigher.
+	 * Storages with fixed weights, e.g. lengths of values, throw {@link UnsupportedOperationException}.
+	 */
+	void setWeigher(IWeigher<? super K, ? super T> weigher);
+
+	/**
+	 * Sets listener which should be called for every entry evicted by the storage itself.
+	 * Listener shouldn't be called under storage locks.
+	 */
+	default void setEvictionListener(BiConsumer<? super K, ? super T> listener) {
+	}
+
+	/**
+	 * Sets eviction listener which gets null values if valuesRequired is false.
+	 * Storages which copy values out of their memory to pass them to the listener,
+	 * e.g. {@link OffHeapStorage}, don't copy evicted values then.
+	 */
+	default void setEvictionListener(BiConsumer<? super K, ? super T> listener, boolean valuesRequired) {
+		this.setEvictionListener(listener);
+	}
+	
+	int size();
+	boolean isEmpty();
+	void clear();
+	boolean containsKey(K key);
+	
+	/**
+	 * Puts all entries. Implementations should take their locks once per batch.
+	 */
+	void putAll(Map<? extends K, ? extends T> m);
+	
+	/**
+	 * Returns values of present keys and marks them as recently used.
+	 * @return map of found entries, missing keys are absent
+	 */
+	default Map<K, T> accessAll(Iterable<? extends K> keys) {
+		HashMap<K, T> ret = new HashMap<>();
+		for (K key : keys) {
+			T value = this.access(key);
+			if (value != null) {
+				ret.put(key, value);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Removes all specified keys. Implementations should take their locks once per batch.
+	 */
+	default void removeAll(Iterable<? extends K> keys) {
+		for (K key : keys) {
+			this.remove(key);
+		}
+	}
+	
+	Set<K> keySet();
+	
+	/**
+	 * Returns snapshot of keys ordered from the least to the most recently used, i.e. in the order
+	 * they should be put into an empty storage to restore the eviction order.
+	 * Implementations should copy keys quickly and release their locks before the snapshot is used.
+	 * Default implementation doesn't keep the order.
+	 */
+	default List<K> keysInAccessOrder() {
+		return new ArrayList<>(this.keySet());
+	}
+}
@@ -0,0 +1,35 @@
+package net.inveed.commons.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes cache changes to an underlying store.
+ * Called by {@link Cache} for explicit puts and removes; values loaded by the cache, evictions
+ * and expirations are not written.
+ * @see Cache#setWriter(ICacheWriter)
+ * @see WriteBehindWriter
+ */
+public interface ICacheWriter<K, V> {
+	void write(K key, V value);
+	
+	void delete(K key);
+	
+	/**
+	 * Writes all entries. Stores supporting batches should override it.
+	 */
+	default void writeAll(Map<? extends K, ? extends V> entries) {
+		for (Map.Entry<? extends K, ? extends V> e : entries.entrySet()) {
+			this.write(e.getKey(), e.getValue());
+		}
+	}
+	
+	/**
+	 * Deletes all keys. Stores supporting batches should override it.
+	 */
+	default void deleteAll(Collection<? extends K> keys) {
+		for (K key : keys) {
+			this.delete(key);
+		}
+	}
+}
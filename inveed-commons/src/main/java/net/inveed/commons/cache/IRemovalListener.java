@@ -0,0 +1,12 @@
+package net.inveed.commons.cache;
+
+/**
+ * Listener of entries removed from {@link Cache}, e.g. to release resources held by values.
+ * @see Cache#addRemovalListener(IRemovalListener)
+ */
+public interface IRemovalListener<K, V> {
+	/**
+	 * Called after the entry was removed. Exceptions thrown by the listener are logged and ignored.
+	 */
+	void onRemoval(K key, V value, RemovalCause cause);
+}
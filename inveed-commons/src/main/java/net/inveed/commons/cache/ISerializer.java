@@ -0,0 +1,45 @@
+package net.inveed.commons.cache;
+
+import net.inveed.commons.utils.ByteArrayConvertor;
+
+/**
+ * Converts cache keys and values to bytes and back, used by storages which keep entries out of the heap.
+ */
+public interface ISerializer<T> {
+	/**
+	 * Serializer which stores byte arrays as is.
+	 */
+	ISerializer<byte[]> BYTES = new ISerializer<byte[]>() {
+		@Override
+		public byte[] serialize(byte[] value) {
+			return value;
+		}
+
+		@Override
+		public byte[] deserialize(byte[] data) {
+			return data;
+		}
+	};
+
+	/**
+	 * Serializer which stores strings in UTF-8.
+	 */
+	ISerializer<String> STRING = new ISerializer<String>() {
+		@Override
+		public byte[] serialize(String value) {
+			return value.getBytes(ByteArrayConvertor.UTF8_CHARSET);
+		}
+
+		@Override
+		public String deserialize(byte[] data) {
+			return new String(data, ByteArrayConvertor.UTF8_CHARSET);
+		}
+	};
+
+	/**
+	 * @return serialized value, should not be null
+	 */
+	byte[] serialize(T value);
+
+	T deserialize(byte[] data);
+}
@@ -0,0 +1,36 @@
+package net.inveed.commons.cache;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * Second level of {@link TieredStorage}: storage shared by several caches, possibly in different processes.
+ * Implementations should be thread-safe. They may drop entries at any time, e.g. when they don't fit;
+ * every change should be published to other clients of the tier as an invalidation.
+ */
+public interface ISharedCacheTier<K, V> extends Closeable {
+	V get(K key);
+
+	void put(K key, V value);
+
+	void remove(K key);
+
+	/**
+	 * Removes all entries for all clients.
+	 */
+	void clear();
+
+	/**
+	 * @return number of changes published to the tier by all clients so far.
+	 * A value read by {@link #get(Object)} is current if the sequence didn't move while it was read.
+	 */
+	long getInvalidationSequence();
+
+	/**
+	 * Passes keys changed by other clients since the previous call to the listener.
+	 * Changes made through this instance are not reported.
+	 * Should return quickly when there are no changes, it is called on every lookup.
+	 * @return false if some changes were lost and all keys should be considered changed
+	 */
+	boolean pollInvalidations(Consumer<? super K> listener);
+}
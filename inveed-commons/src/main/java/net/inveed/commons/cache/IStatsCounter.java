@@ -0,0 +1,58 @@
+package net.inveed.commons.cache;
+
+/**
+ * Accumulates cache statistics.
+ */
+interface IStatsCounter {
+	/**
+	 * Counter which records nothing, used when statistics are disabled.
+	 */
+	IStatsCounter DISABLED = new IStatsCounter() {
+		@Override
+		public void recordHit() {
+		}
+
+		@Override
+		public void recordMiss() {
+		}
+
+		@Override
+		public void recordHits(int count) {
+		}
+
+		@Override
+		public void recordMisses(int count) {
+		}
+
+		@Override
+		public void recordLoadSuccess(long loadTime) {
+		}
+
+		@Override
+		public void recordLoadFailure(long loadTime) {
+		}
+
+		@Override
+		public void recordEviction() {
+		}
+
+		@Override
+		public void recordExpiration() {
+		}
+
+		@Override
+		public CacheStats snapshot(long size, long weight) {
+			return new CacheStats(0, 0, 0, 0, 0, 0, 0, size, weight);
+		}
+	};
+
+	void recordHit();
+	void recordMiss();
+	void recordHits(int count);
+	void recordMisses(int count);
+	void recordLoadSuccess(long loadTime);
+	void recordLoadFailure(long loadTime);
+	void recordEviction();
+	void recordExpiration();
+	CacheStats snapshot(long size, long weight);
+}
@@ -0,0 +1,13 @@
+package net.inveed.commons.cache;
+
+/**
+ * Calculates weight of cache entries, e.g. approximate size in bytes.
+ * Used for weight-based eviction, see {@link Cache#setMaxWeight(long)}.
+ */
+public interface IWeigher<K, V> {
+	/**
+	 * @return weight of the entry, should not be negative.
+	 * Called on every put, so it should be cheap.
+	 */
+	int weigh(K key, V value);
+}
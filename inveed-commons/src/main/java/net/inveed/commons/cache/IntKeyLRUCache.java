@@ -0,0 +1,202 @@
+package net.inveed.commons.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * LRU cache with primitive int keys.
+ * Keys aren't boxed and entries don't have node objects: keys, values and links of the recency list
+ * are kept in arrays preallocated for the maximum size, so steady-state operations allocate nothing.
+ * All operations take the lock; critical sections are short and don't allocate.
+ * Null values are not supported.
+ */
+public final class IntKeyLRUCache<V> {
+	private final class Table extends ArrayLRUTable {
+		int[] keys;
+
+		Table(int capacity) {
+			super(capacity);
+			this.keys = new int[capacity];
+		}
+
+		@Override
+		int hashOf(int entry) {
+			return hash(this.keys[entry]);
+		}
+
+		@Override
+		void resizeKeys(int length) {
+			this.keys = Arrays.copyOf(this.keys, length);
+		}
+
+		// Returns slot of the key or (-insertion slot - 1) if the key is absent
+		int find(int key) {
+			int i = hash(key) & this.mask;
+			int e;
+			while ((e = this.table[i]) != 0) {
+				if (this.keys[e - 1] == key) {
+					return i;
+				}
+				i = (i + 1) & this.mask;
+			}
+			return -i - 1;
+		}
+	}
+
+	private final Table table;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	public IntKeyLRUCache(int maxSize) {
+		this.table = new Table(maxSize);
+	}
+
+	private static int hash(int key) {
+		return ArrayLRUTable.spread(key);
+	}
+
+	/**
+	 * Returns value and marks it as recently used.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		this.lock.lock();
+		try {
+			int slot = this.table.find(key);
+			if (slot < 0) {
+				return null;
+			}
+			int e = this.table.table[slot] - 1;
+			this.table.touch(e);
+			return (V) this.table.values[e];
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Puts the value, evicting the least recently used entry if the cache is full.
+	 * @return replaced value or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value is null");
+		}
+		this.lock.lock();
+		try {
+			int slot = this.table.find(key);
+			if (slot >= 0) {
+				int e = this.table.table[slot] - 1;
+				V ret = (V) this.table.values[e];
+				this.table.values[e] = value;
+				this.table.touch(e);
+				return ret;
+			}
+			int e = this.table.newEntry();
+			if (e == ArrayLRUTable.NONE) {
+				this.table.removeEntry(this.table.first());
+				e = this.table.newEntry();
+				slot = this.table.find(key);
+			}
+			this.table.keys[e] = key;
+			this.table.values[e] = value;
+			this.table.addEntry(-slot - 1, e);
+			return null;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return removed value or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		this.lock.lock();
+		try {
+			int slot = this.table.find(key);
+			if (slot < 0) {
+				return null;
+			}
+			int e = this.table.table[slot] - 1;
+			V ret = (V) this.table.values[e];
+			this.table.removeEntry(e);
+			return ret;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public boolean containsKey(int key) {
+		this.lock.lock();
+		try {
+			return this.table.find(key) >= 0;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Calls the action for every entry, from the least to the most recently used.
+	 * Action is called under the lock, so it should not modify the cache.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(ObjIntConsumer<? super V> action) {
+		this.lock.lock();
+		try {
+			for (int e = this.table.first(); e != ArrayLRUTable.NONE; e = this.table.next(e)) {
+				action.accept((V) this.table.values[e], this.table.keys[e]);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.table.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	public void clear() {
+		this.lock.lock();
+		try {
+			this.table.clearEntries();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public int getMaxSize() {
+		this.lock.lock();
+		try {
+			return this.table.capacity();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Changes maximum size, evicting least recently used entries if required.
+	 * Memory isn't released when the size is decreased.
+	 */
+	public void setMaxSize(int maxSize) {
+		this.lock.lock();
+		try {
+			while (this.table.size() > maxSize && maxSize > 0) {
+				this.table.removeEntry(this.table.first());
+			}
+			this.table.setCapacity(maxSize);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
@@ -1,14 +1,34 @@
 package net.inveed.commons.cache;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
-public final class LRUStorage<K, T> {
+/**
+ * LRU storage backed by {@link ConcurrentHashMap}.
+ * Lookups never take the lock; the LRU list is modified under the lock only.
+ * Null keys are not supported.
+ */
+public final class LRUStorage<K, T> implements ICacheStorage<K, T> {
+	// Number of entries evicted under one lock acquisition
+	private static final int EVICTION_BATCH = 64;
+	// Number of batches evicted by one call when other threads wait for eviction
+	private static final int MAX_CONTENDED_BATCHES = 4;
+	
 	private final class LRUItem {
-		public T item;
+		public volatile T item;
 		public final K key;
+		public int weight;
 		public LRUItem previous;
 		public LRUItem next;
 		LRUItem(K key, T item) {
@@ -18,16 +38,43 @@ public final class LRUStorage<K, T> {
 	}
 	
 	// Least used
-	private LRUItem last;
+	private volatile LRUItem last;
 	
 	// First (Long-time ago) used. This item will be deleted first when required.
-	private LRUItem first;
+	private volatile LRUItem first;
 	
-	private final HashMap<K, LRUItem> map = new HashMap<K, LRUItem>();
+	// Replaced by clear, modified under the lock only
+	private volatile ConcurrentHashMap<K, LRUItem> map = new ConcurrentHashMap<K, LRUItem>();
 	ReentrantLock lock = new ReentrantLock();
+	
+	private volatile IWeigher<? super K, ? super T> weigher;
+	// Modified under the lock only
+	private volatile long weight;
+	
+	private volatile BiConsumer<? super K, ? super T> evictionListener;
+	
+	// Reads recorded without lock. Applied to the LRU list in batches.
+	private final ReadBuffer<LRUItem> readBuffer;
+	private final Consumer<LRUItem> accessApplier = this::applyAccessUnsafe;
+	
+	// Set while some thread evicts entries
+	private final AtomicBoolean evicting = new AtomicBoolean();
+	// Incremented by calls which found eviction in progress
+	private final AtomicInteger evictionRequests = new AtomicInteger();
 
+	public LRUStorage() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
 	
+	LRUStorage(int readBufferStripes) {
+		this.readBuffer = new ReadBuffer<>(readBufferStripes);
+	}
+	
+	@Override
 	public T get(K streamId) {
+		if (streamId == null) {
+			return null;
+		}
 		LRUItem ret = map.get(streamId);
 		if (ret != null) {
 			return ret.item;
@@ -36,80 +83,243 @@ public final class LRUStorage<K, T> {
 	}
 	
 	/**
-	 * Removes tired items to fit required size
+	 * Returns value and marks it as recently used.
+	 * Never blocks: access is recorded into the read buffer, which is drained into the LRU list
+	 * when it fills up or on the next write.
+	 */
+	@Override
+	public T access(K key) {
+		if (key == null) {
+			return null;
+		}
+		LRUItem ret = map.get(key);
+		if (ret == null) {
+			return null;
+		}
+		if (this.readBuffer.offer(ret) && this.lock.tryLock()) {
+			try {
+				this.drainReadBufferUnsafe();
+			} finally {
+				this.lock.unlock();
+			}
+		}
+		return ret.item;
+	}
+	
+	private void drainReadBufferUnsafe() {
+		this.readBuffer.drainTo(this.accessApplier);
+	}
+	
+	private void applyAccessUnsafe(LRUItem item) {
+		// Item could be removed after the access was recorded
+		if (this.map.get(item.key) == item) {
+			this.moveBackUnsafe(item);
+		}
+	}
+	
+	/**
+	 * Removes tired items to fit required size.
+	 * @see #evict(BooleanSupplier)
 	 * @param maxSize
 	 */
+	@Override
 	public void shrink(int maxSize) {
-		if (this.size() < maxSize) {
+		if (this.size() <= maxSize) {
 			return;
 		}
 		if (maxSize < 1) {
 			this.clear();
 			return;
 		}
-		this.lock.lock();
-		try {
-			LRUItem lastDeleted = null;
-			while (this.map.size() > maxSize && this.first != null) {
-				lastDeleted = this.first;
-				this.map.remove(lastDeleted.key);
-				removeFromListUnsafe(lastDeleted);
+		this.evict(() -> this.map.size() > maxSize);
+	}
+	
+	/**
+	 * Removes tired items to fit required total weight.
+	 * @see #evict(BooleanSupplier)
+	 * @param maxWeight
+	 */
+	@Override
+	public void shrinkWeight(long maxWeight) {
+		if (this.weight <= maxWeight) {
+			return;
+		}
+		this.evict(() -> this.weight > maxWeight);
+	}
+	
+	/**
+	 * Evicts entries while the storage overflows.
+	 * Entries are evicted by batches and the lock is released between them, so writers
+	 * don't wait for the whole eviction. Only one thread evicts at a time: when eviction
+	 * is already in progress, the call returns immediately and the overflow is handled 
+	 * by the evicting thread or by the next call.
+	 * The evicting thread doesn't pay for everyone: when other threads asked for eviction meanwhile,
+	 * it stops after {@link #MAX_CONTENDED_BATCHES} batches and the rest is evicted by next writes.
+	 */
+	private void evict(BooleanSupplier overflow) {
+		while (overflow.getAsBoolean()) {
+			if (!this.evicting.compareAndSet(false, true)) {
+				this.evictionRequests.incrementAndGet();
+				return;
 			}
-		} finally {
-			this.lock.unlock();
+			boolean capped;
+			try {
+				capped = this.evictBatches(overflow);
+			} finally {
+				this.evicting.set(false);
+			}
+			if (capped) {
+				return;
+			}
+		}
+	}
+	
+	// Returns true if stopped before the overflow was resolved
+	private boolean evictBatches(BooleanSupplier overflow) {
+		int requests = this.evictionRequests.get();
+		for (int batch = 1; ; batch++) {
+			ArrayList<LRUItem> evicted = this.evictionListener == null ? null : new ArrayList<>();
+			boolean more;
+			this.lock.lock();
+			try {
+				this.drainReadBufferUnsafe();
+				for (int i = 0; i < EVICTION_BATCH && this.first != null && overflow.getAsBoolean(); i++) {
+					this.evictUnsafe(evicted);
+				}
+				more = this.first != null && overflow.getAsBoolean();
+			} finally {
+				this.lock.unlock();
+			}
+			this.notifyEvicted(evicted);
+			if (!more) {
+				return false;
+			}
+			if (batch >= MAX_CONTENDED_BATCHES && this.evictionRequests.get() != requests) {
+				return true;
+			}
+			if (this.lock.hasQueuedThreads()) {
+				// Let waiting writers take the lock before the next batch
+				Thread.yield();
+			}
+		}
+	}
+	
+	@Override
+	public long weight() {
+		return this.weight;
+	}
+	
+	/**
+	 * Sets weigher used to calculate weight of new entries. 
+	 * Should be set before entries are added; without weigher every entry weighs 1.
+	 */
+	@Override
+	public void setWeigher(IWeigher<? super K, ? super T> weigher) {
+		this.weigher = weigher;
+	}
+	
+	private int weigh(K key, T value) {
+		IWeigher<? super K, ? super T> w = this.weigher;
+		if (w == null) {
+			return 1;
+		}
+		int ret = w.weigh(key, value);
+		if (ret < 0) {
+			throw new IllegalArgumentException("Weight should not be negative");
+		}
+		return ret;
+	}
+	
+	/**
+	 * Sets listener called for every entry evicted by {@link #shrink(int)} or {@link #shrinkWeight(long)}.
+	 * Listener is called after the lock is released.
+	 */
+	@Override
+	public void setEvictionListener(BiConsumer<? super K, ? super T> listener) {
+		this.evictionListener = listener;
+	}
+	
+	private void evictUnsafe(ArrayList<LRUItem> evicted) {
+		LRUItem item = this.first;
+		this.removeUnsafe(item);
+		if (evicted != null) {
+			evicted.add(item);
 		}
 	}
 	
+	private void notifyEvicted(ArrayList<LRUItem> evicted) {
+		BiConsumer<? super K, ? super T> listener = this.evictionListener;
+		if (evicted == null || listener == null) {
+			return;
+		}
+		for (LRUItem i : evicted) {
+			listener.accept(i.key, i.item);
+		}
+	}
+	
+	private void removeUnsafe(LRUItem item) {
+		this.map.remove(item.key);
+		this.removeFromListUnsafe(item);
+		this.weight -= item.weight;
+	}
+	
+	@Override
 	public int size() {
 		return this.map.size();
 	}
 
+	@Override
 	public void put(K key, T value) {
+		this.getAndPut(key, value);
+	}
+	
+	@Override
+	public T getAndPut(K key, T value) {
+		if (key == null) {
+			throw new NullPointerException("key is null");
+		}
+		int itemWeight = this.weigh(key, value);
+		// Existing item is updated under the lock too: otherwise the value could be written
+		// into an item which is being removed by another thread.
+		this.lock.lock();
+		try {
+			this.drainReadBufferUnsafe();
+			return this.updateUnsafe(key, value, itemWeight);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+	
+	private T updateUnsafe(K key, T value, int itemWeight) {
 		LRUItem lruItem = map.get(key);
 		if (lruItem != null) {
+			T ret = lruItem.item;
 			lruItem.item = value;
-			if (lruItem != this.last) {
-				this.lock.lock();
-				try {
-					this.moveBackUnsafe(lruItem);
-				} finally {
-					this.lock.unlock();
-				}
-			}
-			
-			return;
+			this.weight += itemWeight - lruItem.weight;
+			lruItem.weight = itemWeight;
+			this.moveBackUnsafe(lruItem);
+			return ret;
 		}
 		
-		// Not found in map (without lock).
-		this.lock.lock();
-		try {
-			//Trying again (with lock)
-			lruItem = map.get(key);
-			if (lruItem != null) {
-				lruItem.item = value;
-				this.moveBackUnsafe(lruItem);
-				return;
-			}
-			
-			lruItem = new LRUItem(key, value) ;
-			lruItem.previous = this.last;
-			lruItem.next = null;
+		lruItem = new LRUItem(key, value) ;
+		lruItem.weight = itemWeight;
+		this.weight += itemWeight;
+		lruItem.previous = this.last;
+		lruItem.next = null;
 
-			if (this.last != null) {
-				this.last.next = lruItem;
-			} else {
-				if (this.first != null) {
-					//TODO: LOG, invalid state!
-				}
-				this.first = lruItem;
+		if (this.last != null) {
+			this.last.next = lruItem;
+		} else {
+			if (this.first != null) {
+				//TODO: LOG, invalid state!
 			}
-			
-			this.last = lruItem;
-
-			map.put(key, lruItem);
-		} finally {
-			this.lock.unlock();
+			this.first = lruItem;
 		}
+		
+		this.last = lruItem;
+
+		map.put(key, lruItem);
+		return null;
 	}
 	
 	private void removeFromListUnsafe(LRUItem item) {
@@ -147,63 +357,191 @@ public final class LRUStorage<K, T> {
 		return;
 	}
 	
+	@Override
 	public void remove(K key) {
+		this.getAndRemove(key);
+	}
+	
+	@Override
+	public T getAndRemove(K key) {
+		if (key == null) {
+			return null;
+		}
 		this.lock.lock();
 		try {
-			if (key == null) {
-				return;
-			}
 			LRUItem i = this.map.get(key);
 			if (i == null) {
-				return;
+				return null;
+			}
+			this.removeUnsafe(i);
+			return i.item;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+	
+	/**
+	 * Evicts the least recently used entry, notifying eviction listener.
+	 * @return false if storage is empty
+	 */
+	boolean evictFirst() {
+		ArrayList<LRUItem> evicted = this.evictionListener == null ? null : new ArrayList<>(1);
+		this.lock.lock();
+		try {
+			this.drainReadBufferUnsafe();
+			if (this.first == null) {
+				return false;
 			}
-			this.removeFromListUnsafe(i);
-			this.map.remove(key);
+			this.evictUnsafe(evicted);
 		} finally {
 			this.lock.unlock();
 		}
+		this.notifyEvicted(evicted);
+		return true;
 	}
 	
+	/**
+	 * Replaces values of all entries by the function, keeping their order and weights.
+	 * Function is called under the lock, so it should not modify the storage.
+	 */
+	void replaceAll(UnaryOperator<T> function) {
+		this.lock.lock();
+		try {
+			for (LRUItem i = this.first; i != null; i = i.next) {
+				i.item = function.apply(i.item);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Calls the action for every entry, from the least to the most recently used.
+	 * Action is called under the lock, so it should not modify the storage.
+	 */
+	void forEachOrdered(BiConsumer<? super K, ? super T> action) {
+		this.lock.lock();
+		try {
+			this.drainReadBufferUnsafe();
+			for (LRUItem i = this.first; i != null; i = i.next) {
+				action.accept(i.key, i.item);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Copies keys under the lock, without calling anything per entry.
+	 */
+	@Override
+	public List<K> keysInAccessOrder() {
+		ArrayList<K> ret = new ArrayList<>(this.map.size());
+		this.lock.lock();
+		try {
+			this.drainReadBufferUnsafe();
+			for (LRUItem i = this.first; i != null; i = i.next) {
+				ret.add(i.key);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return ret;
+	}
+
 	public T first() {
-		if (this.first != null) 
-			return first.item;
+		LRUItem ret = this.first;
+		if (ret != null) 
+			return ret.item;
 		return null;
 	}
 	
 	public T last() {
-		if (this.last != null) 
-			return this.last.item;
+		LRUItem ret = this.last;
+		if (ret != null) 
+			return ret.item;
 		
 		return null;
 	}
 
+	@Override
 	public boolean isEmpty() {
 		return this.map.isEmpty();
 	}
 	
+	/**
+	 * Clears the storage in constant time: the map and the list are replaced, old entries are
+	 * reclaimed by GC. Accesses of old entries still in the read buffer are ignored.
+	 */
+	@Override
 	public void clear() {
 		this.lock.lock();
 		try {
-			this.map.clear();
+			this.map = new ConcurrentHashMap<K, LRUItem>();
 			this.first = null;
 			this.last = null;
+			this.weight = 0;
 		} finally {
 			this.lock.unlock();
 		}
 	}
 
+	@Override
 	public boolean containsKey(K key) {
+		if (key == null) {
+			return false;
+		}
 		return this.map.containsKey(key);
 	}
 
+	/**
+	 * Puts all entries under a single lock acquisition.
+	 */
+	@Override
 	public void putAll(Map<? extends K, ? extends T> m) {
-		for (K key : m.keySet()) {
-			this.put(key, m.get(key));
+		int[] weights = new int[m.size()];
+		int i = 0;
+		for (Map.Entry<? extends K, ? extends T> e : m.entrySet()) {
+			if (e.getKey() == null) {
+				throw new NullPointerException("key is null");
+			}
+			weights[i++] = this.weigh(e.getKey(), e.getValue());
+		}
+		this.lock.lock();
+		try {
+			this.drainReadBufferUnsafe();
+			i = 0;
+			for (Map.Entry<? extends K, ? extends T> e : m.entrySet()) {
+				this.updateUnsafe(e.getKey(), e.getValue(), weights[i++]);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+	
+	/**
+	 * Removes all keys under a single lock acquisition.
+	 */
+	@Override
+	public void removeAll(Iterable<? extends K> keys) {
+		this.lock.lock();
+		try {
+			for (K key : keys) {
+				LRUItem i = key == null ? null : this.map.get(key);
+				if (i != null) {
+					this.removeUnsafe(i);
+				}
+			}
+		} finally {
+			this.lock.unlock();
 		}
 	}
 	
+	@Override
 	public Set<K> keySet() {
-		return this.map.keySet();
+		// Removal through the key set would bypass the LRU list.
+		// The view isn't updated by clear, which replaces the map.
+		return Collections.unmodifiableSet(this.map.keySet());
 	}
 }
 
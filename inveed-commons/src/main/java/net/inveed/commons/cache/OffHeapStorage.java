@@ -0,0 +1,311 @@
+package net.inveed.commons.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Storage for byte array values which keeps values in direct memory, out of the Java heap.
+ * Only the index (keys and small slot descriptors) is on-heap, so large caches don't affect GC pauses.
+ * Memory is allocated by {@link SlabAllocator} up to the specified limit; when it is exhausted,
+ * least recently used entries are evicted. Eviction order and limits are the same as for {@link LRUStorage},
+ * weight of an entry is the value length in bytes.
+ * Values are copied on every put and get. Null keys and values are not supported.
+ */
+public final class OffHeapStorage<K> implements ICacheStorage<K, byte[]> {
+	public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+	public static final int DEFAULT_BLOCK_SIZE = 256;
+
+	private static final class Slot {
+		final int firstBlock;
+		final int length;
+		final int generation;
+		// Modified under the write lock
+		boolean freed;
+
+		Slot(int firstBlock, int length, int generation) {
+			this.firstBlock = firstBlock;
+			this.length = length;
+			this.generation = generation;
+		}
+	}
+
+	private final LRUStorage<K, Slot> index = new LRUStorage<>();
+	private final SlabAllocator allocator;
+	// Exclusive mode - allocation, freeing and reset of memory. Shared mode - reading and writing of values.
+	private final StampedLock lock = new StampedLock();
+
+	private volatile BiConsumer<? super K, ? super byte[]> evictionListener;
+	private volatile boolean evictedValuesRequired;
+
+	/**
+	 * @param maxMemory maximum size of direct memory used for values, in bytes
+	 */
+	public OffHeapStorage(long maxMemory) {
+		this(maxMemory, DEFAULT_SLAB_SIZE, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param maxMemory maximum size of direct memory used for values, in bytes
+	 * @param slabSize size of direct buffers allocated at once
+	 * @param blockSize allocation unit, 4 bytes of every block are used for links
+	 */
+	public OffHeapStorage(long maxMemory, int slabSize, int blockSize) {
+		this.allocator = new SlabAllocator(maxMemory, slabSize, blockSize);
+		this.index.setWeigher((k, s) -> s.length);
+		this.index.setEvictionListener(this::onIndexEvicted);
+	}
+
+	private void onIndexEvicted(K key, Slot slot) {
+		BiConsumer<? super K, ? super byte[]> listener = this.evictionListener;
+		if (listener == null) {
+			this.free(slot);
+			return;
+		}
+		if (!this.evictedValuesRequired) {
+			this.free(slot);
+			listener.accept(key, null);
+			return;
+		}
+		byte[] value = this.read(slot);
+		this.free(slot);
+		if (value != null) {
+			listener.accept(key, value);
+		}
+	}
+
+	private boolean isLive(Slot slot) {
+		return !slot.freed && slot.generation == this.allocator.getGeneration();
+	}
+
+	private void free(Slot slot) {
+		if (slot == null) {
+			return;
+		}
+		long stamp = this.lock.writeLock();
+		try {
+			if (this.isLive(slot)) {
+				slot.freed = true;
+				this.allocator.free(slot.firstBlock, slot.length);
+			}
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	private byte[] read(Slot slot) {
+		if (slot == null) {
+			return null;
+		}
+		byte[] ret = new byte[slot.length];
+		long stamp = this.lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				if (this.isLive(slot)) {
+					this.allocator.read(slot.firstBlock, ret);
+					if (this.lock.validate(stamp)) {
+						return ret;
+					}
+				}
+			} catch (RuntimeException e) {
+				// Blocks were reused while reading, retrying under the lock
+			}
+		}
+
+		stamp = this.lock.readLock();
+		try {
+			if (!this.isLive(slot)) {
+				return null;
+			}
+			this.allocator.read(slot.firstBlock, ret);
+			return ret;
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	private Slot write(byte[] value) {
+		if (!this.allocator.fits(value.length)) {
+			// Otherwise everything would be evicted in vain
+			throw new IllegalArgumentException("Value of " + value.length + " bytes doesn't fit into off-heap storage");
+		}
+		while (true) {
+			int first;
+			int generation;
+			long stamp = this.lock.writeLock();
+			try {
+				first = this.allocator.allocate(value.length);
+				generation = this.allocator.getGeneration();
+			} finally {
+				this.lock.unlockWrite(stamp);
+			}
+
+			if (first < 0) {
+				if (!this.index.evictFirst()) {
+					throw new IllegalArgumentException("Value of " + value.length + " bytes doesn't fit into off-heap storage");
+				}
+				continue;
+			}
+
+			stamp = this.lock.readLock();
+			try {
+				if (generation != this.allocator.getGeneration()) {
+					// Storage was cleared after allocation
+					return null;
+				}
+				this.allocator.write(first, value);
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+			return new Slot(first, value.length, generation);
+		}
+	}
+
+	@Override
+	public byte[] get(K key) {
+		return this.read(this.index.get(key));
+	}
+
+	@Override
+	public byte[] access(K key) {
+		return this.read(this.index.access(key));
+	}
+
+	@Override
+	public void put(K key, byte[] value) {
+		this.free(this.putSlot(key, value));
+	}
+
+	@Override
+	public byte[] getAndPut(K key, byte[] value) {
+		Slot prev = this.putSlot(key, value);
+		byte[] ret = this.read(prev);
+		this.free(prev);
+		return ret;
+	}
+
+	// Returns replaced slot, which should be freed by the caller
+	private Slot putSlot(K key, byte[] value) {
+		if (key == null) {
+			throw new NullPointerException("key is null");
+		}
+		if (value == null) {
+			throw new NullPointerException("value is null");
+		}
+		Slot slot = this.write(value);
+		if (slot == null) {
+			return null;
+		}
+		return this.index.getAndPut(key, slot);
+	}
+
+	@Override
+	public void remove(K key) {
+		this.free(this.index.getAndRemove(key));
+	}
+
+	@Override
+	public byte[] getAndRemove(K key) {
+		Slot prev = this.index.getAndRemove(key);
+		byte[] ret = this.read(prev);
+		this.free(prev);
+		return ret;
+	}
+
+	@Override
+	public void shrink(int maxSize) {
+		this.index.shrink(maxSize);
+	}
+
+	/**
+	 * Removes tired items to fit required total length of values
+	 * @param maxWeight
+	 */
+	@Override
+	public void shrinkWeight(long maxWeight) {
+		this.index.shrinkWeight(maxWeight);
+	}
+
+	/**
+	 * @return total length of values in bytes
+	 */
+	@Override
+	public long weight() {
+		return this.index.weight();
+	}
+
+	/**
+	 * Weight of entries is always the length of their values.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void setWeigher(IWeigher<? super K, ? super byte[]> weigher) {
+		throw new UnsupportedOperationException("Weight of off-heap entries is the value length");
+	}
+
+	@Override
+	public void setEvictionListener(BiConsumer<? super K, ? super byte[]> listener) {
+		this.setEvictionListener(listener, true);
+	}
+
+	/**
+	 * Evicted values are copied to the heap only if they are required.
+	 */
+	@Override
+	public void setEvictionListener(BiConsumer<? super K, ? super byte[]> listener, boolean valuesRequired) {
+		this.evictedValuesRequired = valuesRequired;
+		this.evictionListener = listener;
+	}
+
+	/**
+	 * @return direct memory reserved by the storage, in bytes
+	 */
+	public long getReservedMemory() {
+		return this.allocator.getReservedMemory();
+	}
+
+	@Override
+	public int size() {
+		return this.index.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.index.isEmpty();
+	}
+
+	@Override
+	public void clear() {
+		long stamp = this.lock.writeLock();
+		try {
+			this.index.clear();
+			this.allocator.reset();
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		return this.index.containsKey(key);
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends byte[]> m) {
+		for (Map.Entry<? extends K, ? extends byte[]> e : m.entrySet()) {
+			this.put(e.getKey(), e.getValue());
+		}
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return this.index.keySet();
+	}
+	
+	@Override
+	public List<K> keysInAccessOrder() {
+		return this.index.keysInAccessOrder();
+	}
+}
@@ -0,0 +1,541 @@
+package net.inveed.commons.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Storage which keeps entries in a memory-mapped append-only log file, so the cache survives restarts.
+ * Every put and remove is appended to the log; only keys and record offsets are kept in the heap.
+ * When the storage is opened, the index is rebuilt from the log and the cache is warm.
+ * Eviction follows LRU order as in {@link LRUStorage}, evicted entries are removed from the log too.
+ * When more than a half of the log is occupied by dead records, live entries are rewritten
+ * into a new file in LRU order, so recency survives restarts as well.
+ * Values are deserialized on every read. Expiration is not persisted: entries read from the log
+ * don't expire. Null keys and values are not supported.
+ * The storage should be closed when it is not used anymore.
+ */
+public final class PersistentStorage<K, T> implements ICacheStorage<K, T>, Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(PersistentStorage.class);
+
+	public static final int DEFAULT_REGION_SIZE = 64 << 20;
+	private static final String COMPACT_SUFFIX = ".compact";
+	private static final byte[] EMPTY = new byte[0];
+
+	// Immutable, so reads don't need the lock: compaction replaces records of all entries,
+	// the log of a replaced record is still readable
+	private static final class Record {
+		final AppendLog log;
+		final long offset;
+		final int length;
+		final int weight;
+
+		Record(AppendLog log, long offset, int length, int weight) {
+			this.log = log;
+			this.offset = offset;
+			this.length = length;
+			this.weight = weight;
+		}
+	}
+
+	private final File file;
+	private final ISerializer<K> keySerializer;
+	private final ISerializer<T> valueSerializer;
+	private final LRUStorage<K, Record> index = new LRUStorage<>();
+
+	// Shared mode - appends. Exclusive mode - compaction, clear and close.
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	// Keeps order of records in the log the same as order of index updates
+	private final ReentrantLock appendLock = new ReentrantLock();
+
+	// Replaced under the exclusive lock
+	private volatile AppendLog log;
+	private volatile boolean closed;
+	// Length of dead records. Modified under the append lock or the exclusive lock.
+	private volatile long garbage;
+
+	private volatile IWeigher<? super K, ? super T> weigher;
+	private volatile BiConsumer<? super K, ? super T> evictionListener;
+	private volatile boolean evictedValuesRequired;
+
+	/**
+	 * Opens storage from the file or creates a new one.
+	 */
+	public PersistentStorage(File file, ISerializer<K> keySerializer, ISerializer<T> valueSerializer) throws IOException {
+		this(file, keySerializer, valueSerializer, DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * Opens storage from the file or creates a new one.
+	 * @param regionSize size of file regions mapped at once, limits the size of an entry.
+	 * Ignored for existing files.
+	 */
+	public PersistentStorage(File file, ISerializer<K> keySerializer, ISerializer<T> valueSerializer, int regionSize) throws IOException {
+		if (file == null) {
+			throw new NullPointerException("file is null");
+		}
+		if (keySerializer == null) {
+			throw new NullPointerException("keySerializer is null");
+		}
+		if (valueSerializer == null) {
+			throw new NullPointerException("valueSerializer is null");
+		}
+		this.file = file;
+		this.keySerializer = keySerializer;
+		this.valueSerializer = valueSerializer;
+		this.index.setWeigher((k, r) -> r.weight);
+		this.index.setEvictionListener(this::onIndexEvicted);
+
+		// Compaction could be interrupted by a crash
+		Files.deleteIfExists(this.compactFile().toPath());
+		this.log = new AppendLog(file, regionSize);
+		try {
+			boolean clean = this.log.scan(this::replay);
+			this.log.truncate();
+			if (!clean) {
+				LOG.warn("Cache log {} has corrupted tail, it is truncated", file);
+			}
+		} catch (RuntimeException e) {
+			this.log.close();
+			throw e;
+		}
+	}
+
+	private File compactFile() {
+		return new File(this.file.getPath() + COMPACT_SUFFIX);
+	}
+
+	private void replay(byte type, long offset, byte[] key, int valueLength, int weight) {
+		K k = this.keySerializer.deserialize(key);
+		int length = AppendLog.recordLength(key.length, valueLength);
+		Record prev;
+		if (type == AppendLog.PUT) {
+			prev = this.index.getAndPut(k, new Record(this.log, offset, length, weight));
+		} else {
+			prev = this.index.getAndRemove(k);
+			this.garbage += length;
+		}
+		if (prev != null) {
+			this.garbage += prev.length;
+		}
+	}
+
+	private void ensureOpen() {
+		if (this.closed) {
+			throw new IllegalStateException("Storage is closed");
+		}
+	}
+
+	@Override
+	public T get(K key) {
+		this.ensureOpen();
+		return this.read(this.index.get(key));
+	}
+
+	@Override
+	public T access(K key) {
+		this.ensureOpen();
+		return this.read(this.index.access(key));
+	}
+
+	private T read(Record r) {
+		if (r == null) {
+			return null;
+		}
+		return this.valueSerializer.deserialize(r.log.readValue(r.offset));
+	}
+
+	@Override
+	public void put(K key, T value) {
+		this.write(key, value, false);
+	}
+
+	@Override
+	public T getAndPut(K key, T value) {
+		byte[] prev = this.write(key, value, true);
+		return prev == null ? null : this.valueSerializer.deserialize(prev);
+	}
+
+	// Returns serialized replaced value if requested
+	private byte[] write(K key, T value, boolean readPrevious) {
+		if (key == null) {
+			throw new NullPointerException("key is null");
+		}
+		if (value == null) {
+			throw new NullPointerException("value is null");
+		}
+		byte[] k = this.keySerializer.serialize(key);
+		byte[] v = this.valueSerializer.serialize(value);
+		int weight = this.weigh(key, value);
+		byte[] ret = null;
+		this.lock.readLock().lock();
+		try {
+			this.ensureOpen();
+			this.appendLock.lock();
+			try {
+				Record prev = this.appendPutUnsafe(key, k, v, weight);
+				if (prev != null && readPrevious) {
+					ret = prev.log.readValue(prev.offset);
+				}
+			} finally {
+				this.appendLock.unlock();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		this.compactIfNeeded();
+		return ret;
+	}
+
+	@Override
+	public void remove(K key) {
+		this.delete(key, false);
+	}
+
+	@Override
+	public T getAndRemove(K key) {
+		byte[] prev = this.delete(key, true);
+		return prev == null ? null : this.valueSerializer.deserialize(prev);
+	}
+
+	// Returns serialized removed value if requested
+	private byte[] delete(K key, boolean readPrevious) {
+		if (key == null) {
+			return null;
+		}
+		byte[] ret = null;
+		this.lock.readLock().lock();
+		try {
+			this.ensureOpen();
+			this.appendLock.lock();
+			try {
+				if (!this.index.containsKey(key)) {
+					return null;
+				}
+				this.appendRemoveUnsafe(key);
+				Record prev = this.index.getAndRemove(key);
+				if (prev != null) {
+					this.garbage += prev.length;
+					if (readPrevious) {
+						ret = prev.log.readValue(prev.offset);
+					}
+				}
+			} finally {
+				this.appendLock.unlock();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		this.compactIfNeeded();
+		return ret;
+	}
+
+	// Should be called under the append lock, returns replaced record
+	private Record appendPutUnsafe(K key, byte[] k, byte[] v, int weight) throws IOException {
+		AppendLog l = this.log;
+		long offset = l.append(AppendLog.PUT, k, v, weight);
+		Record prev = this.index.getAndPut(key, new Record(l, offset, AppendLog.recordLength(k.length, v.length), weight));
+		if (prev != null) {
+			this.garbage += prev.length;
+		}
+		return prev;
+	}
+
+	// Should be called under the append lock
+	private void appendRemoveUnsafe(K key) throws IOException {
+		byte[] k = this.keySerializer.serialize(key);
+		this.log.append(AppendLog.REMOVE, k, EMPTY, 0);
+		this.garbage += AppendLog.recordLength(k.length, 0);
+	}
+
+	private void onIndexEvicted(K key, Record r) {
+		BiConsumer<? super K, ? super T> listener = this.evictionListener;
+		boolean read = listener != null && this.evictedValuesRequired;
+		byte[] data = null;
+		this.lock.readLock().lock();
+		try {
+			if (this.closed) {
+				return;
+			}
+			if (read) {
+				data = r.log.readValue(r.offset);
+			}
+			this.appendLock.lock();
+			try {
+				// Entry could be put again after eviction. Otherwise it's removed from the log even if the record
+				// is from a previous log: compaction running concurrently with the eviction could copy it.
+				if (!this.index.containsKey(key)) {
+					this.appendRemoveUnsafe(key);
+				}
+				this.garbage += r.length;
+			} finally {
+				this.appendLock.unlock();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		if (data != null) {
+			listener.accept(key, this.valueSerializer.deserialize(data));
+		} else if (listener != null && !read) {
+			listener.accept(key, null);
+		}
+		this.compactIfNeeded();
+	}
+
+	private boolean needsCompaction() {
+		AppendLog l = this.log;
+		long size = l.size();
+		return size > l.getRegionSize() && this.garbage * 2 > size;
+	}
+
+	private void compactIfNeeded() {
+		if (!this.needsCompaction()) {
+			return;
+		}
+		this.lock.writeLock().lock();
+		try {
+			if (!this.closed && this.needsCompaction()) {
+				this.compactUnsafe();
+			}
+		} catch (IOException e) {
+			LOG.warn("Cannot compact cache log " + this.file, e);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Rewrites live entries into a new log file in LRU order, removing dead records.
+	 * Called automatically when dead records take more than a half of the log.
+	 */
+	public void compact() throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			this.ensureOpen();
+			this.compactUnsafe();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private void compactUnsafe() throws IOException {
+		AppendLog source = this.log;
+		File tmp = this.compactFile();
+		Files.deleteIfExists(tmp.toPath());
+		AppendLog target = new AppendLog(tmp, source.getRegionSize());
+		ArrayList<Record> records = new ArrayList<>(this.index.size());
+		IdentityHashMap<Record, Record> copies = new IdentityHashMap<>(records.size());
+		try {
+			this.index.forEachOrdered((k, r) -> records.add(r));
+			for (Record r : records) {
+				copies.put(r, new Record(target, source.copyTo(r.offset, target), r.length, r.weight));
+			}
+			target.force();
+			Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			target.close();
+			Files.deleteIfExists(tmp.toPath());
+			throw e;
+		}
+
+		// Records can't be changed without the shared lock, only reordered
+		this.index.replaceAll(copies::get);
+		this.log = target;
+		this.garbage = 0;
+		source.close();
+	}
+
+	/**
+	 * Writes all changes to the storage device. Changes are kept by the OS if the process crashes,
+	 * flushing is required to survive crash of the OS.
+	 */
+	public void flush() {
+		this.lock.readLock().lock();
+		try {
+			this.ensureOpen();
+			this.log.force();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Flushes and closes the log file. The storage can't be used after that.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			this.index.clear();
+			this.log.force();
+			this.log.close();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void shrink(int maxSize) {
+		this.index.shrink(maxSize);
+	}
+
+	/**
+	 * Removes tired items to fit required total weight
+	 * @param maxWeight
+	 */
+	@Override
+	public void shrinkWeight(long maxWeight) {
+		this.index.shrinkWeight(maxWeight);
+	}
+
+	@Override
+	public long weight() {
+		return this.index.weight();
+	}
+
+	/**
+	 * Sets weigher used to calculate weight of new entries. Weight is stored in the log,
+	 * so entries read from the log keep the weight calculated when they were put.
+	 */
+	@Override
+	public void setWeigher(IWeigher<? super K, ? super T> weigher) {
+		this.weigher = weigher;
+	}
+
+	private int weigh(K key, T value) {
+		IWeigher<? super K, ? super T> w = this.weigher;
+		if (w == null) {
+			return 1;
+		}
+		int ret = w.weigh(key, value);
+		if (ret < 0) {
+			throw new IllegalArgumentException("Weight should not be negative");
+		}
+		return ret;
+	}
+
+	@Override
+	public void setEvictionListener(BiConsumer<? super K, ? super T> listener) {
+		this.setEvictionListener(listener, true);
+	}
+
+	/**
+	 * Evicted values are read from the file only if they are required.
+	 */
+	@Override
+	public void setEvictionListener(BiConsumer<? super K, ? super T> listener, boolean valuesRequired) {
+		this.evictedValuesRequired = valuesRequired;
+		this.evictionListener = listener;
+	}
+
+	@Override
+	public int size() {
+		return this.index.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.index.isEmpty();
+	}
+
+	/**
+	 * Removes all entries and truncates the log.
+	 */
+	@Override
+	public void clear() {
+		this.lock.writeLock().lock();
+		try {
+			this.ensureOpen();
+			this.index.clear();
+			this.compactUnsafe();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		return this.index.containsKey(key);
+	}
+
+	/**
+	 * Appends all entries under one lock acquisition.
+	 */
+	@Override
+	public void putAll(Map<? extends K, ? extends T> m) {
+		int count = m.size();
+		ArrayList<K> keys = new ArrayList<>(count);
+		ArrayList<byte[]> serialized = new ArrayList<>(count * 2);
+		int[] weights = new int[count];
+		for (Map.Entry<? extends K, ? extends T> e : m.entrySet()) {
+			K key = e.getKey();
+			T value = e.getValue();
+			if (key == null) {
+				throw new NullPointerException("key is null");
+			}
+			if (value == null) {
+				throw new NullPointerException("value is null");
+			}
+			weights[keys.size()] = this.weigh(key, value);
+			keys.add(key);
+			serialized.add(this.keySerializer.serialize(key));
+			serialized.add(this.valueSerializer.serialize(value));
+		}
+		if (keys.isEmpty()) {
+			return;
+		}
+		this.lock.readLock().lock();
+		try {
+			this.ensureOpen();
+			this.appendLock.lock();
+			try {
+				for (int i = 0; i < keys.size(); i++) {
+					this.appendPutUnsafe(keys.get(i), serialized.get(i * 2), serialized.get(i * 2 + 1), weights[i]);
+				}
+			} finally {
+				this.appendLock.unlock();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		this.compactIfNeeded();
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return this.index.keySet();
+	}
+	
+	@Override
+	public List<K> keysInAccessOrder() {
+		return this.index.keysInAccessOrder();
+	}
+}
@@ -0,0 +1,100 @@
+package net.inveed.commons.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped lossy ring buffers used to record reads without taking the storage lock.
+ * Any number of threads may call {@link #offer(Object)}, but {@link #drainTo(Consumer)} must be called
+ * by one thread at a time (under the storage lock).
+ * When a stripe is full or contended the event is dropped - recency is a hint, not a guarantee.
+ */
+final class ReadBuffer<E> {
+	static final int STRIPE_SIZE = 16;
+	private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+	private static final int MAX_STRIPES = 64;
+
+	private static final class Stripe<E> {
+		private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+		private final AtomicLong writeCounter = new AtomicLong();
+		// Modified by the draining thread only
+		private volatile long readCounter;
+
+		// Returns true if the stripe is full and should be drained
+		boolean offer(E e) {
+			long head = this.readCounter;
+			long tail = this.writeCounter.get();
+			if (tail - head >= STRIPE_SIZE) {
+				return true;
+			}
+			if (this.writeCounter.compareAndSet(tail, tail + 1)) {
+				this.buffer.lazySet((int) (tail & STRIPE_MASK), e);
+				return tail - head + 1 >= STRIPE_SIZE;
+			}
+			// Contended - skip the event
+			return false;
+		}
+
+		void drainTo(Consumer<E> consumer) {
+			long head = this.readCounter;
+			long tail = this.writeCounter.get();
+			while (head < tail) {
+				int idx = (int) (head & STRIPE_MASK);
+				E e = this.buffer.get(idx);
+				if (e == null) {
+					// Slot reserved, but not published yet.
+					break;
+				}
+				this.buffer.lazySet(idx, null);
+				consumer.accept(e);
+				head++;
+			}
+			this.readCounter = head;
+		}
+	}
+
+	private final Stripe<E>[] stripes;
+	private final int stripesMask;
+
+	ReadBuffer() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	@SuppressWarnings("unchecked")
+	ReadBuffer(int stripesCount) {
+		int count = 1;
+		while (count < stripesCount && count < MAX_STRIPES) {
+			count <<= 1;
+		}
+		this.stripes = (Stripe<E>[]) new Stripe<?>[count];
+		for (int i = 0; i < count; i++) {
+			this.stripes[i] = new Stripe<E>();
+		}
+		this.stripesMask = count - 1;
+	}
+
+	private static int probe() {
+		long id = Thread.currentThread().getId();
+		int h = (int) (id ^ (id >>> 32));
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Records an event.
+	 * @return true if buffer is full and should be drained
+	 */
+	boolean offer(E e) {
+		return this.stripes[probe() & this.stripesMask].offer(e);
+	}
+
+	/**
+	 * Passes all recorded events to the consumer. Should be called by a single thread at a time.
+	 */
+	void drainTo(Consumer<E> consumer) {
+		for (Stripe<E> s : this.stripes) {
+			s.drainTo(consumer);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package net.inveed.commons.cache;
+
+/**
+ * Reason why an entry was removed from {@link Cache}.
+ */
+public enum RemovalCause {
+	/**
+	 * Evicted by the storage to fit maximum size or weight
+	 */
+	SIZE,
+	/**
+	 * Expired after write or access
+	 */
+	EXPIRED,
+	/**
+	 * Removed by {@link Cache#remove(Object)}, {@link Cache#invalidateAll(Iterable)} or {@link Cache#clear()}
+	 */
+	EXPLICIT,
+	/**
+	 * Value was replaced by put
+	 */
+	REPLACED;
+	
+	/**
+	 * @return true if the entry was removed automatically, not by the user
+	 */
+	public boolean wasEvicted() {
+		return this == SIZE || this == EXPIRED;
+	}
+}
@@ -0,0 +1,453 @@
+package net.inveed.commons.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Shared cache tier in a memory-mapped file, used by processes on one host together.
+ * The file contains a fixed-size 4-way set-associative table of slots and a ring of invalidations.
+ * Entries which don't fit into a slot are not stored; when a set is full, the oldest entry of the set is replaced.
+ *
+ * Reads are lock-free: every slot has a sequence number which is odd while the slot is written,
+ * and a checksum of key and value, so torn reads are detected and retried.
+ * Writes are serialized by file locks of the slot set, so they work across processes.
+ * Every change is appended to the invalidation ring. Clients which fall behind by more than the ring capacity
+ * lose changes and should drop everything they copied from the tier.
+ *
+ * Only one instance per file should be opened in a process: file locks are held by the whole JVM.
+ */
+public final class SharedMemoryTier<K, V> implements ISharedCacheTier<K, V> {
+	public static final int DEFAULT_SLOT_SIZE = 1024;
+	public static final int DEFAULT_RING_CAPACITY = 16 * 1024;
+
+	private static final int MAGIC = 0x494E5348;
+	private static final int VERSION = 1;
+	private static final int WAYS = 4;
+	private static final int MAX_READ_ATTEMPTS = 8;
+	private static final int LOCK_STRIPES = 64;
+
+	// Magic, version, set count, slot size, ring capacity; ring head at RING_HEAD
+	private static final int HEADER_SIZE = 64;
+	private static final int RING_HEAD = 32;
+
+	// Sequence, key hash, key length + 1 (0 - empty slot), value length, checksum, write time
+	private static final int SLOT_HEADER_SIZE = 28;
+	private static final int SLOT_HASH = 4;
+	private static final int SLOT_KEY_LENGTH = 8;
+	private static final int SLOT_VALUE_LENGTH = 12;
+	private static final int SLOT_CRC = 16;
+	private static final int SLOT_TIME = 20;
+
+	// Position + 1, writer id, key length (-1 - all keys), key
+	private static final int RING_ENTRY_SIZE = 128;
+	private static final int RING_WRITER = 8;
+	private static final int RING_KEY_LENGTH = 16;
+	private static final int RING_KEY = 20;
+	private static final int MAX_RING_KEY_LENGTH = RING_ENTRY_SIZE - RING_KEY;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final ISerializer<K> keySerializer;
+	private final ISerializer<V> valueSerializer;
+	private final int setCount;
+	private final int slotSize;
+	private final int ringCapacity;
+	private final long slotsOffset;
+	// Identifies changes made through this instance in the ring
+	private final long id = ThreadLocalRandom.current().nextLong();
+
+	// File locks can't be taken twice by one JVM, so writers of the same set wait here first
+	private final ReentrantLock[] setLocks = new ReentrantLock[LOCK_STRIPES];
+	private final ReentrantLock ringLock = new ReentrantLock();
+	private final Object pollLock = new Object();
+	// Next ring position to poll, modified under pollLock
+	private volatile long cursor;
+	private volatile boolean closed;
+
+	/**
+	 * Opens tier from the file or creates a new one with default slot size and ring capacity.
+	 * @param slotCount maximum number of entries
+	 */
+	public SharedMemoryTier(File file, ISerializer<K> keySerializer, ISerializer<V> valueSerializer, int slotCount) throws IOException {
+		this(file, keySerializer, valueSerializer, slotCount, DEFAULT_SLOT_SIZE, DEFAULT_RING_CAPACITY);
+	}
+
+	/**
+	 * Opens tier from the file or creates a new one.
+	 * Slot count, slot size and ring capacity are ignored for existing files, all processes use the ones from the file.
+	 * @param slotCount maximum number of entries
+	 * @param slotSize size of a slot, limits the total length of serialized key and value
+	 * @param ringCapacity number of changes kept for clients which didn't poll them yet
+	 */
+	@SuppressWarnings("try")
+	public SharedMemoryTier(File file, ISerializer<K> keySerializer, ISerializer<V> valueSerializer,
+			int slotCount, int slotSize, int ringCapacity) throws IOException {
+		if (file == null) {
+			throw new NullPointerException("file is null");
+		}
+		if (keySerializer == null) {
+			throw new NullPointerException("keySerializer is null");
+		}
+		if (valueSerializer == null) {
+			throw new NullPointerException("valueSerializer is null");
+		}
+		this.keySerializer = keySerializer;
+		this.valueSerializer = valueSerializer;
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			this.setLocks[i] = new ReentrantLock();
+		}
+
+		this.file = new RandomAccessFile(file, "rw");
+		try {
+			this.channel = this.file.getChannel();
+			// Other processes could create the file at the same time
+			try (FileLock l = this.channel.lock()) {
+				if (this.file.length() == 0) {
+					if (slotCount < 1 || slotSize <= SLOT_HEADER_SIZE || ringCapacity < 1) {
+						throw new IllegalArgumentException("Invalid slot count, slot size or ring capacity");
+					}
+					int sets = (slotCount + WAYS - 1) / WAYS;
+					this.file.setLength(fileSize(sets, slotSize, ringCapacity));
+					this.file.seek(0);
+					this.file.writeInt(MAGIC);
+					this.file.writeInt(VERSION);
+					this.file.writeInt(sets);
+					this.file.writeInt(slotSize);
+					this.file.writeInt(ringCapacity);
+				}
+				this.file.seek(0);
+				if (this.file.length() < HEADER_SIZE || this.file.readInt() != MAGIC) {
+					throw new IOException("File " + file + " is not a shared cache");
+				}
+				int version = this.file.readInt();
+				if (version != VERSION) {
+					throw new IOException("Unsupported version " + version + " of shared cache " + file);
+				}
+				this.setCount = this.file.readInt();
+				this.slotSize = this.file.readInt();
+				this.ringCapacity = this.file.readInt();
+				if (this.setCount < 1 || this.slotSize <= SLOT_HEADER_SIZE || this.ringCapacity < 1
+						|| this.file.length() != fileSize(this.setCount, this.slotSize, this.ringCapacity)) {
+					throw new IOException("Shared cache " + file + " is corrupted");
+				}
+			}
+			this.slotsOffset = HEADER_SIZE + (long) this.ringCapacity * RING_ENTRY_SIZE;
+			this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.file.length());
+			this.cursor = this.buffer.getLong(RING_HEAD);
+		} catch (IOException | RuntimeException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	private static long fileSize(int sets, int slotSize, int ringCapacity) {
+		long ret = HEADER_SIZE + (long) ringCapacity * RING_ENTRY_SIZE + (long) sets * WAYS * slotSize;
+		if (ret > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Shared cache should not exceed 2GB");
+		}
+		return ret;
+	}
+
+	private static int hash(byte[] key) {
+		return ArrayLRUTable.spread(Arrays.hashCode(key));
+	}
+
+	private int setOf(int hash) {
+		return (hash & Integer.MAX_VALUE) % this.setCount;
+	}
+
+	private int setOffset(int set) {
+		return (int) (this.slotsOffset + (long) set * WAYS * this.slotSize);
+	}
+
+	@Override
+	public V get(K key) {
+		if (key == null) {
+			return null;
+		}
+		byte[] k = this.keySerializer.serialize(key);
+		int hash = hash(k);
+		int base = this.setOffset(this.setOf(hash));
+		for (int w = 0; w < WAYS; w++) {
+			byte[] value = this.read(base + w * this.slotSize, k, hash);
+			if (value != null) {
+				return this.valueSerializer.deserialize(value);
+			}
+		}
+		return null;
+	}
+
+	// Returns value bytes if the slot contains the key
+	private byte[] read(int slot, byte[] key, int hash) {
+		CRC32 crc = new CRC32();
+		for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+			int seq = this.buffer.getInt(slot);
+			if ((seq & 1) != 0) {
+				continue;
+			}
+			if (this.buffer.getInt(slot + SLOT_KEY_LENGTH) != key.length + 1 || this.buffer.getInt(slot + SLOT_HASH) != hash) {
+				return null;
+			}
+			int valueLength = this.buffer.getInt(slot + SLOT_VALUE_LENGTH);
+			if (valueLength < 0 || SLOT_HEADER_SIZE + key.length + valueLength > this.slotSize) {
+				continue;
+			}
+			byte[] k = new byte[key.length];
+			byte[] ret = new byte[valueLength];
+			ByteBuffer dup = this.buffer.duplicate();
+			dup.position(slot + SLOT_HEADER_SIZE);
+			dup.get(k);
+			dup.get(ret);
+			crc.reset();
+			crc.update(k);
+			crc.update(ret);
+			if ((int) crc.getValue() != this.buffer.getInt(slot + SLOT_CRC) || this.buffer.getInt(slot) != seq) {
+				continue;
+			}
+			return Arrays.equals(k, key) ? ret : null;
+		}
+		// Slot is being rewritten all the time, treat it as a miss
+		return null;
+	}
+
+	// Returns offset of the slot containing the key or -1, should be called under the set lock
+	private int find(int base, byte[] key, int hash) {
+		for (int w = 0; w < WAYS; w++) {
+			int slot = base + w * this.slotSize;
+			if (this.buffer.getInt(slot + SLOT_KEY_LENGTH) == key.length + 1 && this.buffer.getInt(slot + SLOT_HASH) == hash) {
+				byte[] k = new byte[key.length];
+				ByteBuffer dup = this.buffer.duplicate();
+				dup.position(slot + SLOT_HEADER_SIZE);
+				dup.get(k);
+				if (Arrays.equals(k, key)) {
+					return slot;
+				}
+			}
+		}
+		return -1;
+	}
+
+	// Returns empty or the oldest slot of the set, should be called under the set lock
+	private int victim(int base) {
+		int ret = base;
+		long oldest = Long.MAX_VALUE;
+		for (int w = 0; w < WAYS; w++) {
+			int slot = base + w * this.slotSize;
+			if (this.buffer.getInt(slot + SLOT_KEY_LENGTH) == 0) {
+				return slot;
+			}
+			long time = this.buffer.getLong(slot + SLOT_TIME);
+			if (time < oldest) {
+				oldest = time;
+				ret = slot;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Puts the value. If it doesn't fit into a slot, previous value of the key is removed instead.
+	 */
+	@SuppressWarnings("try")
+	@Override
+	public void put(K key, V value) {
+		if (key == null) {
+			throw new NullPointerException("key is null");
+		}
+		if (value == null) {
+			throw new NullPointerException("value is null");
+		}
+		this.ensureOpen();
+		byte[] k = this.keySerializer.serialize(key);
+		byte[] v = this.valueSerializer.serialize(value);
+		int hash = hash(k);
+		int set = this.setOf(hash);
+		int base = this.setOffset(set);
+		boolean fits = SLOT_HEADER_SIZE + (long) k.length + v.length <= this.slotSize;
+		ReentrantLock lock = this.setLocks[set % LOCK_STRIPES];
+		lock.lock();
+		try (FileLock l = this.channel.lock(base, (long) WAYS * this.slotSize, false)) {
+			int slot = this.find(base, k, hash);
+			if (fits) {
+				this.write(slot < 0 ? this.victim(base) : slot, k, v, hash);
+			} else if (slot >= 0) {
+				this.erase(slot);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.unlock();
+		}
+		this.publish(k);
+	}
+
+	private void write(int slot, byte[] key, byte[] value, int hash) {
+		int seq = this.buffer.getInt(slot);
+		this.buffer.putInt(slot, seq + 1);
+		CRC32 crc = new CRC32();
+		crc.update(key);
+		crc.update(value);
+		this.buffer.putInt(slot + SLOT_HASH, hash);
+		this.buffer.putInt(slot + SLOT_KEY_LENGTH, key.length + 1);
+		this.buffer.putInt(slot + SLOT_VALUE_LENGTH, value.length);
+		this.buffer.putInt(slot + SLOT_CRC, (int) crc.getValue());
+		this.buffer.putLong(slot + SLOT_TIME, System.currentTimeMillis());
+		ByteBuffer dup = this.buffer.duplicate();
+		dup.position(slot + SLOT_HEADER_SIZE);
+		dup.put(key);
+		dup.put(value);
+		this.buffer.putInt(slot, seq + 2);
+	}
+
+	private void erase(int slot) {
+		int seq = this.buffer.getInt(slot);
+		this.buffer.putInt(slot, seq + 1);
+		this.buffer.putInt(slot + SLOT_KEY_LENGTH, 0);
+		this.buffer.putInt(slot, seq + 2);
+	}
+
+	@SuppressWarnings("try")
+	@Override
+	public void remove(K key) {
+		if (key == null) {
+			return;
+		}
+		this.ensureOpen();
+		byte[] k = this.keySerializer.serialize(key);
+		int hash = hash(k);
+		int set = this.setOf(hash);
+		int base = this.setOffset(set);
+		ReentrantLock lock = this.setLocks[set % LOCK_STRIPES];
+		lock.lock();
+		try (FileLock l = this.channel.lock(base, (long) WAYS * this.slotSize, false)) {
+			int slot = this.find(base, k, hash);
+			if (slot >= 0) {
+				this.erase(slot);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.unlock();
+		}
+		this.publish(k);
+	}
+
+	@SuppressWarnings("try")
+	@Override
+	public void clear() {
+		this.ensureOpen();
+		for (int set = 0; set < this.setCount; set++) {
+			int base = this.setOffset(set);
+			ReentrantLock lock = this.setLocks[set % LOCK_STRIPES];
+			lock.lock();
+			try (FileLock l = this.channel.lock(base, (long) WAYS * this.slotSize, false)) {
+				for (int w = 0; w < WAYS; w++) {
+					int slot = base + w * this.slotSize;
+					if (this.buffer.getInt(slot + SLOT_KEY_LENGTH) != 0) {
+						this.erase(slot);
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				lock.unlock();
+			}
+		}
+		this.publish(null);
+	}
+
+	// Appends change of the key to the ring, null key or too long key invalidates all keys
+	@SuppressWarnings("try")
+	private void publish(byte[] key) {
+		this.ringLock.lock();
+		try (FileLock l = this.channel.lock(RING_HEAD, 8, false)) {
+			long head = this.buffer.getLong(RING_HEAD);
+			int entry = (int) (HEADER_SIZE + (head % this.ringCapacity) * RING_ENTRY_SIZE);
+			// Readers which lag behind by the whole ring see the entry as overwritten
+			this.buffer.putLong(entry, 0);
+			this.buffer.putLong(entry + RING_WRITER, this.id);
+			if (key == null || key.length > MAX_RING_KEY_LENGTH) {
+				this.buffer.putInt(entry + RING_KEY_LENGTH, -1);
+			} else {
+				this.buffer.putInt(entry + RING_KEY_LENGTH, key.length);
+				ByteBuffer dup = this.buffer.duplicate();
+				dup.position(entry + RING_KEY);
+				dup.put(key);
+			}
+			this.buffer.putLong(entry, head + 1);
+			this.buffer.putLong(RING_HEAD, head + 1);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.ringLock.unlock();
+		}
+	}
+
+	@Override
+	public long getInvalidationSequence() {
+		return this.buffer.getLong(RING_HEAD);
+	}
+
+	@Override
+	public boolean pollInvalidations(Consumer<? super K> listener) {
+		if (this.buffer.getLong(RING_HEAD) == this.cursor) {
+			return true;
+		}
+		synchronized (this.pollLock) {
+			long head = this.buffer.getLong(RING_HEAD);
+			long pos = this.cursor;
+			boolean ret = head - pos <= this.ringCapacity;
+			for (; ret && pos < head; pos++) {
+				int entry = (int) (HEADER_SIZE + (pos % this.ringCapacity) * RING_ENTRY_SIZE);
+				if (this.buffer.getLong(entry) != pos + 1) {
+					// Overwritten by writers which went around the ring
+					ret = false;
+					break;
+				}
+				if (this.buffer.getLong(entry + RING_WRITER) == this.id) {
+					continue;
+				}
+				int length = this.buffer.getInt(entry + RING_KEY_LENGTH);
+				if (length < 0 || length > MAX_RING_KEY_LENGTH) {
+					ret = false;
+					break;
+				}
+				byte[] key = new byte[length];
+				ByteBuffer dup = this.buffer.duplicate();
+				dup.position(entry + RING_KEY);
+				dup.get(key);
+				if (this.buffer.getLong(entry) != pos + 1) {
+					ret = false;
+					break;
+				}
+				listener.accept(this.keySerializer.deserialize(key));
+			}
+			this.cursor = head;
+			return ret;
+		}
+	}
+
+	private void ensureOpen() {
+		if (this.closed) {
+			throw new IllegalStateException("Shared cache is closed");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		this.file.close();
+	}
+}
@@ -0,0 +1,183 @@
+package net.inveed.commons.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocates fixed-size blocks in direct memory.
+ * Memory is reserved by slabs (large direct buffers) which are split into blocks. A value is stored as a chain
+ * of blocks, every block starts with the index of the next one, so any free block can be reused for any value
+ * and memory doesn't fragment.
+ * Allocation and freeing are not thread-safe and should be done under external exclusive lock,
+ * reading and writing of allocated blocks can be done concurrently.
+ */
+final class SlabAllocator {
+	private static final int HEADER_SIZE = 4;
+	private static final int NO_BLOCK = -1;
+
+	private final int blockSize;
+	private final int blocksPerSlab;
+	private final ByteBuffer[] slabs;
+	private volatile int slabsCount;
+
+	// Stack of free blocks
+	private int[] free = new int[0];
+	private int freeCount;
+
+	// Incremented on reset, blocks allocated before reset are no more valid
+	private volatile int generation;
+
+	SlabAllocator(long maxMemory, int slabSize, int blockSize) {
+		if (blockSize <= HEADER_SIZE) {
+			throw new IllegalArgumentException("Block size should be greater then " + HEADER_SIZE);
+		}
+		if (slabSize < blockSize) {
+			throw new IllegalArgumentException("Slab size should not be less then block size");
+		}
+		long maxSlabs = maxMemory / slabSize;
+		if (maxSlabs < 1) {
+			throw new IllegalArgumentException("Max memory should not be less then slab size");
+		}
+		if (maxSlabs * (slabSize / blockSize) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many blocks, block size should be increased");
+		}
+		this.blockSize = blockSize;
+		this.blocksPerSlab = slabSize / blockSize;
+		this.slabs = new ByteBuffer[(int) maxSlabs];
+	}
+
+	int getGeneration() {
+		return this.generation;
+	}
+
+	/**
+	 * @return memory reserved by slabs, in bytes
+	 */
+	long getReservedMemory() {
+		return (long) this.slabsCount * this.blocksPerSlab * this.blockSize;
+	}
+
+	private int blocksFor(int length) {
+		int payload = this.blockSize - HEADER_SIZE;
+		return (int) Math.max(1, ((long) length + payload - 1) / payload);
+	}
+
+	/**
+	 * @return true if value of specified length fits into the allocator when all memory is free.
+	 * Doesn't depend on the state, so can be called without lock.
+	 */
+	boolean fits(int length) {
+		return this.blocksFor(length) <= (long) this.slabs.length * this.blocksPerSlab;
+	}
+
+	/**
+	 * Allocates chain of blocks for the value of specified length.
+	 * @return index of the first block or -1 if there is no enough memory
+	 */
+	int allocate(int length) {
+		int blocks = this.blocksFor(length);
+		while (this.freeCount < blocks) {
+			if (!this.addSlab()) {
+				return NO_BLOCK;
+			}
+		}
+		int first = NO_BLOCK;
+		for (int i = 0; i < blocks; i++) {
+			int block = this.free[--this.freeCount];
+			this.setNext(block, first);
+			first = block;
+		}
+		return first;
+	}
+
+	/**
+	 * Returns all blocks of the chain to the free list.
+	 */
+	void free(int first, int length) {
+		int blocks = this.blocksFor(length);
+		int block = first;
+		for (int i = 0; i < blocks && block != NO_BLOCK; i++) {
+			int next = this.getNext(block);
+			this.free[this.freeCount++] = block;
+			block = next;
+		}
+	}
+
+	/**
+	 * Marks all blocks as free. Slabs aren't released.
+	 */
+	void reset() {
+		int total = this.slabsCount * this.blocksPerSlab;
+		for (int i = 0; i < total; i++) {
+			this.free[i] = i;
+		}
+		this.freeCount = total;
+		this.generation++;
+	}
+
+	void write(int first, byte[] value) {
+		int payload = this.blockSize - HEADER_SIZE;
+		int block = first;
+		int offset = 0;
+		do {
+			int len = Math.min(payload, value.length - offset);
+			ByteBuffer buf = this.slabOf(block).duplicate();
+			buf.position(this.offsetOf(block) + HEADER_SIZE);
+			buf.put(value, offset, len);
+			offset += len;
+			block = this.getNext(block);
+		} while (offset < value.length);
+	}
+
+	/**
+	 * Reads the value. When blocks are modified concurrently can read garbage or throw {@link RuntimeException}.
+	 */
+	void read(int first, byte[] dst) {
+		int payload = this.blockSize - HEADER_SIZE;
+		int block = first;
+		int offset = 0;
+		while (offset < dst.length) {
+			int len = Math.min(payload, dst.length - offset);
+			ByteBuffer buf = this.slabOf(block).duplicate();
+			buf.position(this.offsetOf(block) + HEADER_SIZE);
+			buf.get(dst, offset, len);
+			offset += len;
+			block = this.getNext(block);
+		}
+	}
+
+	private boolean addSlab() {
+		int count = this.slabsCount;
+		if (count >= this.slabs.length) {
+			return false;
+		}
+		this.slabs[count] = ByteBuffer.allocateDirect(this.blocksPerSlab * this.blockSize);
+		int firstBlock = count * this.blocksPerSlab;
+		if (this.free.length < firstBlock + this.blocksPerSlab) {
+			int[] nfree = new int[firstBlock + this.blocksPerSlab];
+			System.arraycopy(this.free, 0, nfree, 0, this.freeCount);
+			this.free = nfree;
+		}
+		// Lower blocks are allocated first
+		for (int i = this.blocksPerSlab - 1; i >= 0; i--) {
+			this.free[this.freeCount++] = firstBlock + i;
+		}
+		this.slabsCount = count + 1;
+		return true;
+	}
+
+	private ByteBuffer slabOf(int block) {
+		return this.slabs[block / this.blocksPerSlab];
+	}
+
+	private int offsetOf(int block) {
+		return (block % this.blocksPerSlab) * this.blockSize;
+	}
+
+	private int getNext(int block) {
+		return this.slabOf(block).getInt(this.offsetOf(block));
+	}
+
+	private void setNext(int block, int next) {
+		this.slabOf(block).putInt(this.offsetOf(block), next);
+	}
+}
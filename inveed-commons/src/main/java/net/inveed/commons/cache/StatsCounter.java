@@ -0,0 +1,72 @@
+package net.inveed.commons.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics counter based on {@link LongAdder}, so concurrent updates don't contend.
+ */
+final class StatsCounter implements IStatsCounter {
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder loadSuccessCount = new LongAdder();
+	private final LongAdder loadFailureCount = new LongAdder();
+	private final LongAdder totalLoadTime = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder expirationCount = new LongAdder();
+
+	@Override
+	public void recordHit() {
+		this.hitCount.increment();
+	}
+
+	@Override
+	public void recordMiss() {
+		this.missCount.increment();
+	}
+
+	@Override
+	public void recordHits(int count) {
+		this.hitCount.add(count);
+	}
+
+	@Override
+	public void recordMisses(int count) {
+		this.missCount.add(count);
+	}
+
+	@Override
+	public void recordLoadSuccess(long loadTime) {
+		this.loadSuccessCount.increment();
+		this.totalLoadTime.add(loadTime);
+	}
+
+	@Override
+	public void recordLoadFailure(long loadTime) {
+		this.loadFailureCount.increment();
+		this.totalLoadTime.add(loadTime);
+	}
+
+	@Override
+	public void recordEviction() {
+		this.evictionCount.increment();
+	}
+
+	@Override
+	public void recordExpiration() {
+		this.expirationCount.increment();
+	}
+
+	@Override
+	public CacheStats snapshot(long size, long weight) {
+		return new CacheStats(
+				this.hitCount.sum(),
+				this.missCount.sum(),
+				this.loadSuccessCount.sum(),
+				this.loadFailureCount.sum(),
+				this.totalLoadTime.sum(),
+				this.evictionCount.sum(),
+				this.expirationCount.sum(),
+				size,
+				weight);
+	}
+}
@@ -0,0 +1,328 @@
+package net.inveed.commons.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+/**
+ * LRU storage split into independent segments.
+ * Each segment is a separate {@link LRUStorage} with its own lock and its own share of the capacity,
+ * so operations on keys from different segments don't contend with each other.
+ * Eviction order is LRU within a segment and therefore only approximately LRU for the whole storage.
+ * If the capacity is known when the storage is created, use {@link #StripedLRUStorage(int, int)}:
+ * it doesn't create more segments than entries.
+ */
+public final class StripedLRUStorage<K, T> implements ICacheStorage<K, T> {
+	private static final int MAX_SEGMENTS = 1 << 16;
+
+	private final LRUStorage<K, T>[] segments;
+	private final int segmentMask;
+	// Next segment to evict from when the capacity is less than the number of segments
+	private final AtomicInteger evictionCursor = new AtomicInteger();
+
+	public StripedLRUStorage() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param concurrencyLevel expected number of concurrently modifying threads.
+	 * Number of segments is rounded up to the nearest power of two.
+	 */
+	public StripedLRUStorage(int concurrencyLevel) {
+		this(concurrencyLevel, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param concurrencyLevel expected number of concurrently modifying threads.
+	 * Number of segments is rounded up to the nearest power of two.
+	 * @param maxSize expected capacity, number of segments is rounded down to a power of two not greater than it,
+	 * so every segment gets at least one entry of the capacity
+	 */
+	@SuppressWarnings("unchecked")
+	public StripedLRUStorage(int concurrencyLevel, int maxSize) {
+		if (concurrencyLevel < 1) {
+			throw new IllegalArgumentException("Concurrency level should be greater then zero");
+		}
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Size should be greater then zero");
+		}
+		int count = 1;
+		while (count < concurrencyLevel && count < MAX_SEGMENTS && count * 2 <= maxSize) {
+			count <<= 1;
+		}
+		this.segments = (LRUStorage<K, T>[]) new LRUStorage<?, ?>[count];
+		// Threads are spread over segments already, so segments need less read buffer stripes.
+		int readBufferStripes = Math.max(1, Runtime.getRuntime().availableProcessors() / count);
+		for (int i = 0; i < count; i++) {
+			this.segments[i] = new LRUStorage<K, T>(readBufferStripes);
+		}
+		this.segmentMask = count - 1;
+	}
+
+	private LRUStorage<K, T> segmentFor(Object key) {
+		if (key == null) {
+			return this.segments[0];
+		}
+		return this.segments[this.segmentIndex(key)];
+	}
+
+	private int segmentIndex(Object key) {
+		int h = key.hashCode();
+		// Spread higher bits to the lower ones - segment is selected by lower bits only.
+		h ^= (h >>> 16);
+		h *= 0x45d9f3b;
+		h ^= (h >>> 16);
+		return h & this.segmentMask;
+	}
+
+	public int getSegmentsCount() {
+		return this.segments.length;
+	}
+
+	@Override
+	public T get(K key) {
+		return this.segmentFor(key).get(key);
+	}
+
+	@Override
+	public T access(K key) {
+		return this.segmentFor(key).access(key);
+	}
+
+	@Override
+	public void put(K key, T value) {
+		this.segmentFor(key).put(key, value);
+	}
+
+	@Override
+	public void remove(K key) {
+		if (key == null) {
+			return;
+		}
+		this.segmentFor(key).remove(key);
+	}
+
+	@Override
+	public T getAndPut(K key, T value) {
+		return this.segmentFor(key).getAndPut(key, value);
+	}
+
+	@Override
+	public T getAndRemove(K key) {
+		if (key == null) {
+			return null;
+		}
+		return this.segmentFor(key).getAndRemove(key);
+	}
+
+	/**
+	 * Removes tired items to fit required size.
+	 * Every segment gets an equal share of the size, the remainder is spread over the first segments,
+	 * so the total never exceeds the size. If the size is less than the number of segments, segments
+	 * can't have their own shares: least recently used entries of segments are evicted in turn
+	 * until the total fits.
+	 * @param maxSize
+	 */
+	@Override
+	public void shrink(int maxSize) {
+		if (maxSize < 1) {
+			this.clear();
+			return;
+		}
+		int count = this.segments.length;
+		if (maxSize < count) {
+			this.evictInTurn(() -> this.size() > maxSize);
+			return;
+		}
+		int segmentSize = maxSize / count;
+		int remainder = maxSize % count;
+		for (int i = 0; i < count; i++) {
+			this.segments[i].shrink(i < remainder ? segmentSize + 1 : segmentSize);
+		}
+	}
+
+	// Used when the limit is less than the number of segments
+	private void evictInTurn(BooleanSupplier overflow) {
+		int count = this.segments.length;
+		// Stops when a round over all segments finds nothing to evict
+		for (int empty = 0; empty < count && overflow.getAsBoolean(); ) {
+			int i = this.evictionCursor.getAndIncrement() & this.segmentMask;
+			if (this.segments[i].evictFirst()) {
+				empty = 0;
+			} else {
+				empty++;
+			}
+		}
+	}
+
+	/**
+	 * Removes tired items to fit required total weight.
+	 * Every segment gets an equal share of the weight, the remainder is spread over the first segments.
+	 * Weight less than the number of segments is handled as in {@link #shrink(int)}.
+	 * @param maxWeight
+	 */
+	@Override
+	public void shrinkWeight(long maxWeight) {
+		int count = this.segments.length;
+		if (maxWeight < count) {
+			this.evictInTurn(() -> this.weight() > maxWeight);
+			return;
+		}
+		long segmentWeight = maxWeight / count;
+		long remainder = maxWeight % count;
+		for (int i = 0; i < count; i++) {
+			this.segments[i].shrinkWeight(i < remainder ? segmentWeight + 1 : segmentWeight);
+		}
+	}
+
+	@Override
+	public long weight() {
+		long ret = 0;
+		for (LRUStorage<K, T> s : this.segments) {
+			ret += s.weight();
+		}
+		return ret;
+	}
+
+	@Override
+	public void setWeigher(IWeigher<? super K, ? super T> weigher) {
+		for (LRUStorage<K, T> s : this.segments) {
+			s.setWeigher(weigher);
+		}
+	}
+
+	@Override
+	public void setEvictionListener(BiConsumer<? super K, ? super T> listener) {
+		for (LRUStorage<K, T> s : this.segments) {
+			s.setEvictionListener(listener);
+		}
+	}
+
+	@Override
+	public int size() {
+		int ret = 0;
+		for (LRUStorage<K, T> s : this.segments) {
+			ret += s.size();
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (LRUStorage<K, T> s : this.segments) {
+			if (!s.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		for (LRUStorage<K, T> s : this.segments) {
+			s.clear();
+		}
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		return this.segmentFor(key).containsKey(key);
+	}
+
+	/**
+	 * Groups entries by segments, so every segment lock is taken once.
+	 */
+	@Override
+	public void putAll(Map<? extends K, ? extends T> m) {
+		HashMap<Integer, HashMap<K, T>> groups = new HashMap<>();
+		for (Map.Entry<? extends K, ? extends T> e : m.entrySet()) {
+			if (e.getKey() == null) {
+				throw new NullPointerException("key is null");
+			}
+			groups.computeIfAbsent(this.segmentIndex(e.getKey()), i -> new HashMap<>()).put(e.getKey(), e.getValue());
+		}
+		for (Map.Entry<Integer, HashMap<K, T>> g : groups.entrySet()) {
+			this.segments[g.getKey()].putAll(g.getValue());
+		}
+	}
+
+	/**
+	 * Groups keys by segments, so every segment lock is taken once.
+	 */
+	@Override
+	public void removeAll(Iterable<? extends K> keys) {
+		HashMap<Integer, ArrayList<K>> groups = new HashMap<>();
+		for (K key : keys) {
+			if (key == null) {
+				continue;
+			}
+			groups.computeIfAbsent(this.segmentIndex(key), i -> new ArrayList<>()).add(key);
+		}
+		for (Map.Entry<Integer, ArrayList<K>> g : groups.entrySet()) {
+			this.segments[g.getKey()].removeAll(g.getValue());
+		}
+	}
+
+	/**
+	 * @return snapshot of keys from all segments.
+	 */
+	@Override
+	public Set<K> keySet() {
+		HashSet<K> ret = new HashSet<>();
+		for (LRUStorage<K, T> s : this.segments) {
+			ret.addAll(s.keySet());
+		}
+		return ret;
+	}
+	
+	// Next key of a segment copy in the merge
+	private static final class MergeCursor<K> {
+		final List<K> keys;
+		final int segment;
+		int position;
+
+		MergeCursor(List<K> keys, int segment) {
+			this.keys = keys;
+			this.segment = segment;
+		}
+
+		// Compares position / size without division, segments with equal positions are taken in their order
+		int compareTo(MergeCursor<K> o) {
+			int ret = Long.compare((long) this.position * o.keys.size(), (long) o.position * this.keys.size());
+			return ret != 0 ? ret : Integer.compare(this.segment, o.segment);
+		}
+	}
+
+	/**
+	 * Segments are copied one by one and merged by relative positions of keys in their segments.
+	 * Segments don't share access time, so the order is approximate.
+	 */
+	@Override
+	public List<K> keysInAccessOrder() {
+		PriorityQueue<MergeCursor<K>> queue = new PriorityQueue<>(this.segments.length, MergeCursor::compareTo);
+		int total = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			List<K> keys = this.segments[i].keysInAccessOrder();
+			if (!keys.isEmpty()) {
+				queue.add(new MergeCursor<>(keys, i));
+				total += keys.size();
+			}
+		}
+		ArrayList<K> ret = new ArrayList<>(total);
+		MergeCursor<K> c;
+		while ((c = queue.poll()) != null) {
+			ret.add(c.keys.get(c.position++));
+			if (c.position < c.keys.size()) {
+				queue.add(c);
+			}
+		}
+		return ret;
+	}
+}
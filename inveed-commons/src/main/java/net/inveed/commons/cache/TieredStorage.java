@@ -0,0 +1,199 @@
+package net.inveed.commons.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Two-level storage: small on-heap {@link LRUStorage} (L1) in front of a shared tier (L2),
+ * e.g. {@link SharedMemoryTier} used by all processes on the host.
+ * Lookups missing L1 go to L2 and copy found values into L1, so {@link Cache} calls its loader
+ * only when both levels miss. Puts and removes are applied to L2 first, then to L1.
+ * Changes made by other clients of L2 are polled on every lookup and drop the changed keys from L1.
+ * {@link #clear()} clears L1 only, see {@link #clearSharedTier()}.
+ *
+ * Size, weight, eviction and key sets are those of L1: L2 has its own fixed capacity and evicts silently.
+ */
+public final class TieredStorage<K, T> implements ICacheStorage<K, T> {
+	private final LRUStorage<K, T> local = new LRUStorage<>();
+	private final ISharedCacheTier<K, T> shared;
+	private final Consumer<K> invalidator = this.local::remove;
+
+	public TieredStorage(ISharedCacheTier<K, T> shared) {
+		if (shared == null) {
+			throw new NullPointerException("shared is null");
+		}
+		this.shared = shared;
+	}
+
+	public ISharedCacheTier<K, T> getSharedTier() {
+		return this.shared;
+	}
+
+	private void pollInvalidations() {
+		if (!this.shared.pollInvalidations(this.invalidator)) {
+			this.local.clear();
+		}
+	}
+
+	@Override
+	public T get(K key) {
+		return this.lookup(key, false);
+	}
+
+	@Override
+	public T access(K key) {
+		return this.lookup(key, true);
+	}
+
+	private T lookup(K key, boolean access) {
+		if (key == null) {
+			return null;
+		}
+		this.pollInvalidations();
+		T ret = access ? this.local.access(key) : this.local.get(key);
+		if (ret != null) {
+			return ret;
+		}
+		// The value could be changed after it was read from L2, then it isn't copied.
+		// A change published while the value was copied can be own one, which isn't polled:
+		// its L1 write can precede the copy, so the copy is dropped again.
+		long seq = this.shared.getInvalidationSequence();
+		ret = this.shared.get(key);
+		if (ret != null && this.shared.getInvalidationSequence() == seq) {
+			this.local.put(key, ret);
+			if (this.shared.getInvalidationSequence() != seq) {
+				this.local.remove(key);
+			}
+		}
+		return ret;
+	}
+
+	@Override
+	public void put(K key, T value) {
+		this.shared.put(key, value);
+		this.local.put(key, value);
+	}
+
+	/**
+	 * @return replaced value from L1
+	 */
+	@Override
+	public T getAndPut(K key, T value) {
+		this.shared.put(key, value);
+		return this.local.getAndPut(key, value);
+	}
+
+	@Override
+	public void remove(K key) {
+		this.shared.remove(key);
+		this.local.remove(key);
+	}
+
+	/**
+	 * @return removed value from L1
+	 */
+	@Override
+	public T getAndRemove(K key) {
+		this.shared.remove(key);
+		return this.local.getAndRemove(key);
+	}
+
+	/**
+	 * Limits size of L1.
+	 */
+	@Override
+	public void shrink(int maxSize) {
+		this.local.shrink(maxSize);
+	}
+
+	/**
+	 * Limits weight of L1.
+	 */
+	@Override
+	public void shrinkWeight(long maxWeight) {
+		this.local.shrinkWeight(maxWeight);
+	}
+
+	@Override
+	public long weight() {
+		return this.local.weight();
+	}
+
+	@Override
+	public void setWeigher(IWeigher<? super K, ? super T> weigher) {
+		this.local.setWeigher(weigher);
+	}
+
+	/**
+	 * Sets listener of L1 evictions; evicted entries can still be found in L2.
+	 */
+	@Override
+	public void setEvictionListener(BiConsumer<? super K, ? super T> listener) {
+		this.local.setEvictionListener(listener);
+	}
+
+	@Override
+	public int size() {
+		return this.local.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.local.isEmpty();
+	}
+
+	/**
+	 * Clears L1. L2 is used by other clients, so it isn't cleared.
+	 * @see #clearSharedTier()
+	 */
+	@Override
+	public void clear() {
+		this.local.clear();
+	}
+
+	/**
+	 * Clears both levels, L2 is cleared for all its clients.
+	 */
+	public void clearSharedTier() {
+		this.shared.clear();
+		this.local.clear();
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		if (key == null) {
+			return false;
+		}
+		this.pollInvalidations();
+		return this.local.containsKey(key) || this.shared.get(key) != null;
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends T> m) {
+		for (Map.Entry<? extends K, ? extends T> e : m.entrySet()) {
+			this.shared.put(e.getKey(), e.getValue());
+		}
+		this.local.putAll(m);
+	}
+
+	@Override
+	public void removeAll(Iterable<? extends K> keys) {
+		for (K key : keys) {
+			this.shared.remove(key);
+		}
+		this.local.removeAll(keys);
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return this.local.keySet();
+	}
+
+	@Override
+	public List<K> keysInAccessOrder() {
+		return this.local.keysInAccessOrder();
+	}
+}
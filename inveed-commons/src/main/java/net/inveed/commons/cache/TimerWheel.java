@@ -0,0 +1,199 @@
+package net.inveed.commons.cache;
+
+import java.util.function.Predicate;
+
+/**
+ * Hierarchical timer wheel.
+ * Time is counted in ticks of 2^30 ns (about 1.07 s). Every level has 64 buckets, a bucket of level N
+ * covers 64^N ticks: level 0 covers about a minute, level 3 about 194 days. Timers further in the future
+ * are kept in the overflow bucket.
+ * A timer is placed into the finest level on which its tick and the current tick differ only by
+ * the bits of the level. When the wheel advances into a bucket, its timers are passed to the handler
+ * and the ones which aren't due yet are placed again, into finer levels.
+ * Scheduling and cancelling are O(1), advancing touches at most 64 buckets per level.
+ * Not thread-safe: all methods should be called under external lock.
+ */
+final class TimerWheel<K> {
+	static class Node<K> {
+		final K key;
+
+		// Time (in nanos) used to schedule the node
+		long time;
+
+		// null if the node isn't scheduled
+		private Bucket<K> bucket;
+		private Node<K> previous;
+		private Node<K> next;
+
+		Node(K key) {
+			this.key = key;
+		}
+
+		boolean isScheduled() {
+			return this.bucket != null;
+		}
+	}
+
+	private static final class Bucket<K> {
+		Node<K> head;
+		Node<K> tail;
+
+		void add(Node<K> node) {
+			node.bucket = this;
+			node.previous = this.tail;
+			node.next = null;
+			if (this.tail == null) {
+				this.head = node;
+			} else {
+				this.tail.next = node;
+			}
+			this.tail = node;
+		}
+
+		void remove(Node<K> node) {
+			if (node.previous == null) {
+				this.head = node.next;
+			} else {
+				node.previous.next = node.next;
+			}
+			if (node.next == null) {
+				this.tail = node.previous;
+			} else {
+				node.next.previous = node.previous;
+			}
+			node.bucket = null;
+			node.previous = null;
+			node.next = null;
+		}
+
+		// Detaches all nodes, returns the first one. Nodes stay linked to each other.
+		Node<K> takeAll() {
+			Node<K> ret = this.head;
+			this.head = null;
+			this.tail = null;
+			return ret;
+		}
+	}
+
+	private static final int TICK_SHIFT = 30;
+	private static final int LEVEL_BITS = 6;
+	private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+	private static final int LEVEL_MASK = LEVEL_SIZE - 1;
+	private static final int LEVELS = 4;
+
+	/**
+	 * @return number of wheel ticks for the time. Advancing within the same tick does nothing.
+	 */
+	static long ticks(long nanos) {
+		return nanos >> TICK_SHIFT;
+	}
+
+	private final Bucket<K>[][] levels;
+	private final Bucket<K> overflow = new Bucket<>();
+	// Current tick
+	private long tick;
+
+	@SuppressWarnings("unchecked")
+	TimerWheel(long nanos) {
+		this.tick = ticks(nanos);
+		this.levels = (Bucket<K>[][]) new Bucket<?>[LEVELS][LEVEL_SIZE];
+		for (Bucket<K>[] level : this.levels) {
+			for (int i = 0; i < level.length; i++) {
+				level[i] = new Bucket<>();
+			}
+		}
+	}
+
+	/**
+	 * Schedules the node to fire at {@link Node#time}. Already scheduled node is moved.
+	 * Node which is already due fires on the next tick.
+	 */
+	void schedule(Node<K> node) {
+		if (node.isScheduled()) {
+			node.bucket.remove(node);
+		}
+		long target = Math.max(ticks(node.time), this.tick + 1);
+		this.bucketFor(target).add(node);
+	}
+
+	void deschedule(Node<K> node) {
+		if (node.isScheduled()) {
+			node.bucket.remove(node);
+		}
+	}
+
+	private Bucket<K> bucketFor(long target) {
+		long diff = target ^ this.tick;
+		for (int level = 0; level < LEVELS; level++) {
+			int shift = LEVEL_BITS * level;
+			if ((diff >>> (shift + LEVEL_BITS)) == 0) {
+				return this.levels[level][(int) ((target >> shift) & LEVEL_MASK)];
+			}
+		}
+		return this.overflow;
+	}
+
+	/**
+	 * Advances the wheel to the current time.
+	 * Every node from passed buckets is passed to the handler; when the handler returns false
+	 * the node is scheduled again with its (possibly updated) {@link Node#time}.
+	 */
+	void advance(long currentTimeNanos, Predicate<Node<K>> handler) {
+		long previous = this.tick;
+		long current = ticks(currentTimeNanos);
+		if (current <= previous) {
+			return;
+		}
+		this.tick = current;
+		for (int level = 0; level < LEVELS; level++) {
+			int shift = LEVEL_BITS * level;
+			long from = previous >> shift;
+			long to = current >> shift;
+			if (from == to) {
+				// Coarser levels haven't moved either
+				return;
+			}
+			long count = Math.min(to - from, LEVEL_SIZE);
+			for (long slot = to - count + 1; slot <= to; slot++) {
+				this.fire(this.levels[level][(int) (slot & LEVEL_MASK)], handler);
+			}
+		}
+		if ((previous >> (LEVEL_BITS * LEVELS)) != (current >> (LEVEL_BITS * LEVELS))) {
+			this.fire(this.overflow, handler);
+		}
+	}
+
+	private void fire(Bucket<K> bucket, Predicate<Node<K>> handler) {
+		Node<K> node = bucket.takeAll();
+		while (node != null) {
+			Node<K> next = node.next;
+			node.bucket = null;
+			node.previous = null;
+			node.next = null;
+			if (!handler.test(node)) {
+				this.schedule(node);
+			}
+			node = next;
+		}
+	}
+
+	void clear() {
+		for (Bucket<K>[] level : this.levels) {
+			for (Bucket<K> bucket : level) {
+				this.unlinkAll(bucket);
+			}
+		}
+		this.unlinkAll(this.overflow);
+	}
+
+	private void unlinkAll(Bucket<K> bucket) {
+		Node<K> node = bucket.takeAll();
+		while (node != null) {
+			Node<K> next = node.next;
+			node.bucket = null;
+			node.previous = null;
+			node.next = null;
+			node = next;
+		}
+	}
+}
@@ -0,0 +1,519 @@
+package net.inveed.commons.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Storage with W-TinyLFU eviction policy.
+ * New entries are put into a small LRU window (1% of the capacity). Entries leaving the window
+ * are admitted to the main segmented LRU only if they were accessed more often than the entry
+ * which would be evicted instead. Frequencies are estimated by {@link FrequencySketch}.
+ * Compared to pure LRU it keeps popular entries when a lot of one-off keys are read, e.g. by batch scans.
+ * Capacity is taken from {@link #shrink(int)}, until it is called the storage works as plain LRU.
+ * Weight limit set by {@link #shrinkWeight(long)} evicts entries in the same order as the size limit.
+ * Null keys are not supported.
+ */
+public final class TinyLfuStorage<K, T> implements ICacheStorage<K, T> {
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private static final int WINDOW_PERCENT = 1;
+	private static final int PROTECTED_PERCENT = 80;
+
+	private final class Node {
+		final K key;
+		volatile T item;
+		int weight;
+		int queue;
+		Node previous;
+		Node next;
+
+		Node(K key, T item) {
+			this.key = key;
+			this.item = item;
+		}
+	}
+
+	// Doubly linked list in access order, first item is the least recently used.
+	private final class AccessQueue {
+		Node first;
+		Node last;
+		int size;
+
+		void add(Node n) {
+			n.previous = this.last;
+			n.next = null;
+			if (this.last != null) {
+				this.last.next = n;
+			} else {
+				this.first = n;
+			}
+			this.last = n;
+			this.size++;
+		}
+
+		void remove(Node n) {
+			if (n == this.first) {
+				this.first = n.next;
+			}
+			if (n == this.last) {
+				this.last = n.previous;
+			}
+			if (n.previous != null) {
+				n.previous.next = n.next;
+			}
+			if (n.next != null) {
+				n.next.previous = n.previous;
+			}
+			n.previous = null;
+			n.next = null;
+			this.size--;
+		}
+
+		void moveBack(Node n) {
+			if (n == this.last) {
+				return;
+			}
+			this.remove(n);
+			this.add(n);
+		}
+
+		void clear() {
+			this.first = null;
+			this.last = null;
+			this.size = 0;
+		}
+	}
+
+	// Replaced by clear, modified under the lock only
+	private volatile ConcurrentHashMap<K, Node> map = new ConcurrentHashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final AccessQueue window = new AccessQueue();
+	private final AccessQueue probation = new AccessQueue();
+	private final AccessQueue protectedQueue = new AccessQueue();
+	private final FrequencySketch sketch = new FrequencySketch();
+
+	private final ReadBuffer<Node> readBuffer = new ReadBuffer<>();
+	private final Consumer<Node> accessApplier = this::applyAccessUnsafe;
+
+	private volatile BiConsumer<? super K, ? super T> evictionListener;
+
+	private volatile IWeigher<? super K, ? super T> weigher;
+	// Modified under the lock only
+	private volatile long weight;
+
+	// Modified under the lock. Not limited until shrink and shrinkWeight are called.
+	private int maximum = Integer.MAX_VALUE;
+	private long maximumWeight = Long.MAX_VALUE;
+	private int windowMaximum = Integer.MAX_VALUE;
+	private int protectedMaximum = Integer.MAX_VALUE;
+
+	private AccessQueue queueOf(Node n) {
+		switch (n.queue) {
+		case WINDOW:
+			return this.window;
+		case PROBATION:
+			return this.probation;
+		default:
+			return this.protectedQueue;
+		}
+	}
+
+	@Override
+	public T get(K key) {
+		if (key == null) {
+			return null;
+		}
+		Node ret = this.map.get(key);
+		if (ret != null) {
+			return ret.item;
+		}
+		return null;
+	}
+
+	@Override
+	public T access(K key) {
+		if (key == null) {
+			return null;
+		}
+		Node ret = this.map.get(key);
+		if (ret == null) {
+			return null;
+		}
+		if (this.readBuffer.offer(ret) && this.lock.tryLock()) {
+			try {
+				this.drainReadBufferUnsafe();
+			} finally {
+				this.lock.unlock();
+			}
+		}
+		return ret.item;
+	}
+
+	private void drainReadBufferUnsafe() {
+		this.readBuffer.drainTo(this.accessApplier);
+	}
+
+	private void applyAccessUnsafe(Node n) {
+		// Node could be removed after the access was recorded
+		if (this.map.get(n.key) == n) {
+			this.sketch.increment(n.key);
+			this.onAccessUnsafe(n);
+		}
+	}
+
+	private void onAccessUnsafe(Node n) {
+		switch (n.queue) {
+		case WINDOW:
+			this.window.moveBack(n);
+			break;
+		case PROBATION:
+			// Second access - promote to protected segment
+			this.probation.remove(n);
+			n.queue = PROTECTED;
+			this.protectedQueue.add(n);
+			this.demoteUnsafe();
+			break;
+		default:
+			this.protectedQueue.moveBack(n);
+		}
+	}
+
+	// Moves overflow of protected segment to probation
+	private void demoteUnsafe() {
+		while (this.protectedQueue.size > this.protectedMaximum) {
+			Node n = this.protectedQueue.first;
+			this.protectedQueue.remove(n);
+			n.queue = PROBATION;
+			this.probation.add(n);
+		}
+	}
+
+	@Override
+	public void put(K key, T value) {
+		this.getAndPut(key, value);
+	}
+
+	@Override
+	public T getAndPut(K key, T value) {
+		if (key == null) {
+			throw new NullPointerException("key is null");
+		}
+		int itemWeight = this.weigh(key, value);
+		this.lock.lock();
+		try {
+			this.drainReadBufferUnsafe();
+			return this.putUnsafe(key, value, itemWeight);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private T putUnsafe(K key, T value, int itemWeight) {
+		this.sketch.increment(key);
+		Node n = this.map.get(key);
+		if (n != null) {
+			T ret = n.item;
+			n.item = value;
+			this.weight += itemWeight - n.weight;
+			n.weight = itemWeight;
+			this.onAccessUnsafe(n);
+			return ret;
+		}
+		n = new Node(key, value);
+		n.weight = itemWeight;
+		this.weight += itemWeight;
+		n.queue = WINDOW;
+		this.window.add(n);
+		this.map.put(key, n);
+		return null;
+	}
+
+	@Override
+	public void remove(K key) {
+		this.getAndRemove(key);
+	}
+
+	@Override
+	public T getAndRemove(K key) {
+		if (key == null) {
+			return null;
+		}
+		this.lock.lock();
+		try {
+			return this.removeUnsafe(key);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private T removeUnsafe(K key) {
+		Node n = this.map.get(key);
+		if (n == null) {
+			return null;
+		}
+		this.queueOf(n).remove(n);
+		this.map.remove(key);
+		this.weight -= n.weight;
+		return n.item;
+	}
+
+	/**
+	 * Removes all keys under a single lock acquisition.
+	 */
+	@Override
+	public void removeAll(Iterable<? extends K> keys) {
+		this.lock.lock();
+		try {
+			for (K key : keys) {
+				if (key != null) {
+					this.removeUnsafe(key);
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets capacity of the storage and evicts entries to fit it.
+	 * @param maxSize
+	 */
+	@Override
+	public void shrink(int maxSize) {
+		if (maxSize < 1) {
+			this.clear();
+			return;
+		}
+		ArrayList<Node> evicted = this.evictionListener == null ? null : new ArrayList<>();
+		this.lock.lock();
+		try {
+			this.drainReadBufferUnsafe();
+			this.setMaximumUnsafe(maxSize);
+			this.evictUnsafe(evicted);
+		} finally {
+			this.lock.unlock();
+		}
+		this.notifyEvicted(evicted);
+	}
+
+	/**
+	 * Sets maximum total weight of the storage and evicts entries to fit it.
+	 * Victims are chosen by the same admission policy as for {@link #shrink(int)}.
+	 * @param maxWeight
+	 */
+	@Override
+	public void shrinkWeight(long maxWeight) {
+		ArrayList<Node> evicted = this.evictionListener == null ? null : new ArrayList<>();
+		this.lock.lock();
+		try {
+			this.drainReadBufferUnsafe();
+			this.maximumWeight = Math.max(0, maxWeight);
+			this.evictUnsafe(evicted);
+		} finally {
+			this.lock.unlock();
+		}
+		this.notifyEvicted(evicted);
+	}
+
+	private void notifyEvicted(ArrayList<Node> evicted) {
+		BiConsumer<? super K, ? super T> listener = this.evictionListener;
+		if (evicted != null && listener != null) {
+			for (Node n : evicted) {
+				listener.accept(n.key, n.item);
+			}
+		}
+	}
+
+	@Override
+	public long weight() {
+		return this.weight;
+	}
+
+	/**
+	 * Sets weigher used to calculate weight of new entries.
+	 * Should be set before entries are added; without weigher every entry weighs 1.
+	 */
+	@Override
+	public void setWeigher(IWeigher<? super K, ? super T> weigher) {
+		this.weigher = weigher;
+	}
+
+	private int weigh(K key, T value) {
+		IWeigher<? super K, ? super T> w = this.weigher;
+		if (w == null) {
+			return 1;
+		}
+		int ret = w.weigh(key, value);
+		if (ret < 0) {
+			throw new IllegalArgumentException("Weight should not be negative");
+		}
+		return ret;
+	}
+
+	private void setMaximumUnsafe(int maximum) {
+		if (this.maximum == maximum) {
+			return;
+		}
+		this.maximum = maximum;
+		this.windowMaximum = Math.max(1, (int) ((long) maximum * WINDOW_PERCENT / 100));
+		int mainMaximum = Math.max(0, maximum - this.windowMaximum);
+		this.protectedMaximum = (int) ((long) mainMaximum * PROTECTED_PERCENT / 100);
+		this.sketch.ensureCapacity(maximum);
+		this.demoteUnsafe();
+	}
+
+	private void evictUnsafe(ArrayList<Node> evicted) {
+		// Entries leaving the window become candidates for the main segment
+		Node candidate = null;
+		while (this.window.size > this.windowMaximum) {
+			Node n = this.window.first;
+			this.window.remove(n);
+			n.queue = PROBATION;
+			this.probation.add(n);
+			if (candidate == null) {
+				candidate = n;
+			}
+		}
+
+		while (this.map.size() > this.maximum || this.weight > this.maximumWeight) {
+			Node victim = this.probation.first;
+			if (victim == null) {
+				victim = this.protectedQueue.first != null ? this.protectedQueue.first : this.window.first;
+				if (victim == null) {
+					break;
+				}
+				this.evictUnsafe(victim, evicted);
+				continue;
+			}
+			if (candidate == null || candidate == victim) {
+				if (candidate == victim) {
+					candidate = candidate.next;
+				}
+				this.evictUnsafe(victim, evicted);
+				continue;
+			}
+			// Admission: candidate replaces the victim only if it is more popular
+			if (this.sketch.frequency(candidate.key) > this.sketch.frequency(victim.key)) {
+				this.evictUnsafe(victim, evicted);
+			} else {
+				Node next = candidate.next;
+				this.evictUnsafe(candidate, evicted);
+				candidate = next;
+			}
+		}
+	}
+
+	private void evictUnsafe(Node n, ArrayList<Node> evicted) {
+		this.queueOf(n).remove(n);
+		this.map.remove(n.key);
+		this.weight -= n.weight;
+		if (evicted != null) {
+			evicted.add(n);
+		}
+	}
+
+	@Override
+	public void setEvictionListener(BiConsumer<? super K, ? super T> listener) {
+		this.evictionListener = listener;
+	}
+
+	@Override
+	public int size() {
+		return this.map.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.map.isEmpty();
+	}
+
+	/**
+	 * Clears the storage in constant time: the map and the queues are replaced, old entries are
+	 * reclaimed by GC. Frequencies are kept.
+	 */
+	@Override
+	public void clear() {
+		this.lock.lock();
+		try {
+			this.map = new ConcurrentHashMap<>();
+			this.window.clear();
+			this.probation.clear();
+			this.protectedQueue.clear();
+			this.weight = 0;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		if (key == null) {
+			return false;
+		}
+		return this.map.containsKey(key);
+	}
+
+	/**
+	 * Puts all entries under a single lock acquisition.
+	 */
+	@Override
+	public void putAll(Map<? extends K, ? extends T> m) {
+		int[] weights = new int[m.size()];
+		int i = 0;
+		for (Map.Entry<? extends K, ? extends T> e : m.entrySet()) {
+			if (e.getKey() == null) {
+				throw new NullPointerException("key is null");
+			}
+			weights[i++] = this.weigh(e.getKey(), e.getValue());
+		}
+		this.lock.lock();
+		try {
+			this.drainReadBufferUnsafe();
+			i = 0;
+			for (Map.Entry<? extends K, ? extends T> e : m.entrySet()) {
+				this.putUnsafe(e.getKey(), e.getValue(), weights[i++]);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return Collections.unmodifiableSet(this.map.keySet());
+	}
+
+	/**
+	 * Keys are ordered by their eviction priority: probation first, then window, then protected entries.
+	 */
+	@Override
+	public List<K> keysInAccessOrder() {
+		ArrayList<K> ret = new ArrayList<>(this.map.size());
+		this.lock.lock();
+		try {
+			this.drainReadBufferUnsafe();
+			this.addKeysUnsafe(this.probation, ret);
+			this.addKeysUnsafe(this.window, ret);
+			this.addKeysUnsafe(this.protectedQueue, ret);
+		} finally {
+			this.lock.unlock();
+		}
+		return ret;
+	}
+
+	private void addKeysUnsafe(AccessQueue q, List<K> keys) {
+		for (Node n = q.first; n != null; n = n.next) {
+			keys.add(n.key);
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package net.inveed.commons.cache;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writer which queues changes and writes them to the target writer asynchronously, by batches.
+ * Repeated changes of the same key are coalesced, only the last one is written.
+ * Pending changes are flushed periodically and as soon as a full batch is queued.
+ * When the target writer fails, changes of the failed batch are queued again, unless they were
+ * superseded by newer ones, and retried on the next flush.
+ * Note that a value evicted from the cache before it is flushed can be loaded from the store in its old state.
+ */
+public final class WriteBehindWriter<K, V> implements ICacheWriter<K, V>, Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(WriteBehindWriter.class);
+	
+	// Pending delete marker
+	private static final Object DELETED = new Object();
+	// Pending write of null value, the map doesn't accept nulls
+	private static final Object NULL = new Object();
+	
+	private final ICacheWriter<K, V> target;
+	private final ScheduledExecutorService executor;
+	private final int batchSize;
+	private final ConcurrentHashMap<K, Object> pending = new ConcurrentHashMap<>();
+	// Flushes are serialized, so changes of the same key are written in order
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final ScheduledFuture<?> task;
+	private volatile boolean closed;
+	
+	/**
+	 * @param target writer of the underlying store
+	 * @param executor executor used for flushing
+	 * @param batchSize maximum number of changes written by one call of the target writer
+	 * @param flushInterval period of flushing
+	 */
+	public WriteBehindWriter(ICacheWriter<K, V> target, ScheduledExecutorService executor, int batchSize, long flushInterval, TimeUnit unit) {
+		if (target == null) {
+			throw new NullPointerException("target is null");
+		}
+		if (executor == null) {
+			throw new NullPointerException("executor is null");
+		}
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size should be greater then zero");
+		}
+		this.target = target;
+		this.executor = executor;
+		this.batchSize = batchSize;
+		this.task = executor.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, unit);
+	}
+	
+	@Override
+	public void write(K key, V value) {
+		this.enqueue(key, value == null ? NULL : value);
+	}
+	
+	@Override
+	public void delete(K key) {
+		this.enqueue(key, DELETED);
+	}
+	
+	@Override
+	public void writeAll(Map<? extends K, ? extends V> entries) {
+		this.ensureOpen();
+		for (Map.Entry<? extends K, ? extends V> e : entries.entrySet()) {
+			V value = e.getValue();
+			this.pending.put(e.getKey(), value == null ? NULL : value);
+		}
+		this.flushIfFull();
+	}
+	
+	@Override
+	public void deleteAll(Collection<? extends K> keys) {
+		this.ensureOpen();
+		for (K key : keys) {
+			this.pending.put(key, DELETED);
+		}
+		this.flushIfFull();
+	}
+	
+	private void enqueue(K key, Object op) {
+		this.ensureOpen();
+		this.pending.put(key, op);
+		this.flushIfFull();
+	}
+	
+	private void ensureOpen() {
+		if (this.closed) {
+			throw new IllegalStateException("Writer is closed");
+		}
+	}
+	
+	private void flushIfFull() {
+		if (this.pending.size() < this.batchSize || !this.flushScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.executor.execute(() -> {
+				this.flushScheduled.set(false);
+				this.flushQuietly();
+			});
+		} catch (RuntimeException e) {
+			// Will be flushed by the periodic task
+			this.flushScheduled.set(false);
+		}
+	}
+	
+	/**
+	 * @return number of changes waiting for flush
+	 */
+	public int getPendingCount() {
+		return this.pending.size();
+	}
+	
+	private void flushQuietly() {
+		try {
+			this.flush();
+		} catch (RuntimeException e) {
+			LOG.warn("Cannot flush cache changes", e);
+		}
+	}
+	
+	/**
+	 * Writes changes pending at the moment of the call by batches.
+	 * Changes queued while flushing are left for the next flush, so the call ends even if writers never stop.
+	 * @throws RuntimeException thrown by the target writer, failed changes stay pending
+	 */
+	public void flush() {
+		this.flushLock.lock();
+		try {
+			Iterator<K> keys = new ArrayList<>(this.pending.keySet()).iterator();
+			while (keys.hasNext()) {
+				this.flushBatch(keys);
+			}
+		} finally {
+			this.flushLock.unlock();
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void flushBatch(Iterator<K> keys) {
+		LinkedHashMap<K, V> writes = new LinkedHashMap<>();
+		ArrayList<K> deletes = new ArrayList<>();
+		int count = 0;
+		while (count < this.batchSize && keys.hasNext()) {
+			K key = keys.next();
+			Object op = this.pending.remove(key);
+			if (op == null) {
+				continue;
+			}
+			if (op == DELETED) {
+				deletes.add(key);
+			} else {
+				writes.put(key, op == NULL ? null : (V) op);
+			}
+			count++;
+		}
+		
+		try {
+			if (!writes.isEmpty()) {
+				this.target.writeAll(writes);
+			}
+		} catch (RuntimeException | Error e) {
+			this.requeue(writes.entrySet(), deletes);
+			throw e;
+		}
+		try {
+			if (!deletes.isEmpty()) {
+				this.target.deleteAll(deletes);
+			}
+		} catch (RuntimeException | Error e) {
+			this.requeue(null, deletes);
+			throw e;
+		}
+	}
+	
+	private void requeue(Collection<Map.Entry<K, V>> writes, Collection<K> deletes) {
+		if (writes != null) {
+			for (Map.Entry<K, V> e : writes) {
+				V value = e.getValue();
+				this.pending.putIfAbsent(e.getKey(), value == null ? NULL : value);
+			}
+		}
+		for (K key : deletes) {
+			this.pending.putIfAbsent(key, DELETED);
+		}
+	}
+	
+	/**
+	 * Stops periodic flushing and writes all pending changes.
+	 */
+	@Override
+	public void close() {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		this.task.cancel(false);
+		this.flush();
+	}
+}
@@ -0,0 +1,283 @@
+package net.inveed.commons.reflection;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates property accessors bound to getters, setters and fields.
+ * Public methods of public classes get accessor classes generated by {@link LambdaMetafactory}, which call
+ * the method directly. Other methods and fields are accessed through method handles created once,
+ * so accessibility checks are not repeated on every call.
+ * {@link PrimitivePropertyAccessor} uses the same approach to read and write primitive values without boxing.
+ */
+final class AccessorFactory {
+	private static final Logger LOG = LoggerFactory.getLogger(AccessorFactory.class);
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private static final class HandleGetter implements IPropertyGetter {
+		private final MethodHandle handle;
+
+		HandleGetter(MethodHandle handle) {
+			this.handle = handle.asType(GETTER_TYPE);
+		}
+
+		@Override
+		public Object get(Object target) throws Throwable {
+			return (Object) this.handle.invokeExact(target);
+		}
+	}
+
+	private static final class HandleSetter implements IPropertySetter {
+		private final MethodHandle handle;
+
+		HandleSetter(MethodHandle handle) {
+			this.handle = handle.asType(SETTER_TYPE);
+		}
+
+		@Override
+		public void set(Object target, Object value) throws Throwable {
+			this.handle.invokeExact(target, value);
+		}
+	}
+
+	private AccessorFactory() {}
+
+	/**
+	 * @return accessor or null if the object is neither method nor field
+	 */
+	static IPropertyGetter createGetter(AccessibleObject getter) {
+		if (getter instanceof Method) {
+			Method m = (Method) getter;
+			IPropertyGetter ret = generate(IPropertyGetter.class, "get", GETTER_TYPE, m,
+					MethodType.methodType(wrap(m.getReturnType()), m.getDeclaringClass()));
+			if (ret != null) {
+				return ret;
+			}
+			return new HandleGetter(getterHandle(m));
+		} else if (getter instanceof Field) {
+			return new HandleGetter(getterHandle(getter));
+		}
+		return null;
+	}
+
+	/**
+	 * @return accessor or null if the object is neither method nor field
+	 */
+	static IPropertySetter createSetter(AccessibleObject setter) {
+		if (setter instanceof Method) {
+			Method m = (Method) setter;
+			IPropertySetter ret = generate(IPropertySetter.class, "set", SETTER_TYPE, m,
+					MethodType.methodType(void.class, m.getDeclaringClass(), wrap(m.getParameterTypes()[0])));
+			if (ret != null) {
+				return ret;
+			}
+			return new HandleSetter(setterHandle(m));
+		} else if (setter instanceof Field) {
+			return new HandleSetter(setterHandle(setter));
+		}
+		return null;
+	}
+
+	/**
+	 * Generates class implementing the single method interface by a direct call of the method.
+	 * Types of the method are adapted to the instantiated type by {@link LambdaMetafactory} rules:
+	 * the target is cast, primitives are widened and boxed or unboxed.
+	 * @param samType erased type of the interface method
+	 * @param instantiated type of the interface method with the declaring class of the method as the first parameter
+	 * @return accessor or null if the method cannot be called from a generated class
+	 */
+	static <T> T generate(Class<T> type, String name, MethodType samType, Method m, MethodType instantiated) {
+		if (!isLinkable(m) || !isLinkable(m.getReturnType())) {
+			return null;
+		}
+		for (Class<?> p : m.getParameterTypes()) {
+			if (!isLinkable(p)) {
+				return null;
+			}
+		}
+		try {
+			CallSite site = LambdaMetafactory.metafactory(LOOKUP, name, MethodType.methodType(type),
+					samType, LOOKUP.unreflect(m), instantiated);
+			return type.cast(site.getTarget().invoke());
+		} catch (Throwable e) {
+			LOG.debug("Cannot generate accessor for {}, using method handle", m, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return method handle of type (declaring class)property type
+	 */
+	static MethodHandle getterHandle(AccessibleObject getter) {
+		if (getter instanceof Method) {
+			Method m = (Method) getter;
+			m.setAccessible(true);
+			try {
+				return LOOKUP.unreflect(m);
+			} catch (IllegalAccessException e) {
+				throw new BeanConfigurationException("Cannot access getter " + m + ": " + e.getMessage());
+			}
+		} else {
+			Field f = (Field) getter;
+			f.setAccessible(true);
+			try {
+				return LOOKUP.unreflectGetter(f);
+			} catch (IllegalAccessException e) {
+				throw new BeanConfigurationException("Cannot access field " + f + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Final fields can be written by reflection only, their handles call {@link Field#set(Object, Object)}
+	 * or typed methods such as {@link Field#setInt(Object, int)} bound to the field.
+	 * @return method handle of type (declaring class, property type)void
+	 */
+	static MethodHandle setterHandle(AccessibleObject setter) {
+		if (setter instanceof Method) {
+			Method m = (Method) setter;
+			m.setAccessible(true);
+			try {
+				return LOOKUP.unreflect(m);
+			} catch (IllegalAccessException e) {
+				throw new BeanConfigurationException("Cannot access setter " + m + ": " + e.getMessage());
+			}
+		} else {
+			Field f = (Field) setter;
+			f.setAccessible(true);
+			try {
+				if (Modifier.isFinal(f.getModifiers())) {
+					Class<?> type = f.getType();
+					MethodHandle ret;
+					if (type.isPrimitive()) {
+						String name = "set" + Character.toUpperCase(type.getName().charAt(0)) + type.getName().substring(1);
+						ret = LOOKUP.findVirtual(Field.class, name, MethodType.methodType(void.class, Object.class, type));
+					} else {
+						ret = LOOKUP.findVirtual(Field.class, "set", MethodType.methodType(void.class, Object.class, Object.class));
+					}
+					return ret.bindTo(f).asType(MethodType.methodType(void.class, f.getDeclaringClass(), type));
+				}
+				return LOOKUP.unreflectSetter(f);
+			} catch (IllegalAccessException | NoSuchMethodException e) {
+				throw new BeanConfigurationException("Cannot access field " + f + ": " + e.getMessage());
+			}
+		}
+	}
+
+	// Generated class is defined in this package by the class loader of this class,
+	// so it can call only public methods of public classes visible from this loader.
+	private static boolean isLinkable(Method m) {
+		return Modifier.isPublic(m.getModifiers()) && isLinkable(m.getDeclaringClass());
+	}
+
+	private static boolean isLinkable(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive()) {
+			return true;
+		}
+		if (!Modifier.isPublic(type.getModifiers())) {
+			return false;
+		}
+		try {
+			return Class.forName(type.getName(), false, AccessorFactory.class.getClassLoader()) == type;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	static Class<?> wrap(Class<?> type) {
+		if (!type.isPrimitive()) {
+			return type;
+		}
+		return MethodType.methodType(type).wrap().returnType();
+	}
+
+	/**
+	 * Checks value for the property type and applies widening primitive conversions,
+	 * e.g. Integer value is converted to Long for long property, as reflection does.
+	 * @return value of the property type
+	 * @throws IllegalArgumentException if the value can't be assigned to the property
+	 */
+	static Object convertValue(Class<?> type, Object value) {
+		if (value == null) {
+			if (type.isPrimitive()) {
+				throw new IllegalArgumentException("Cannot set null to property of type " + type.getName());
+			}
+			return null;
+		}
+		Class<?> wrapper = wrap(type);
+		if (wrapper.isInstance(value)) {
+			return value;
+		}
+		if (type.isPrimitive()) {
+			Object ret = widen(type, value);
+			if (ret != null) {
+				return ret;
+			}
+		}
+		throw new IllegalArgumentException("Cannot set value of type " + value.getClass().getName() + " to property of type " + type.getName());
+	}
+
+	// Order of widening conversions, char is handled separately
+	private static int rank(Class<?> type) {
+		if (type == byte.class || type == Byte.class) {
+			return 1;
+		} else if (type == short.class || type == Short.class) {
+			return 2;
+		} else if (type == int.class || type == Integer.class) {
+			return 3;
+		} else if (type == long.class || type == Long.class) {
+			return 4;
+		} else if (type == float.class || type == Float.class) {
+			return 5;
+		} else if (type == double.class || type == Double.class) {
+			return 6;
+		}
+		return 0;
+	}
+
+	private static Object widen(Class<?> type, Object value) {
+		int to = rank(type);
+		Number n;
+		if (value instanceof Character) {
+			// char widens to int and wider types only
+			if (to < 3) {
+				return null;
+			}
+			n = Integer.valueOf((Character) value);
+		} else {
+			int from = rank(value.getClass());
+			if (from == 0 || to == 0 || from > to) {
+				return null;
+			}
+			n = (Number) value;
+		}
+		switch (to) {
+		case 2:
+			return n.shortValue();
+		case 3:
+			return n.intValue();
+		case 4:
+			return n.longValue();
+		case 5:
+			return n.floatValue();
+		default:
+			return n.doubleValue();
+		}
+	}
+}
@@ -4,6 +4,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
@@ -13,6 +14,15 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.inveed.commons.reflection.PrimitivePropertyAccessor.IBooleanGetter;
+import net.inveed.commons.reflection.PrimitivePropertyAccessor.IBooleanSetter;
+import net.inveed.commons.reflection.PrimitivePropertyAccessor.IDoubleGetter;
+import net.inveed.commons.reflection.PrimitivePropertyAccessor.IDoubleSetter;
+import net.inveed.commons.reflection.PrimitivePropertyAccessor.IIntGetter;
+import net.inveed.commons.reflection.PrimitivePropertyAccessor.IIntSetter;
+import net.inveed.commons.reflection.PrimitivePropertyAccessor.ILongGetter;
+import net.inveed.commons.reflection.PrimitivePropertyAccessor.ILongSetter;
+import net.inveed.commons.reflection.PrimitivePropertyAccessor.NullValueException;
 import net.inveed.commons.reflection.ext.IBeanPropertyExtension;
 
 /**
@@ -49,6 +59,14 @@ public final class BeanPropertyDesc {
 	private AccessibleObject actualGetter;
 	private AccessibleObject actualSetter;
 	
+	// Accessors bound to the actual getter and setter on the first use
+	private volatile IPropertyGetter boundGetter;
+	private volatile IPropertySetter boundSetter;
+	private Class<?> setterValueType;
+	private volatile PrimitivePropertyAccessor primitiveAccessor;
+	
+	private volatile ResolvedProperty lastResolved;
+	
 	/// Constructor and initialization
 	BeanPropertyDesc(String name, BeanTypeDesc<?> container) {
 		this.name = PropertyUtils.normalizePropertyName(name);
@@ -306,124 +324,357 @@ public final class BeanPropertyDesc {
 		return this.propertyType;
 	}
 
+	// Property resolved for the target class
+	private static final class ResolvedProperty {
+		final Class<?> targetClass;
+		// null if the target type doesn't have the property
+		final BeanPropertyDesc property;
+		
+		ResolvedProperty(Class<?> targetClass, BeanPropertyDesc property) {
+			this.targetClass = targetClass;
+			this.property = property;
+		}
+	}
+	
+	/**
+	 * Finds the property in the actual type of the target, property can be overrided.
+	 * The result for the last target class is cached, so repeated calls for objects of the same class
+	 * don't look up the type registry.
+	 * @return null if target is not an instance of the bean type
+	 */
+	private ResolvedProperty resolve(Object target) {
+		Class<?> targetClass = target.getClass();
+		ResolvedProperty ret = this.lastResolved;
+		if (ret != null && ret.targetClass == targetClass) {
+			return ret;
+		}
+		JavaTypeDesc<?> targetTypeBase = JavaTypeRegistry.getType(targetClass);
+		if (!this.getBeanType().isAssignableFrom(targetTypeBase)) {
+			return null;
+		}
+		BeanTypeDesc<?> targetType = (BeanTypeDesc<?>) targetTypeBase;
+		ret = new ResolvedProperty(targetClass, targetType.getProperty(this.getName()));
+		this.lastResolved = ret;
+		return ret;
+	}
+	
+	IPropertyGetter getBoundGetter() {
+		IPropertyGetter ret = this.boundGetter;
+		if (ret != null) {
+			return ret;
+		}
+		AccessibleObject getter = this.getGetter();
+		if (getter == null) {
+			return null;
+		}
+		ret = AccessorFactory.createGetter(getter);
+		this.boundGetter = ret;
+		return ret;
+	}
+	
+	IPropertySetter getBoundSetter() {
+		IPropertySetter ret = this.boundSetter;
+		if (ret != null) {
+			return ret;
+		}
+		AccessibleObject setter = this.getSetter();
+		if (setter == null) {
+			return null;
+		}
+		Class<?> valueType = setter instanceof Method ? ((Method) setter).getParameterTypes()[0] : ((Field) setter).getType();
+		ret = AccessorFactory.createSetter(setter);
+		// Published by the volatile write of the setter
+		this.setterValueType = valueType;
+		this.boundSetter = ret;
+		return ret;
+	}
+
+	PrimitivePropertyAccessor getPrimitiveAccessor() {
+		PrimitivePropertyAccessor ret = this.primitiveAccessor;
+		if (ret != null) {
+			return ret;
+		}
+		ret = new PrimitivePropertyAccessor(this.getGetter(), this.getSetter());
+		this.primitiveAccessor = ret;
+		return ret;
+	}
+
 	public Object getValue(Object target) throws IllegalArgumentException, InvocationTargetException {
 		if (target == null) {
 			throw new NullPointerException("target is null");
 		}
 
-		JavaTypeDesc<?> targetTypeBase = JavaTypeRegistry.getType(target.getClass());
-		if (!this.getBeanType().isAssignableFrom(targetTypeBase)) {
+		ResolvedProperty resolved = this.resolve(target);
+		if (resolved == null) {
 			return null;
 		}
-		
-		BeanTypeDesc<?> targetType = (BeanTypeDesc<?>) targetTypeBase;
-		
-		// Property can be overrided. Finding real property.
-		BeanPropertyDesc prop = targetType.getProperty(this.getName());
+		BeanPropertyDesc prop = resolved.property;
 		if (prop == null) {
 			LOG.error("Trying to get property value for property {} and object type {}. Property not found in target type", this.toString(), target.getClass().getName());
 			return null;
 		}
 
-		AccessibleObject getter = prop.getGetter();
+		IPropertyGetter getter = prop.getBoundGetter();
 		if (getter == null) {
 			LOG.warn("Trying to get property value for property {} and object type {}. Getter not found in target type", this.toString(), target.getClass().getName());
 			return null;
 		}
-		boolean wasAccessible = getter.isAccessible();
-		if (!wasAccessible) {
-			getter.setAccessible(true);
-		}
 		try {
-			if (getter instanceof Method) {
-				try {
-					return ((Method) getter).invoke(target);
-				} catch (IllegalAccessException e) {
-					LOG.error("Trying to get value of property {} and object type {}. Unknown problem with getter IllegalAccessException", this.toString(), target.getClass().getName());
-					LOG.warn("Handled exception", e);
-					return null;
-				} catch ( IllegalArgumentException | InvocationTargetException e) {
-					LOG.error("Trying to get value of property {} and object type {}. Unknown problem getter invocation", this.toString(), target.getClass().getName());
-					LOG.warn("Handled exception", e);
-					throw e;
-				}
-			} else if (getter instanceof Field) {
-				try {
-					return ((Field) getter).get(target);
-				} catch (IllegalAccessException e) {
-					LOG.error("Trying to get value of property {} and object type {}. Unknown problem with field's IllegalAccessException", this.toString(), target.getClass().getName());
-					LOG.warn("Handled exception", e);
-					return null;
-				}
-			} else {
-				LOG.warn("Trying to get property value for property {} and object type {}. getter has unexpected type {}", this.toString(), target.getClass().getName(), getter.getClass().getName());
-				return null;
-			}
-		} finally {
-			if (!wasAccessible) {
-				getter.setAccessible(false);
-			}
+			return getter.get(target);
+		} catch (Throwable e) {
+			throw this.getterFailed(target, e);
 		}
 	}
+	
 	public boolean setValue(Object target, Object value) throws IllegalArgumentException, InvocationTargetException{
 		if (target == null) {
 			throw new NullPointerException("target is null");
 		}
 		
-		JavaTypeDesc<?> targetTypeBase = JavaTypeRegistry.getType(target.getClass());
-		if (!this.getBeanType().isAssignableFrom(targetTypeBase)) {
+		ResolvedProperty resolved = this.resolve(target);
+		if (resolved == null) {
 			return false;
 		}
-		
-		BeanTypeDesc<?> targetType = (BeanTypeDesc<?>) targetTypeBase;
-		BeanPropertyDesc prop = targetType.getProperty(this.getName());
+		BeanPropertyDesc prop = resolved.property;
 		if (prop == null) {
 			LOG.warn("Trying to set value of property {} and object type {}. Property not found in target type", this.toString(), target.getClass().getName());
 			return false;
 		}
-		AccessibleObject setterObj = prop.getSetter();
-		if (setterObj == null) {
+		IPropertySetter setter = prop.getBoundSetter();
+		if (setter == null) {
 			LOG.warn("Trying to set value of property {} and object type {}. Setter not found in target type", this.toString(), target.getClass().getName());
 			return false;
 		}
 		
-		boolean wasAccessible = setterObj.isAccessible();
-		if (!wasAccessible) {
-			setterObj.setAccessible(true);
+		Object converted;
+		try {
+			converted = AccessorFactory.convertValue(prop.setterValueType, value);
+		} catch (IllegalArgumentException e) {
+			LOG.warn("Trying to set value of property {} and object type {}. Unknown problem with setter invocation", this.toString(), target.getClass().getName());
+			LOG.warn("Handled exception", e);
+			throw e;
 		}
 		try {
-			if (setterObj instanceof Method) {
-				try {
-					((Method) setterObj).invoke(target, value);
-					return true;
-				} catch (IllegalAccessException e) {
-					LOG.warn("Trying to set value of property {} and object type {}. Unknown problem with setter IllegalAccessException", this.toString(), target.getClass().getName());
-					LOG.warn("Handled exception", e);
-					return false;
-				} catch ( IllegalArgumentException | InvocationTargetException e) {
-					LOG.warn("Trying to set value of property {} and object type {}. Unknown problem with setter invocation", this.toString(), target.getClass().getName());
-					LOG.warn("Handled exception", e);
-					throw e;
-				}
-			} else if (setterObj instanceof Field) {
-				try {
-					((Field) setterObj).set(target, value);
-					return true;
-				} catch (IllegalAccessException e) {
-					LOG.warn("Trying to set value of property {} and object type {}. Unknown problem with field's IllegalAccessException", this.toString(), target.getClass().getName());
-					LOG.warn("Handled exception", e);
-					return false;
-				}
-			} else {
-				LOG.warn("Trying to set value of property {} and object type {}. setter has unexpected type {}", this.toString(), target.getClass().getName(), getter.getClass().getName());
-				return false;
-			}
-		} finally {
-			if (!wasAccessible) {
-				setterObj.setAccessible(false);
+			setter.set(target, converted);
+			return true;
+		} catch (Throwable e) {
+			throw this.setterFailed(target, e);
+		}
+	}
+	
+	// Returns getter of the type for the actual property of the target, see PrimitivePropertyAccessor.getter
+	private Object getPrimitiveGetter(Object target, Class<?> type) {
+		if (target == null) {
+			throw new NullPointerException("target is null");
+		}
+		ResolvedProperty resolved = this.resolve(target);
+		if (resolved == null) {
+			throw new IllegalArgumentException("Object of type " + target.getClass().getName() + " is not an instance of " + this.getBeanType().getType().getName());
+		}
+		BeanPropertyDesc prop = resolved.property;
+		if (prop == null) {
+			LOG.error("Trying to get property value for property {} and object type {}. Property not found in target type", this.toString(), target.getClass().getName());
+			throw new IllegalArgumentException("Property " + this.getName() + " not found in type " + target.getClass().getName());
+		}
+		PrimitivePropertyAccessor accessor = prop.getPrimitiveAccessor();
+		if (!accessor.hasGetter()) {
+			LOG.warn("Trying to get property value for property {} and object type {}. Getter not found in target type", this.toString(), target.getClass().getName());
+			throw new IllegalArgumentException("Getter of property " + this.getName() + " not found in type " + target.getClass().getName());
+		}
+		Object ret = accessor.getter(type);
+		if (ret == null) {
+			throw new IllegalArgumentException("Property " + this.toString() + " cannot be read as " + type.getName());
+		}
+		return ret;
+	}
+	
+	// Returns setter of the type for the actual property of the target or null if the setter is not found
+	private Object getPrimitiveSetter(Object target, Class<?> type) {
+		if (target == null) {
+			throw new NullPointerException("target is null");
+		}
+		ResolvedProperty resolved = this.resolve(target);
+		if (resolved == null) {
+			return null;
+		}
+		BeanPropertyDesc prop = resolved.property;
+		if (prop == null) {
+			LOG.warn("Trying to set value of property {} and object type {}. Property not found in target type", this.toString(), target.getClass().getName());
+			return null;
+		}
+		PrimitivePropertyAccessor accessor = prop.getPrimitiveAccessor();
+		if (!accessor.hasSetter()) {
+			LOG.warn("Trying to set value of property {} and object type {}. Setter not found in target type", this.toString(), target.getClass().getName());
+			return null;
+		}
+		Object ret = accessor.setter(type);
+		if (ret == null) {
+			throw new IllegalArgumentException("Value of type " + type.getName() + " cannot be assigned to property " + this.toString());
+		}
+		return ret;
+	}
+	
+	private InvocationTargetException getterFailed(Object target, Throwable e) {
+		this.rethrowUnwrapped(target, e, true);
+		LOG.error("Trying to get value of property {} and object type {}. Unknown problem getter invocation", this.toString(), target.getClass().getName());
+		LOG.warn("Handled exception", e);
+		return new InvocationTargetException(e);
+	}
+	
+	private InvocationTargetException setterFailed(Object target, Throwable e) {
+		this.rethrowUnwrapped(target, e, false);
+		LOG.warn("Trying to set value of property {} and object type {}. Unknown problem with setter invocation", this.toString(), target.getClass().getName());
+		LOG.warn("Handled exception", e);
+		return new InvocationTargetException(e);
+	}
+	
+	// Errors and null values of wrapper properties read as primitives are not wrapped. ClassCastException is thrown by the adapted accessor itself when the target
+	// is not an instance of the class declaring the getter or setter; the one thrown inside the accessor is wrapped.
+	private void rethrowUnwrapped(Object target, Throwable e, boolean getter) {
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		if (e instanceof NullValueException) {
+			throw (NullValueException) e;
+		}
+		if (e instanceof ClassCastException) {
+			BeanPropertyDesc prop = this.resolve(target).property;
+			AccessibleObject accessor = getter ? prop.getGetter() : prop.getSetter();
+			if (!((Member) accessor).getDeclaringClass().isInstance(target)) {
+				throw new IllegalArgumentException("Object of type " + target.getClass().getName() + " cannot be accessed by " + accessor, e);
 			}
 		}
 	}
+	
+	/**
+	 * Reads value of int property without boxing. 
+	 * Works for properties of types byte, short, char, int and Integer.
+	 * @throws IllegalArgumentException if target doesn't have the property or its getter, the property cannot be read as int or its wrapper value is null
+	 */
+	public int getInt(Object target) throws IllegalArgumentException, InvocationTargetException {
+		IIntGetter getter = (IIntGetter) this.getPrimitiveGetter(target, int.class);
+		try {
+			return getter.getInt(target);
+		} catch (Throwable e) {
+			throw this.getterFailed(target, e);
+		}
+	}
+	
+	/**
+	 * Reads value of long property without boxing.
+	 * Works for properties of types byte, short, char, int, long and Long.
+	 * @see #getInt(Object)
+	 */
+	public long getLong(Object target) throws IllegalArgumentException, InvocationTargetException {
+		ILongGetter getter = (ILongGetter) this.getPrimitiveGetter(target, long.class);
+		try {
+			return getter.getLong(target);
+		} catch (Throwable e) {
+			throw this.getterFailed(target, e);
+		}
+	}
+	
+	/**
+	 * Reads value of double property without boxing.
+	 * Works for properties of any primitive numeric type and Double.
+	 * @see #getInt(Object)
+	 */
+	public double getDouble(Object target) throws IllegalArgumentException, InvocationTargetException {
+		IDoubleGetter getter = (IDoubleGetter) this.getPrimitiveGetter(target, double.class);
+		try {
+			return getter.getDouble(target);
+		} catch (Throwable e) {
+			throw this.getterFailed(target, e);
+		}
+	}
+	
+	/**
+	 * Reads value of boolean property without boxing.
+	 * Works for properties of types boolean and Boolean.
+	 * @see #getInt(Object)
+	 */
+	public boolean getBoolean(Object target) throws IllegalArgumentException, InvocationTargetException {
+		IBooleanGetter getter = (IBooleanGetter) this.getPrimitiveGetter(target, boolean.class);
+		try {
+			return getter.getBoolean(target);
+		} catch (Throwable e) {
+			throw this.getterFailed(target, e);
+		}
+	}
+	
+	/**
+	 * Sets value of int property without boxing.
+	 * Works for properties of types int, long, float, double and Integer.
+	 * @return false if target doesn't have the property or its setter
+	 * @throws IllegalArgumentException if int value cannot be assigned to the property
+	 */
+	public boolean setInt(Object target, int value) throws IllegalArgumentException, InvocationTargetException {
+		IIntSetter setter = (IIntSetter) this.getPrimitiveSetter(target, int.class);
+		if (setter == null) {
+			return false;
+		}
+		try {
+			setter.setInt(target, value);
+			return true;
+		} catch (Throwable e) {
+			throw this.setterFailed(target, e);
+		}
+	}
+	
+	/**
+	 * Sets value of long property without boxing.
+	 * Works for properties of types long, float, double and Long.
+	 * @see #setInt(Object, int)
+	 */
+	public boolean setLong(Object target, long value) throws IllegalArgumentException, InvocationTargetException {
+		ILongSetter setter = (ILongSetter) this.getPrimitiveSetter(target, long.class);
+		if (setter == null) {
+			return false;
+		}
+		try {
+			setter.setLong(target, value);
+			return true;
+		} catch (Throwable e) {
+			throw this.setterFailed(target, e);
+		}
+	}
+	
+	/**
+	 * Sets value of double property without boxing.
+	 * Works for properties of types double and Double.
+	 * @see #setInt(Object, int)
+	 */
+	public boolean setDouble(Object target, double value) throws IllegalArgumentException, InvocationTargetException {
+		IDoubleSetter setter = (IDoubleSetter) this.getPrimitiveSetter(target, double.class);
+		if (setter == null) {
+			return false;
+		}
+		try {
+			setter.setDouble(target, value);
+			return true;
+		} catch (Throwable e) {
+			throw this.setterFailed(target, e);
+		}
+	}
+	
+	/**
+	 * Sets value of boolean property without boxing.
+	 * Works for properties of types boolean and Boolean.
+	 * @see #setInt(Object, int)
+	 */
+	public boolean setBoolean(Object target, boolean value) throws IllegalArgumentException, InvocationTargetException {
+		IBooleanSetter setter = (IBooleanSetter) this.getPrimitiveSetter(target, boolean.class);
+		if (setter == null) {
+			return false;
+		}
+		try {
+			setter.setBoolean(target, value);
+			return true;
+		} catch (Throwable e) {
+			throw this.setterFailed(target, e);
+		}
+	}
+	
 	public List<Annotation> getAnnotatedAnnotations(Class<? extends Annotation> atype) {
 		ArrayList<Annotation> ret = new ArrayList<>();
 		if (this.field != null) {
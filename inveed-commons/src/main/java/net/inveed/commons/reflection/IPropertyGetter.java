@@ -0,0 +1,12 @@
+package net.inveed.commons.reflection;
+
+/**
+ * Reads property value, bound to a getter method or a field once.
+ * @see AccessorFactory
+ */
+interface IPropertyGetter {
+	/**
+	 * @throws Throwable thrown by the getter method
+	 */
+	Object get(Object target) throws Throwable;
+}
@@ -0,0 +1,13 @@
+package net.inveed.commons.reflection;
+
+/**
+ * Writes property value, bound to a setter method or a field once.
+ * Value should be of the exact (wrapper) type of the property, see {@link AccessorFactory#convertValue(Class, Object)}.
+ * @see AccessorFactory
+ */
+interface IPropertySetter {
+	/**
+	 * @throws Throwable thrown by the setter method
+	 */
+	void set(Object target, Object value) throws Throwable;
+}
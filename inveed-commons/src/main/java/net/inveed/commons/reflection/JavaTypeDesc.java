@@ -1,23 +1,28 @@
 package net.inveed.commons.reflection;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.inveed.commons.reflection.ext.IBeanTypeExtension;
 
 public abstract class JavaTypeDesc<T>{
 
-	private boolean _initialized = false;
-	private final HashMap<Class<IBeanTypeExtension<T>>, IBeanTypeExtension<T>> extensions = new HashMap<>();
+	private volatile boolean _initialized = false;
+	// Read without locking, changed under its own lock together with initialization of extensions
+	private final ConcurrentHashMap<Class<IBeanTypeExtension<T>>, IBeanTypeExtension<T>> extensions = new ConcurrentHashMap<>();
+	// Number of extension types of the registry applied to the type, set by the registry
+	private volatile int _appliedExtensions = 0;
 	
 	public boolean isAssignableFrom(JavaTypeDesc<?> type) {
 		return this.getType().isAssignableFrom(type.getType());
 	}
 	
 	protected void initialize() {
-		for (IBeanTypeExtension<T> e : this.extensions.values()) {
-			e.initialize();
+		synchronized (this.extensions) {
+			for (IBeanTypeExtension<T> e : this.extensions.values()) {
+				e.initialize();
+			}
+			this._initialized = true;
 		}
-		this._initialized = true;
 	}
 	public abstract Class<T> getType();
 	
@@ -37,9 +42,29 @@ public abstract class JavaTypeDesc<T>{
 		return (E) this.extensions.get(type);
 	}
 
+	// Doesn't initialize the type unlike getExtension
+	boolean hasExtension(Class<?> type) {
+		return this.extensions.containsKey(type);
+	}
+
+	int getAppliedExtensions() {
+		return this._appliedExtensions;
+	}
+
+	void setAppliedExtensions(int count) {
+		this._appliedExtensions = count;
+	}
+
+	/**
+	 * Extension registered after the type is initialized is initialized immediately.
+	 */
 	@SuppressWarnings("unchecked")
 	public void registerExtension(IBeanTypeExtension<T> bte) {
-		this.extensions.put((Class<IBeanTypeExtension<T>>) bte.getClass(), bte);
-		
+		synchronized (this.extensions) {
+			this.extensions.put((Class<IBeanTypeExtension<T>>) bte.getClass(), bte);
+			if (this._initialized) {
+				bte.initialize();
+			}
+		}
 	}
 }
@@ -4,21 +4,37 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.inveed.commons.reflection.ext.IBeanTypeExtension;
 
+/**
+ * Registry of type descriptors.
+ * Lookups of registered types don't lock. Descriptors are created without a global lock,
+ * so types can be registered in parallel; if the same type is registered by several threads at once,
+ * the first published descriptor is used by all of them.
+ * Extensions are instantiated for the published descriptor only, once per extension type.
+ * Other threads looking the type up wait until its extensions are applied. Extension constructors don't wait:
+ * looking up a type whose extensions are being applied, e.g. own type or a type referencing the constructed one,
+ * they get the descriptor without the extensions which are not applied yet.
+ */
 public final class JavaTypeRegistry {
 	// STATIC
 	private static final Logger LOG = LoggerFactory.getLogger(JavaTypeRegistry.class);
-	private static final HashMap<Class<?>, JavaTypeDesc<?>> classMap = new HashMap<>();
-	private static final ArrayList<Class<? extends IBeanTypeExtension<?>>> extensions = new ArrayList<>();
+	private static final ConcurrentHashMap<Class<?>, JavaTypeDesc<?>> classMap = new ConcurrentHashMap<>();
+	private static final CopyOnWriteArrayList<Class<? extends IBeanTypeExtension<?>>> extensions = new CopyOnWriteArrayList<>();
+	// Types whose extensions are being applied, futures are completed when done
+	private static final ConcurrentHashMap<Class<?>, CompletableFuture<Void>> extending = new ConcurrentHashMap<>();
+	// Set while the thread applies extensions. Such threads don't wait for other types, so they can't wait for each other
+	private static final ThreadLocal<Boolean> applying = new ThreadLocal<>();
 	
 	@SuppressWarnings("rawtypes")
 	private static final IBeanTypeExtension<?> instantiateExtension(BeanTypeDesc<?> btd, Class<? extends IBeanTypeExtension> type) { 
@@ -44,10 +60,53 @@ public final class JavaTypeRegistry {
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public static final void registerExtension(Class<? extends IBeanTypeExtension> type) {
+		// Added before applying to registered types, so types registered concurrently get the extension too
+		extensions.addIfAbsent((Class<? extends IBeanTypeExtension<?>>) type);
 		for (JavaTypeDesc<?> t : classMap.values()) {
 			if (t instanceof BeanTypeDesc<?>) {
-				BeanTypeDesc btd = (BeanTypeDesc) t;
-				IBeanTypeExtension bte = instantiateExtension(btd, type);
+				applyExtensions((BeanTypeDesc<?>) t);
+			}
+		}
+	}
+	
+	private static final boolean isExtended(JavaTypeDesc<?> type) {
+		// Extensions are only appended, so the count identifies the applied ones
+		return type.getAppliedExtensions() == extensions.size();
+	}
+
+	// Registers extensions which are not registered in the type yet, one thread at a time
+	private static final void applyExtensions(BeanTypeDesc<?> btd) {
+		Class<?> type = btd.getType();
+		while (!isExtended(btd)) {
+			CompletableFuture<Void> done = new CompletableFuture<>();
+			CompletableFuture<Void> prev = extending.putIfAbsent(type, done);
+			if (prev == null) {
+				try {
+					apply(btd);
+				} finally {
+					extending.remove(type, done);
+					done.complete(null);
+				}
+			} else if (applying.get() != null) {
+				// Looked up by an extension constructor
+				return;
+			} else {
+				prev.join();
+			}
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static final void apply(BeanTypeDesc btd) {
+		Boolean outer = applying.get();
+		applying.set(Boolean.TRUE);
+		try {
+			List<Class<? extends IBeanTypeExtension<?>>> snapshot = new ArrayList<>(extensions);
+			for (Class<? extends IBeanTypeExtension<?>> etype : snapshot) {
+				if (btd.hasExtension(etype)) {
+					continue;
+				}
+				IBeanTypeExtension bte = instantiateExtension(btd, etype);
 				if (bte == null) {
 					continue;
 				}
@@ -56,28 +115,39 @@ public final class JavaTypeRegistry {
 				}
 				btd.registerExtension(bte);
 			}
+			btd.setAppliedExtensions(snapshot.size());
+		} finally {
+			if (outer == null) {
+				applying.remove();
+			}
+		}
+	}
+
+	private static final JavaTypeDesc<?> extended(JavaTypeDesc<?> type) {
+		if (type instanceof BeanTypeDesc<?> && !isExtended(type)) {
+			applyExtensions((BeanTypeDesc<?>) type);
 		}
-		extensions.add((Class<? extends IBeanTypeExtension<?>>) type);
+		return type;
 	}
 	
 	@SuppressWarnings("unchecked")
 	public static final <T> JavaTypeDesc<T> getType(Class<T> type) {
-		if (classMap.containsKey(type)) {
-			return (JavaTypeDesc<T>) classMap.get(type);
+		if (type == null) {
+			return null;
 		}
-		synchronized (classMap) {
-			if (classMap.containsKey(type)) {
-				return (JavaTypeDesc<T>) classMap.get(type);
-			}
-
-			JavaTypeDesc<?> t = null;
-			if (type instanceof Class) {
-				t = createFor((Class<?>) type);
-			}
-			classMap.put(type, t);
-			
-			return (JavaTypeDesc<T>) t;
+		JavaTypeDesc<?> ret = classMap.get(type);
+		if (ret != null) {
+			return (JavaTypeDesc<T>) extended(ret);
+		}
+		
+		// Created without locking: creation can recursively register other types
+		JavaTypeDesc<?> t = createFor(type);
+		ret = classMap.putIfAbsent(type, t);
+		if (ret != null) {
+			// Registered by another thread, our descriptor is dropped
+			return (JavaTypeDesc<T>) extended(ret);
 		}
+		return (JavaTypeDesc<T>) extended(t);
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
@@ -98,13 +168,7 @@ public final class JavaTypeRegistry {
 		} else if (Map.class.isAssignableFrom(type)) {
 			return (JavaTypeDesc<T>) new MapTypeDesc((Class<? extends Map<?, ?>>) type);
 		} else {
-			BeanTypeDesc<T> ret = new BeanTypeDesc<T>(type);
-			for (Class<? extends IBeanTypeExtension<?>> etype : extensions) {
-				IBeanTypeExtension<?> e = instantiateExtension(ret, etype);
-				if (e.isValid())
-					ret.registerExtension((IBeanTypeExtension<T>) e);
-			}
-			return ret;
+			return new BeanTypeDesc<T>(type);
 		}
 	}
 	
@@ -0,0 +1,280 @@
+package net.inveed.commons.reflection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+
+/**
+ * Accessors to read and write property values as primitives, without boxing.
+ * Accessors of the getter and setter are created once for every supported primitive type.
+ * Conversions follow the rules of method invocation: widening primitive conversions
+ * (int property can be read as long) and unboxing of wrapper properties are allowed,
+ * narrowing conversions aren't.
+ * Public methods of public classes are called by classes generated with {@link AccessorFactory#generate},
+ * so the calls can be inlined; fields and other methods are accessed through method handles.
+ */
+final class PrimitivePropertyAccessor {
+	interface IIntGetter {
+		int getInt(Object target) throws Throwable;
+	}
+
+	interface ILongGetter {
+		long getLong(Object target) throws Throwable;
+	}
+
+	interface IDoubleGetter {
+		double getDouble(Object target) throws Throwable;
+	}
+
+	interface IBooleanGetter {
+		boolean getBoolean(Object target) throws Throwable;
+	}
+
+	interface IIntSetter {
+		void setInt(Object target, int value) throws Throwable;
+	}
+
+	interface ILongSetter {
+		void setLong(Object target, long value) throws Throwable;
+	}
+
+	interface IDoubleSetter {
+		void setDouble(Object target, double value) throws Throwable;
+	}
+
+	interface IBooleanSetter {
+		void setBoolean(Object target, boolean value) throws Throwable;
+	}
+
+	/**
+	 * Thrown when null value of a wrapper property is read as primitive.
+	 */
+	static final class NullValueException extends IllegalArgumentException {
+		private static final long serialVersionUID = 1L;
+
+		NullValueException(AccessibleObject getter) {
+			super("Null value returned by " + getter + " cannot be read as primitive");
+		}
+	}
+
+	// Calls the handle adapted to the type of the implemented method
+	private static final class HandleAccessor implements IIntGetter, ILongGetter, IDoubleGetter, IBooleanGetter,
+			IIntSetter, ILongSetter, IDoubleSetter, IBooleanSetter {
+		private final MethodHandle handle;
+
+		HandleAccessor(MethodHandle handle) {
+			this.handle = handle;
+		}
+
+		@Override
+		public int getInt(Object target) throws Throwable {
+			return (int) this.handle.invokeExact(target);
+		}
+
+		@Override
+		public long getLong(Object target) throws Throwable {
+			return (long) this.handle.invokeExact(target);
+		}
+
+		@Override
+		public double getDouble(Object target) throws Throwable {
+			return (double) this.handle.invokeExact(target);
+		}
+
+		@Override
+		public boolean getBoolean(Object target) throws Throwable {
+			return (boolean) this.handle.invokeExact(target);
+		}
+
+		@Override
+		public void setInt(Object target, int value) throws Throwable {
+			this.handle.invokeExact(target, value);
+		}
+
+		@Override
+		public void setLong(Object target, long value) throws Throwable {
+			this.handle.invokeExact(target, value);
+		}
+
+		@Override
+		public void setDouble(Object target, double value) throws Throwable {
+			this.handle.invokeExact(target, value);
+		}
+
+		@Override
+		public void setBoolean(Object target, boolean value) throws Throwable {
+			this.handle.invokeExact(target, value);
+		}
+	}
+
+	// Reads property of wrapper type, which is checked for null before unboxing
+	private static final class BoxedGetter implements IIntGetter, ILongGetter, IDoubleGetter, IBooleanGetter {
+		private final AccessibleObject getter;
+		private final IPropertyGetter accessor;
+
+		BoxedGetter(AccessibleObject getter) {
+			this.getter = getter;
+			this.accessor = AccessorFactory.createGetter(getter);
+		}
+
+		private Object get(Object target) throws Throwable {
+			Object ret = this.accessor.get(target);
+			if (ret == null) {
+				throw new NullValueException(this.getter);
+			}
+			return ret;
+		}
+
+		@Override
+		public int getInt(Object target) throws Throwable {
+			return (Integer) this.get(target);
+		}
+
+		@Override
+		public long getLong(Object target) throws Throwable {
+			return (Long) this.get(target);
+		}
+
+		@Override
+		public double getDouble(Object target) throws Throwable {
+			return (Double) this.get(target);
+		}
+
+		@Override
+		public boolean getBoolean(Object target) throws Throwable {
+			return (Boolean) this.get(target);
+		}
+	}
+
+	private final IIntGetter intGetter;
+	private final ILongGetter longGetter;
+	private final IDoubleGetter doubleGetter;
+	private final IBooleanGetter booleanGetter;
+
+	private final IIntSetter intSetter;
+	private final ILongSetter longSetter;
+	private final IDoubleSetter doubleSetter;
+	private final IBooleanSetter booleanSetter;
+
+	private final boolean hasGetter;
+	private final boolean hasSetter;
+
+	/**
+	 * @param getter getter method or field, can be null
+	 * @param setter setter method or field, can be null
+	 */
+	PrimitivePropertyAccessor(AccessibleObject getter, AccessibleObject setter) {
+		MethodHandle g = getter == null ? null : AccessorFactory.getterHandle(getter);
+		MethodHandle s = setter == null ? null : AccessorFactory.setterHandle(setter);
+		this.hasGetter = g != null;
+		this.hasSetter = s != null;
+
+		this.intGetter = createGetter(getter, g, int.class, IIntGetter.class, "getInt");
+		this.longGetter = createGetter(getter, g, long.class, ILongGetter.class, "getLong");
+		this.doubleGetter = createGetter(getter, g, double.class, IDoubleGetter.class, "getDouble");
+		this.booleanGetter = createGetter(getter, g, boolean.class, IBooleanGetter.class, "getBoolean");
+
+		this.intSetter = createSetter(setter, s, int.class, IIntSetter.class, "setInt");
+		this.longSetter = createSetter(setter, s, long.class, ILongSetter.class, "setLong");
+		this.doubleSetter = createSetter(setter, s, double.class, IDoubleSetter.class, "setDouble");
+		this.booleanSetter = createSetter(setter, s, boolean.class, IBooleanSetter.class, "setBoolean");
+	}
+
+	// null if the property type cannot be converted to the requested type
+	private static <T> T createGetter(AccessibleObject getter, MethodHandle handle, Class<?> type, Class<T> accessorType, String name) {
+		if (handle == null) {
+			return null;
+		}
+		Class<?> propertyType = handle.type().returnType();
+		if (!propertyType.isPrimitive()) {
+			// Allow unboxing of own wrapper only, asType would also accept Object and Number with a cast
+			return AccessorFactory.wrap(type) == propertyType ? accessorType.cast(new BoxedGetter(getter)) : null;
+		}
+		MethodHandle adapted = adapt(handle, MethodType.methodType(type, Object.class));
+		if (adapted == null) {
+			return null;
+		}
+		if (getter instanceof Method) {
+			Method m = (Method) getter;
+			T ret = AccessorFactory.generate(accessorType, name, adapted.type(), m, MethodType.methodType(type, m.getDeclaringClass()));
+			if (ret != null) {
+				return ret;
+			}
+		}
+		return accessorType.cast(new HandleAccessor(adapted));
+	}
+
+	private static <T> T createSetter(AccessibleObject setter, MethodHandle handle, Class<?> type, Class<T> accessorType, String name) {
+		if (handle == null) {
+			return null;
+		}
+		Class<?> propertyType = handle.type().parameterType(1);
+		if (!propertyType.isPrimitive() && !propertyType.isAssignableFrom(AccessorFactory.wrap(type))) {
+			return null;
+		}
+		MethodHandle adapted = adapt(handle, MethodType.methodType(void.class, Object.class, type));
+		if (adapted == null) {
+			return null;
+		}
+		if (setter instanceof Method) {
+			Method m = (Method) setter;
+			T ret = AccessorFactory.generate(accessorType, name, adapted.type(), m, MethodType.methodType(void.class, m.getDeclaringClass(), type));
+			if (ret != null) {
+				return ret;
+			}
+		}
+		return accessorType.cast(new HandleAccessor(adapted));
+	}
+
+	private static MethodHandle adapt(MethodHandle handle, MethodType type) {
+		try {
+			return handle.asType(type);
+		} catch (WrongMethodTypeException e) {
+			return null;
+		}
+	}
+
+	boolean hasGetter() {
+		return this.hasGetter;
+	}
+
+	boolean hasSetter() {
+		return this.hasSetter;
+	}
+
+	/**
+	 * @param type int, long, double or boolean
+	 * @return getter of the type, e.g. {@link IIntGetter} for int, or null if the property cannot be read as the type
+	 */
+	Object getter(Class<?> type) {
+		if (type == int.class) {
+			return this.intGetter;
+		} else if (type == long.class) {
+			return this.longGetter;
+		} else if (type == double.class) {
+			return this.doubleGetter;
+		} else if (type == boolean.class) {
+			return this.booleanGetter;
+		}
+		return null;
+	}
+
+	/**
+	 * @param type int, long, double or boolean
+	 * @return setter of the type, e.g. {@link IIntSetter} for int, or null if value of the type cannot be assigned to the property
+	 */
+	Object setter(Class<?> type) {
+		if (type == int.class) {
+			return this.intSetter;
+		} else if (type == long.class) {
+			return this.longSetter;
+		} else if (type == double.class) {
+			return this.doubleSetter;
+		} else if (type == boolean.class) {
+			return this.booleanSetter;
+		}
+		return null;
+	}
+}
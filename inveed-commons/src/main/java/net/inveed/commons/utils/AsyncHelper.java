@@ -1,6 +1,7 @@
 package net.inveed.commons.utils;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class AsyncHelper {
 	public static final <T> CompletableFuture<T> onException(Class<T> type, Throwable e) {
@@ -8,4 +9,22 @@ public class AsyncHelper {
 		ret.completeExceptionally(e);
 		return ret;
 	}
+	
+	/**
+	 * Waits for the future and rethrows its failure without {@link CompletionException} wrapper when possible.
+	 */
+	public static final <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
 }
@@ -0,0 +1,130 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ArrayLRUStorageTest {
+
+	private static List<Integer> range(int from, int to) {
+		List<Integer> ret = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			ret.add(i);
+		}
+		return ret;
+	}
+
+	@Test
+	public void fullStorageEvictsLeastRecentlyUsed() {
+		ArrayLRUStorage<Integer, String> s = new ArrayLRUStorage<>(3);
+		List<Integer> evicted = new ArrayList<>();
+		s.setEvictionListener((k, v) -> evicted.add(k));
+		s.put(1, "1");
+		s.put(2, "2");
+		s.put(3, "3");
+		assertEquals("1", s.access(1));
+		s.put(4, "4");
+		assertEquals(Arrays.asList(2), evicted);
+		assertEquals(Arrays.asList(3, 1, 4), s.keysInAccessOrder());
+
+		// get doesn't change the order
+		assertEquals("3", s.get(3));
+		assertNull(s.getAndPut(5, "5"));
+		assertEquals(Arrays.asList(2, 3), evicted);
+		assertEquals(Arrays.asList(1, 4, 5), s.keysInAccessOrder());
+	}
+
+	@Test
+	public void cacheMaxSizeLimitsStorage() {
+		Cache<Integer, Integer> cache = new Cache<>(new ArrayLRUStorage<Integer, Integer>());
+		for (int i = 0; i < 10; i++) {
+			cache.put(i, i);
+		}
+		cache.get(0);
+		cache.setMaxSize(5);
+		assertEquals(5, cache.size());
+		assertEquals(Integer.valueOf(0), cache.get(0));
+		assertNull(cache.get(5));
+
+		for (int i = 10; i < 20; i++) {
+			cache.put(i, i);
+			assertEquals(5, cache.size());
+		}
+		for (int i = 15; i < 20; i++) {
+			assertEquals(Integer.valueOf(i), cache.get(i));
+		}
+	}
+
+	@Test
+	public void removedEntriesAreReused() {
+		ArrayLRUStorage<Integer, Integer> s = new ArrayLRUStorage<>(4);
+		List<Integer> evicted = new ArrayList<>();
+		s.setEvictionListener((k, v) -> evicted.add(k));
+		for (int i = 0; i < 4; i++) {
+			s.put(i, i);
+		}
+		assertEquals(Integer.valueOf(1), s.getAndRemove(1));
+		s.put(10, 10);
+		assertTrue(evicted.isEmpty());
+		assertEquals(Arrays.asList(0, 2, 3, 10), s.keysInAccessOrder());
+
+		s.removeAll(Arrays.asList(0, 2));
+		s.put(11, 11);
+		s.put(12, 12);
+		assertTrue(evicted.isEmpty());
+		s.put(13, 13);
+		assertEquals(Arrays.asList(3), evicted);
+		assertEquals(Arrays.asList(10, 11, 12, 13), s.keysInAccessOrder());
+		assertFalse(s.containsKey(1));
+	}
+
+	@Test
+	public void shrinkBelowSizeEvictsOldest() {
+		ArrayLRUStorage<Integer, Integer> s = new ArrayLRUStorage<>();
+		List<Integer> evicted = new ArrayList<>();
+		s.setEvictionListener((k, v) -> evicted.add(k));
+		// Unbounded storage grows past its initial capacity
+		for (int i = 0; i < 100; i++) {
+			s.put(i, i);
+		}
+		assertEquals(100, s.size());
+		assertTrue(evicted.isEmpty());
+
+		s.shrink(10);
+		assertEquals(range(0, 90), evicted);
+		assertEquals(range(90, 100), s.keysInAccessOrder());
+		s.put(100, 100);
+		assertEquals(range(91, 101), s.keysInAccessOrder());
+
+		// Growing the capacity again
+		evicted.clear();
+		s.shrink(20);
+		for (int i = 101; i < 111; i++) {
+			s.put(i, i);
+		}
+		assertTrue(evicted.isEmpty());
+		assertEquals(range(91, 111), s.keysInAccessOrder());
+	}
+
+	@Test
+	public void shrinkWeightEvictsOldest() {
+		ArrayLRUStorage<Integer, Integer> s = new ArrayLRUStorage<>();
+		s.setWeigher((k, v) -> v);
+		for (int i = 1; i <= 10; i++) {
+			s.put(i, i);
+		}
+		assertEquals(55, s.weight());
+		s.access(1);
+		s.shrinkWeight(30);
+		// Recently accessed 1 is kept
+		assertEquals(Arrays.asList(8, 9, 10, 1), s.keysInAccessOrder());
+		assertEquals(28, s.weight());
+	}
+}
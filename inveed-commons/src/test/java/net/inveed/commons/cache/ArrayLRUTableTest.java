@@ -0,0 +1,191 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ArrayLRUTableTest {
+	// Hashes are set by the test, so slots of the keys are known
+	private static final class Table extends ArrayLRUTable {
+		int[] keys;
+		int[] hashes;
+
+		Table(int capacity) {
+			super(capacity);
+			this.keys = new int[capacity];
+			this.hashes = new int[capacity];
+		}
+
+		@Override
+		int hashOf(int entry) {
+			return this.hashes[entry];
+		}
+
+		@Override
+		void resizeKeys(int length) {
+			this.keys = Arrays.copyOf(this.keys, length);
+			this.hashes = Arrays.copyOf(this.hashes, length);
+		}
+
+		int find(int key, int hash) {
+			int i = hash & this.mask;
+			int e;
+			while ((e = this.table[i]) != 0) {
+				if (this.keys[e - 1] == key) {
+					return i;
+				}
+				i = (i + 1) & this.mask;
+			}
+			return -i - 1;
+		}
+
+		int add(int key, int hash) {
+			int slot = this.find(key, hash);
+			assertTrue("duplicate key " + key, slot < 0);
+			int e = this.newEntry();
+			this.keys[e] = key;
+			this.hashes[e] = hash;
+			this.values[e] = key;
+			this.addEntry(-slot - 1, e);
+			return e;
+		}
+
+		void remove(int key, int hash) {
+			this.removeEntry(this.table[this.find(key, hash)] - 1);
+		}
+
+		List<Integer> keys() {
+			List<Integer> ret = new ArrayList<>();
+			for (int e = this.first(); e != NONE; e = this.next(e)) {
+				ret.add(this.keys[e]);
+			}
+			return ret;
+		}
+	}
+
+	@Test
+	public void removalShiftsCollidingKeysAroundTheEnd() {
+		// Capacity 4 - table of 8 slots
+		Table t = new Table(4);
+		t.add(1, 7);
+		t.add(2, 7);
+		t.add(3, 7);
+		t.add(4, 0);
+		assertEquals(7, t.find(1, 7));
+		assertEquals(0, t.find(2, 7));
+		assertEquals(1, t.find(3, 7));
+		assertEquals(2, t.find(4, 0));
+
+		t.remove(1, 7);
+		assertEquals(7, t.find(2, 7));
+		assertEquals(0, t.find(3, 7));
+		assertEquals(1, t.find(4, 0));
+		assertEquals(0, t.table[2]);
+
+		t.remove(3, 7);
+		assertEquals(7, t.find(2, 7));
+		assertEquals(0, t.find(4, 0));
+		assertEquals(0, t.table[1]);
+		assertEquals(Arrays.asList(2, 4), t.keys());
+	}
+
+	@Test
+	public void keyIsNotShiftedBeforeItsHomeSlot() {
+		Table t = new Table(4);
+		t.add(1, 6);
+		t.add(2, 7);
+		t.add(3, 7);
+		assertEquals(0, t.find(3, 7));
+
+		// Slot 7 is still home of key 2, only key 3 can be shifted
+		t.remove(1, 6);
+		assertEquals(7, t.find(2, 7));
+		assertEquals(0, t.find(3, 7));
+		assertEquals(0, t.table[6]);
+
+		t.remove(2, 7);
+		assertEquals(7, t.find(3, 7));
+		assertEquals(1, t.size());
+	}
+
+	@Test
+	public void entriesAreKeptInRecencyOrder() {
+		Table t = new Table(4);
+		int[] entries = new int[4];
+		for (int key = 0; key < 4; key++) {
+			entries[key] = t.add(key, key);
+		}
+		t.touch(entries[0]);
+		t.touch(entries[2]);
+		assertEquals(Arrays.asList(1, 3, 0, 2), t.keys());
+		assertEquals(entries[1], t.first());
+		t.remove(1, 1);
+		assertEquals(Arrays.asList(3, 0, 2), t.keys());
+	}
+
+	@Test
+	public void freeEntriesAreReused() {
+		Table t = new Table(3);
+		t.add(0, 0);
+		int e = t.add(1, 1);
+		t.add(2, 2);
+		assertEquals(ArrayLRUTable.NONE, t.newEntry());
+
+		t.remove(1, 1);
+		assertEquals(e, t.add(5, 1));
+		assertEquals(3, t.size());
+		assertEquals(ArrayLRUTable.NONE, t.newEntry());
+	}
+
+	@Test
+	public void growingCapacityRehashesEntries() {
+		Table t = new Table(2);
+		t.add(1, 1);
+		t.add(2, 5);
+		t.setCapacity(10);
+		assertEquals(32, t.table.length);
+		for (int key = 3; key <= 10; key++) {
+			t.add(key, key * 3);
+		}
+		assertEquals(10, t.size());
+		assertEquals(ArrayLRUTable.NONE, t.newEntry());
+		assertTrue(t.find(1, 1) >= 0);
+		assertTrue(t.find(2, 5) >= 0);
+		for (int key = 3; key <= 10; key++) {
+			assertTrue("key " + key, t.find(key, key * 3) >= 0);
+		}
+
+		try {
+			t.setCapacity(5);
+			fail("capacity less than size");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void clearedTableIsReused() {
+		Table t = new Table(4);
+		for (int key = 0; key < 4; key++) {
+			t.add(key, 7);
+		}
+		t.clearEntries();
+		assertEquals(0, t.size());
+		assertEquals(ArrayLRUTable.NONE, t.first());
+		assertTrue(t.find(0, 7) < 0);
+		for (Object v : t.values) {
+			assertEquals(null, v);
+		}
+
+		for (int key = 10; key < 14; key++) {
+			assertEquals(key - 10, t.add(key, 7));
+		}
+		assertEquals(Arrays.asList(10, 11, 12, 13), t.keys());
+	}
+}
@@ -0,0 +1,118 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class CacheLoaderTest {
+
+	// Starts the callers and releases the loader when all of them are blocked
+	private static List<Thread> runBlocked(int threads, Runnable caller, CountDownLatch release) throws InterruptedException {
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			Thread w = new Thread(caller);
+			w.start();
+			workers.add(w);
+		}
+		for (Thread w : workers) {
+			while (w.getState() != Thread.State.WAITING && w.isAlive()) {
+				Thread.sleep(1);
+			}
+		}
+		release.countDown();
+		for (Thread w : workers) {
+			w.join();
+		}
+		return workers;
+	}
+
+	@Test
+	public void concurrentLoadsAreCoalesced() throws Exception {
+		Cache<Integer, String> cache = new Cache<>();
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		Function<Integer, String> loader = k -> {
+			calls.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return new String("value" + k);
+		};
+		ConcurrentLinkedQueue<String> results = new ConcurrentLinkedQueue<>();
+		runBlocked(8, () -> results.add(cache.get(1, loader)), release);
+
+		assertEquals(1, calls.get());
+		assertEquals(8, results.size());
+		String first = results.peek();
+		for (String r : results) {
+			assertSame(first, r);
+		}
+		assertSame(first, cache.get(1));
+	}
+
+	@Test
+	public void failedLoadIsPassedToWaitersAndRetried() throws Exception {
+		Cache<Integer, String> cache = new Cache<>();
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		Function<Integer, String> loader = k -> {
+			calls.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			throw new IllegalStateException("load failed");
+		};
+		AtomicInteger failures = new AtomicInteger();
+		runBlocked(4, () -> {
+			try {
+				cache.get(1, loader);
+			} catch (RuntimeException e) {
+				failures.incrementAndGet();
+			}
+		}, release);
+
+		assertEquals(1, calls.get());
+		assertEquals(4, failures.get());
+		assertNull(cache.get(1));
+		assertEquals("value", cache.get(1, k -> "value"));
+	}
+
+	@Test
+	public void recursiveLoadOfSameKeyFails() {
+		Cache<Integer, String> cache = new Cache<>();
+		try {
+			cache.get(1, (k) -> cache.get(1, (k2) -> "inner"));
+			fail("recursive load completed");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertNull(cache.get(1));
+
+		try {
+			cache.get(1, (k) -> cache.getAll(Arrays.asList(2, 1), (keys) -> Collections.emptyMap()).get(1));
+			fail("recursive bulk load completed");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		// Loads of other keys are allowed, and the failed loads are not pending
+		assertEquals("ab", cache.get(1, (k) -> "a" + cache.get(2, (k2) -> "b")));
+		assertEquals("b", cache.get(2));
+	}
+}
@@ -0,0 +1,75 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class CacheMBeanTest {
+	private static final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+	private static ObjectName name(String cacheName) throws Exception {
+		return new ObjectName(CacheStatsBean.DOMAIN + ":type=Cache,name=" + ObjectName.quote(cacheName));
+	}
+
+	@Test
+	public void exposesStatistics() throws Exception {
+		Cache<Integer, String> cache = new Cache<>();
+		cache.put(1, "a");
+		cache.registerMBean("mbean-stats");
+		try {
+			assertEquals(1L, server.getAttribute(name("mbean-stats"), "Size"));
+		} finally {
+			cache.unregisterMBean();
+		}
+		assertFalse(server.isRegistered(name("mbean-stats")));
+	}
+
+	@Test
+	public void sameNameOfAnotherCacheIsRejected() throws Exception {
+		Cache<Integer, String> first = new Cache<>();
+		Cache<Integer, String> second = new Cache<>();
+		first.registerMBean("mbean-clash");
+		try {
+			second.registerMBean("mbean-clash");
+			fail("registered twice");
+		} catch (IllegalStateException e) {
+			// expected
+		} finally {
+			first.unregisterMBean();
+		}
+		// Re-registration by the same cache is allowed
+		first.registerMBean("mbean-clash");
+		first.registerMBean("mbean-clash");
+		first.unregisterMBean();
+	}
+
+	@Test
+	public void registrationDoesNotKeepCache() throws Exception {
+		WeakReference<Cache<Integer, String>> ref = registerTemporary("mbean-weak");
+		for (int i = 0; i < 50 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertTrue("cache wasn't collected", ref.get() == null);
+
+		// Stale bean of the collected cache is replaced
+		Cache<Integer, String> cache = new Cache<>();
+		cache.registerMBean("mbean-weak");
+		cache.unregisterMBean();
+	}
+
+	private static WeakReference<Cache<Integer, String>> registerTemporary(String name) {
+		Cache<Integer, String> cache = new Cache<>();
+		cache.registerMBean(name);
+		return new WeakReference<>(cache);
+	}
+}
@@ -0,0 +1,66 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CacheManagerTest {
+
+	@After
+	public void resetConfiguration() {
+		CacheManager.INSTANCE.configure(new Properties());
+	}
+
+	@Test
+	public void duplicateNameIsRejected() {
+		Cache<Integer, String> first = new Cache<>("manager-duplicate");
+		try {
+			new Cache<Integer, String>("manager-duplicate");
+			fail("registered twice");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertSame(first, CacheManager.INSTANCE.getCache("manager-duplicate"));
+	}
+
+	@Test
+	public void failedConfigurationDoesNotRegisterName() {
+		Properties props = new Properties();
+		props.setProperty("cache.manager-invalid.maxSize", "0");
+		CacheManager.INSTANCE.configure(props);
+		try {
+			new Cache<Integer, String>("manager-invalid");
+			fail("invalid configuration was applied");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertNull(CacheManager.INSTANCE.getCache("manager-invalid"));
+
+		props.setProperty("cache.manager-invalid.maxSize", "10");
+		CacheManager.INSTANCE.configure(props);
+		Cache<Integer, String> cache = new Cache<>("manager-invalid");
+		assertEquals(10, cache.getMaxSize());
+		assertSame(cache, CacheManager.INSTANCE.getCache("manager-invalid"));
+	}
+
+	@Test
+	public void configurationIsAppliedBeforePublishing() {
+		Properties props = new Properties();
+		props.setProperty("cache.manager-config.maxSize", "5");
+		props.setProperty("cache.manager-config.recordStats", "true");
+		CacheManager.INSTANCE.configure(props);
+		Cache<Integer, String> cache = CacheManager.INSTANCE.getOrCreateCache("manager-config");
+		assertEquals(5, cache.getMaxSize());
+		assertEquals(true, cache.isRecordingStats());
+		for (int i = 0; i < 10; i++) {
+			cache.put(i, "v");
+		}
+		assertEquals(5, cache.size());
+	}
+}
@@ -0,0 +1,113 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class CacheRefreshTest {
+	// Refresh loaders are run by the test
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger loads = new AtomicInteger();
+	private final Function<Integer, String> loader = (k) -> "v" + this.loads.incrementAndGet();
+
+	private Cache<Integer, String> cache() throws Exception {
+		Cache<Integer, String> cache = new Cache<>();
+		cache.setRefreshAfterWrite(50, TimeUnit.MILLISECONDS);
+		cache.setRefreshExecutor(this.tasks::add);
+		cache.put(1, "old");
+		Thread.sleep(80);
+		return cache;
+	}
+
+	private void runTasks() {
+		Runnable r;
+		while ((r = this.tasks.poll()) != null) {
+			r.run();
+		}
+	}
+
+	@Test
+	public void staleValueIsServedWhileRefreshing() throws Exception {
+		Cache<Integer, String> cache = this.cache();
+		assertEquals("old", cache.get(1, this.loader));
+		assertEquals(1, this.tasks.size());
+		assertEquals("old", cache.get(1, this.loader));
+		assertEquals("old", cache.get(1));
+		assertEquals(0, this.loads.get());
+
+		this.runTasks();
+		assertEquals(1, this.loads.get());
+		assertEquals("v1", cache.get(1, this.loader));
+		// Fresh value isn't refreshed
+		assertEquals(0, this.tasks.size());
+	}
+
+	@Test
+	public void concurrentRefreshesAreDeduplicated() throws Exception {
+		Cache<Integer, String> cache = this.cache();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(new Thread(() -> {
+				try {
+					for (int i = 0; i < 100; i++) {
+						assertEquals("old", cache.get(1, this.loader));
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}));
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertEquals(1, this.tasks.size());
+
+		CompletableFuture<String> f = cache.refresh(1, this.loader);
+		assertSame(f, cache.refresh(1, this.loader));
+		this.runTasks();
+		assertEquals("v1", f.get());
+		assertEquals(1, this.loads.get());
+	}
+
+	@Test
+	public void refreshDoesNotOverwritePut() throws Exception {
+		Cache<Integer, String> cache = this.cache();
+		cache.get(1, this.loader);
+		cache.put(1, "put");
+		this.runTasks();
+		assertEquals(1, this.loads.get());
+		assertEquals("put", cache.get(1));
+	}
+
+	@Test
+	public void failedRefreshKeepsStaleValue() throws Exception {
+		Cache<Integer, String> cache = this.cache();
+		assertEquals("old", cache.get(1, (k) -> {
+			throw new IllegalStateException("test");
+		}));
+		this.runTasks();
+		assertEquals("old", cache.get(1));
+
+		// Next read retries
+		assertEquals("old", cache.get(1, this.loader));
+		this.runTasks();
+		assertEquals("v1", cache.get(1));
+	}
+}
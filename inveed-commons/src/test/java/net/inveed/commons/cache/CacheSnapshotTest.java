@@ -0,0 +1,98 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CacheSnapshotTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Cache<String, String> filled(int count) {
+		Cache<String, String> cache = new Cache<>();
+		for (int i = 0; i < count; i++) {
+			cache.put("k" + i, "v" + i);
+		}
+		// Change the access order
+		cache.get("k0");
+		return cache;
+	}
+
+	@Test
+	public void roundTripWithValues() throws IOException {
+		Cache<String, String> source = filled(3000);
+		File file = new File(this.folder.getRoot(), "cache.snapshot");
+		assertEquals(3000, CacheSnapshot.write(source, file, ISerializer.STRING, ISerializer.STRING));
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		Cache<String, String> target = new Cache<>();
+		assertEquals(3000, CacheSnapshot.load(target, file, ISerializer.STRING, ISerializer.STRING));
+		assertEquals(3000, target.size());
+		for (int i = 0; i < 3000; i++) {
+			assertEquals("v" + i, target.peek("k" + i));
+		}
+		assertEquals(source.keysInAccessOrder(), target.keysInAccessOrder());
+	}
+
+	@Test
+	public void keysOnlyAreLoadedByBulkLoader() throws IOException {
+		Cache<String, String> source = filled(10);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(10, CacheSnapshot.write(source, out, ISerializer.STRING, null));
+
+		Cache<String, String> target = new Cache<>();
+		target.put("k1", "kept");
+		AtomicInteger loaded = new AtomicInteger();
+		int ret = CacheSnapshot.load(target, new ByteArrayInputStream(out.toByteArray()), ISerializer.STRING, null, keys -> {
+			loaded.addAndGet(keys.size());
+			Map<String, String> values = new HashMap<>();
+			for (String k : keys) {
+				if (!k.equals("k2")) {
+					values.put(k, "loaded-" + k);
+				}
+			}
+			return values;
+		});
+		// k1 is present, k2 isn't returned by the loader
+		assertEquals(9, loaded.get());
+		assertEquals(8, ret);
+		assertEquals("kept", target.peek("k1"));
+		assertNull(target.peek("k2"));
+		assertEquals("loaded-k3", target.peek("k3"));
+	}
+
+	@Test
+	public void truncatedSnapshotIsRejected() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CacheSnapshot.write(filled(10), out, ISerializer.STRING, ISerializer.STRING);
+		byte[] data = out.toByteArray();
+		try {
+			CacheSnapshot.load(new Cache<String, String>(), new ByteArrayInputStream(Arrays.copyOf(data, data.length - 6)),
+					ISerializer.STRING, ISerializer.STRING, null);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		data[0] = 0;
+		try {
+			CacheSnapshot.load(new Cache<String, String>(), new ByteArrayInputStream(data), ISerializer.STRING, ISerializer.STRING, null);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
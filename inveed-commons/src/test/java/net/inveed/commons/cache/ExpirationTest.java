@@ -0,0 +1,195 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ExpirationTest {
+
+	@Test
+	public void expiredAfterWriteIsNotReturned() throws Exception {
+		Cache<Integer, String> cache = new Cache<>();
+		cache.setExpireAfterWrite(50, TimeUnit.MILLISECONDS);
+		cache.put(1, "a");
+		assertEquals("a", cache.get(1));
+		Thread.sleep(100);
+		assertNull(cache.get(1));
+		assertFalse(cache.containsKey(1));
+	}
+
+	@Test
+	public void accessExtendsExpireAfterAccess() throws Exception {
+		Cache<Integer, String> cache = new Cache<>();
+		cache.setExpireAfterAccess(200, TimeUnit.MILLISECONDS);
+		cache.put(1, "a");
+		for (int i = 0; i < 5; i++) {
+			Thread.sleep(80);
+			assertEquals("a", cache.get(1));
+		}
+		Thread.sleep(300);
+		assertNull(cache.get(1));
+	}
+
+	@Test
+	public void cleanUpRemovesExpiredEntries() throws Exception {
+		Cache<Integer, String> cache = new Cache<>();
+		cache.setExpireAfterWrite(100, TimeUnit.MILLISECONDS);
+		List<Integer> expired = new ArrayList<>();
+		cache.addRemovalListener((k, v, cause) -> {
+			if (cause == RemovalCause.EXPIRED) {
+				synchronized (expired) {
+					expired.add(k);
+				}
+			}
+		});
+		for (int i = 0; i < 10; i++) {
+			cache.put(i, "v" + i);
+		}
+		// Timers fire with the wheel resolution, about a second
+		Thread.sleep(2300);
+		cache.cleanUp();
+		assertEquals(0, cache.size());
+		synchronized (expired) {
+			assertEquals(10, expired.size());
+		}
+	}
+
+	@Test
+	public void rewrittenEntriesAreNotExpiredAndStayTracked() throws Exception {
+		Cache<Integer, Integer> cache = new Cache<>();
+		cache.setExpireAfterWrite(1100, TimeUnit.MILLISECONDS);
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicBoolean lost = new AtomicBoolean();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			int base = t * 16;
+			Thread w = new Thread(() -> {
+				int i = 0;
+				while (!stop.get()) {
+					int key = base + (i++ & 15);
+					cache.put(key, i);
+					if (cache.get(key) == null) {
+						lost.set(true);
+					}
+				}
+			});
+			threads.add(w);
+		}
+		Thread cleaner = new Thread(() -> {
+			while (!stop.get()) {
+				cache.cleanUp();
+				Thread.yield();
+			}
+		});
+		threads.add(cleaner);
+		for (Thread t : threads) {
+			t.start();
+		}
+		Thread.sleep(3500);
+		stop.set(true);
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertFalse("fresh value was expired", lost.get());
+		assertTrue(cache.size() > 0);
+
+		// Every written key is still tracked and expires
+		Thread.sleep(3300);
+		cache.cleanUp();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void entryPutConcurrentlyWithRemoveExpires() throws Exception {
+		Cache<Integer, Integer> cache = new Cache<>();
+		cache.setExpireAfterWrite(200, TimeUnit.MILLISECONDS);
+		AtomicBoolean stop = new AtomicBoolean();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			boolean writer = (t & 1) == 0;
+			Thread w = new Thread(() -> {
+				int i = 0;
+				while (!stop.get()) {
+					int key = i++ & 7;
+					if (writer) {
+						cache.put(key, i);
+					} else {
+						cache.remove(key);
+					}
+				}
+			});
+			threads.add(w);
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		Thread.sleep(1000);
+		stop.set(true);
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		// Entries left by the writers are tracked and expire
+		Thread.sleep(300);
+		for (int key = 0; key < 8; key++) {
+			assertNull("key " + key, cache.get(key));
+		}
+	}
+
+	@Test
+	public void entryPutConcurrentlyWithClearExpires() throws Exception {
+		Cache<Integer, Integer> cache = new Cache<>();
+		cache.setExpireAfterWrite(200, TimeUnit.MILLISECONDS);
+		AtomicBoolean stop = new AtomicBoolean();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 3; t++) {
+			Thread w = new Thread(() -> {
+				int i = 0;
+				while (!stop.get()) {
+					cache.put(i++ & 63, i);
+				}
+			});
+			threads.add(w);
+		}
+		threads.add(new Thread(() -> {
+			while (!stop.get()) {
+				cache.clear();
+			}
+		}));
+		for (Thread t : threads) {
+			t.start();
+		}
+		Thread.sleep(1000);
+		stop.set(true);
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		Thread.sleep(300);
+		for (int key = 0; key < 64; key++) {
+			assertNull("key " + key, cache.get(key));
+		}
+	}
+
+	@Test
+	public void refreshedEntryIsKept() throws Exception {
+		Cache<Integer, String> cache = new Cache<>();
+		cache.setExpireAfterWrite(1, TimeUnit.SECONDS);
+		cache.put(1, "a");
+		Thread.sleep(700);
+		cache.put(1, "b");
+		Thread.sleep(700);
+		cache.cleanUp();
+		assertNotNull(cache.get(1));
+		assertEquals("b", cache.get(1));
+	}
+}
@@ -0,0 +1,54 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+	@Test
+	public void frequencyIsEstimatedUpToMaximum() {
+		FrequencySketch sketch = new FrequencySketch();
+		sketch.ensureCapacity(512);
+		assertEquals(0, sketch.frequency("a"));
+		for (int i = 0; i < 5; i++) {
+			sketch.increment("a");
+		}
+		assertEquals(5, sketch.frequency("a"));
+		assertEquals(0, sketch.frequency("b"));
+
+		for (int i = 0; i < 20; i++) {
+			sketch.increment("a");
+		}
+		assertEquals(15, sketch.frequency("a"));
+	}
+
+	@Test
+	public void frequenciesAreHalvedOnReset() {
+		FrequencySketch sketch = new FrequencySketch();
+		sketch.ensureCapacity(16);
+		for (int i = 0; i < 15; i++) {
+			sketch.increment("hot");
+		}
+		assertEquals(15, sketch.frequency("hot"));
+
+		// Saturated counter of the hot key changes only when the counters are halved
+		int i = 0;
+		while (sketch.frequency("hot") == 15) {
+			sketch.increment(i++);
+		}
+		assertEquals(7, sketch.frequency("hot"));
+		// Reset after 10 times the capacity increments, including the ones of the hot key
+		assertTrue("increments " + i, i <= 10 * 16 - 15);
+	}
+
+	@Test
+	public void resizeDropsFrequencies() {
+		FrequencySketch sketch = new FrequencySketch();
+		sketch.increment("a");
+		assertEquals(1, sketch.frequency("a"));
+		sketch.ensureCapacity(1024);
+		assertEquals(0, sketch.frequency("a"));
+	}
+}
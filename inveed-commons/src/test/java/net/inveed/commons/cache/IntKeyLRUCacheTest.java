@@ -0,0 +1,83 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntKeyLRUCacheTest {
+
+	private static List<Integer> keys(IntKeyLRUCache<?> cache) {
+		List<Integer> ret = new ArrayList<>();
+		cache.forEach((v, k) -> ret.add(k));
+		return ret;
+	}
+
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		IntKeyLRUCache<String> cache = new IntKeyLRUCache<>(3);
+		cache.put(1, "1");
+		cache.put(2, "2");
+		cache.put(3, "3");
+		assertEquals("1", cache.get(1));
+		cache.put(4, "4");
+		assertEquals(Arrays.asList(3, 1, 4), keys(cache));
+		assertFalse(cache.containsKey(2));
+		assertNull(cache.get(2));
+	}
+
+	@Test
+	public void maxSizeCanBeChanged() {
+		IntKeyLRUCache<String> cache = new IntKeyLRUCache<>(2);
+		cache.put(1, "1");
+		cache.put(2, "2");
+		cache.setMaxSize(4);
+		cache.put(3, "3");
+		cache.put(4, "4");
+		assertEquals(Arrays.asList(1, 2, 3, 4), keys(cache));
+
+		cache.setMaxSize(1);
+		assertEquals(Arrays.asList(4), keys(cache));
+		cache.put(5, "5");
+		assertEquals(Arrays.asList(5), keys(cache));
+		cache.clear();
+		cache.put(6, "6");
+		assertEquals(Arrays.asList(6), keys(cache));
+	}
+
+	@Test
+	public void behavesAsAccessOrderedMap() {
+		int maxSize = 50;
+		LinkedHashMap<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+				return this.size() > maxSize;
+			}
+		};
+		IntKeyLRUCache<Integer> cache = new IntKeyLRUCache<>(maxSize);
+		Random random = new Random(1);
+		for (int i = 0; i < 100_000; i++) {
+			// Small key range, so the keys often collide and are removed again
+			int key = random.nextInt(120) - 60;
+			int op = random.nextInt(3);
+			if (op == 0) {
+				assertEquals(expected.put(key, i), cache.put(key, i));
+			} else if (op == 1) {
+				assertEquals(expected.get(key), cache.get(key));
+			} else {
+				assertEquals(expected.remove(key), cache.remove(key));
+			}
+		}
+		assertEquals(new ArrayList<>(expected.keySet()), keys(cache));
+	}
+}
@@ -0,0 +1,98 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class LRUStorageTest {
+
+	@Test
+	public void shrinkEvictsLeastRecentlyUsed() {
+		LRUStorage<Integer, Integer> s = new LRUStorage<>();
+		for (int i = 0; i < 10; i++) {
+			s.put(i, i);
+		}
+		s.access(0);
+		s.shrink(5);
+		assertEquals(5, s.size());
+		assertTrue(s.containsKey(0));
+		assertFalse(s.containsKey(1));
+		assertTrue(s.containsKey(9));
+	}
+
+	@Test
+	public void uncontendedShrinkIsExact() {
+		LRUStorage<Integer, Integer> s = new LRUStorage<>();
+		for (int i = 0; i < 10_000; i++) {
+			s.put(i, i);
+		}
+		s.shrink(10);
+		assertEquals(10, s.size());
+	}
+
+	@Test
+	public void contendedEvictionIsCapped() throws Exception {
+		LRUStorage<Integer, Integer> s = new LRUStorage<>();
+		for (int i = 0; i < 10_000; i++) {
+			s.put(i, i);
+		}
+		AtomicInteger evicted = new AtomicInteger();
+		s.setEvictionListener((k, v) -> {
+			if (evicted.getAndIncrement() == 0) {
+				// Another writer asks for eviction while this one is evicting
+				Thread other = new Thread(() -> s.shrink(10));
+				other.start();
+				try {
+					other.join();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		s.shrink(10);
+		assertTrue("evicted " + evicted.get(), evicted.get() < 10_000 - 10);
+		assertTrue(s.size() > 10);
+
+		// Next write finishes the eviction
+		s.setEvictionListener(null);
+		s.shrink(10);
+		assertEquals(10, s.size());
+	}
+
+	@Test
+	public void concurrentWritersStayBounded() throws Exception {
+		LRUStorage<Integer, Integer> s = new LRUStorage<>();
+		int threads = 8;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int base = t * 1_000_000;
+			Thread w = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < 50_000; i++) {
+					s.put(base + i, i);
+					s.shrink(1000);
+				}
+			});
+			w.start();
+			workers.add(w);
+		}
+		start.countDown();
+		for (Thread w : workers) {
+			w.join();
+		}
+		s.shrink(1000);
+		assertEquals(1000, s.size());
+	}
+}
@@ -0,0 +1,145 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongKeyLRUCacheTest {
+
+	private static List<Long> keys(LongKeyLRUCache<?> cache) {
+		List<Long> ret = new ArrayList<>();
+		cache.forEach((v, k) -> ret.add(k));
+		return ret;
+	}
+
+	@Test
+	public void putGetRemove() {
+		LongKeyLRUCache<String> cache = new LongKeyLRUCache<>(4);
+		assertNull(cache.put(1, "a"));
+		assertNull(cache.put(-1, "b"));
+		assertEquals("a", cache.put(1, "c"));
+		assertEquals("c", cache.get(1));
+		assertEquals("b", cache.get(-1));
+		assertNull(cache.get(2));
+		assertEquals(2, cache.size());
+
+		assertEquals("c", cache.remove(1));
+		assertNull(cache.remove(1));
+		assertFalse(cache.containsKey(1));
+		assertTrue(cache.containsKey(-1));
+	}
+
+	@Test
+	public void collidingKeysAreKeptApart() {
+		// Halves of the keys are xor-ed for the hash, so the keys have the same hash
+		long a = 5;
+		long b = a ^ 0x100000001L;
+		long c = a ^ 0x700000007L;
+		LongKeyLRUCache<String> cache = new LongKeyLRUCache<>(4);
+		cache.put(a, "a");
+		cache.put(b, "b");
+		cache.put(c, "c");
+		assertEquals("a", cache.get(a));
+		assertEquals("b", cache.get(b));
+		assertEquals("c", cache.get(c));
+
+		cache.remove(a);
+		assertNull(cache.get(a));
+		assertEquals("b", cache.get(b));
+		assertEquals("c", cache.get(c));
+		cache.put(a, "a2");
+		assertEquals("a2", cache.get(a));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		LongKeyLRUCache<String> cache = new LongKeyLRUCache<>(3);
+		cache.put(1, "1");
+		cache.put(2, "2");
+		cache.put(3, "3");
+		cache.get(1);
+		cache.put(4, "4");
+		assertEquals(Arrays.asList(3L, 1L, 4L), keys(cache));
+		assertFalse(cache.containsKey(2));
+
+		// Replacement is a use too
+		cache.put(3, "3");
+		cache.put(5, "5");
+		assertEquals(Arrays.asList(4L, 3L, 5L), keys(cache));
+	}
+
+	@Test
+	public void maxSizeCanBeChanged() {
+		LongKeyLRUCache<String> cache = new LongKeyLRUCache<>(4);
+		for (long key = 0; key < 4; key++) {
+			cache.put(key, Long.toString(key));
+		}
+		cache.setMaxSize(16);
+		assertEquals(16, cache.getMaxSize());
+		for (long key = 4; key < 20; key++) {
+			cache.put(key, Long.toString(key));
+		}
+		assertEquals(16, cache.size());
+		assertEquals(4L, (long) keys(cache).get(0));
+
+		cache.setMaxSize(2);
+		assertEquals(Arrays.asList(18L, 19L), keys(cache));
+		cache.put(20, "20");
+		assertEquals(Arrays.asList(19L, 20L), keys(cache));
+	}
+
+	@Test
+	public void clearedCacheIsReused() {
+		LongKeyLRUCache<String> cache = new LongKeyLRUCache<>(8);
+		for (long key = 0; key < 8; key++) {
+			cache.put(key, Long.toString(key));
+		}
+		cache.clear();
+		assertTrue(cache.isEmpty());
+		assertNull(cache.get(0));
+		for (long key = 100; key < 110; key++) {
+			cache.put(key, Long.toString(key));
+		}
+		assertEquals(8, cache.size());
+		assertEquals(102L, (long) keys(cache).get(0));
+	}
+
+	@Test
+	public void behavesAsAccessOrderedMap() {
+		int maxSize = 50;
+		LinkedHashMap<Long, Long> expected = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+				return this.size() > maxSize;
+			}
+		};
+		LongKeyLRUCache<Long> cache = new LongKeyLRUCache<>(maxSize);
+		Random random = new Random(1);
+		for (int i = 0; i < 100_000; i++) {
+			// Small key range, so the keys often collide and are removed again
+			long key = random.nextInt(120) - 60;
+			int op = random.nextInt(3);
+			if (op == 0) {
+				assertEquals(expected.put(key, (long) i), cache.put(key, (long) i));
+			} else if (op == 1) {
+				assertEquals(expected.get(key), cache.get(key));
+			} else {
+				assertEquals(expected.remove(key), cache.remove(key));
+			}
+		}
+		assertEquals(new ArrayList<>(expected.keySet()), keys(cache));
+	}
+}
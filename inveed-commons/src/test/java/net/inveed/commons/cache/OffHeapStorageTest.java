@@ -0,0 +1,105 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class OffHeapStorageTest {
+
+	private static byte[] value(int length, int seed) {
+		byte[] ret = new byte[length];
+		for (int i = 0; i < length; i++) {
+			ret[i] = (byte) (i * 31 + seed);
+		}
+		return ret;
+	}
+
+	@Test
+	public void storesValuesLongerThanBlock() {
+		OffHeapStorage<Integer> s = new OffHeapStorage<>(64 * 1024, 16 * 1024, 64);
+		s.put(1, value(1000, 1));
+		s.put(2, value(0, 2));
+		assertArrayEquals(value(1000, 1), s.get(1));
+		assertArrayEquals(value(0, 2), s.get(2));
+		assertEquals(1000, s.weight());
+	}
+
+	@Test
+	public void evictsToFitNewValues() {
+		OffHeapStorage<Integer> s = new OffHeapStorage<>(64 * 1024, 16 * 1024, 64);
+		for (int i = 0; i < 1000; i++) {
+			s.put(i, value(1000, i));
+		}
+		assertTrue(s.size() < 1000);
+		assertArrayEquals(value(1000, 999), s.get(999));
+		assertNull(s.get(0));
+	}
+
+	@Test
+	public void oversizedValueIsRejectedWithoutEviction() {
+		OffHeapStorage<Integer> s = new OffHeapStorage<>(64 * 1024, 16 * 1024, 64);
+		for (int i = 0; i < 10; i++) {
+			s.put(i, value(1000, i));
+		}
+		try {
+			s.put(100, value(70 * 1024, 0));
+			fail("oversized value was stored");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(10, s.size());
+		assertArrayEquals(value(1000, 0), s.get(0));
+	}
+
+	@Test
+	public void evictedValuesAreCopiedOnlyIfRequired() {
+		OffHeapStorage<Integer> s = new OffHeapStorage<>(64 * 1024, 16 * 1024, 64);
+		List<byte[]> values = new ArrayList<>();
+		s.setEvictionListener((k, v) -> values.add(v), false);
+		for (int i = 0; i < 100; i++) {
+			s.put(i, value(1000, i));
+		}
+		assertFalse(values.isEmpty());
+		for (byte[] v : values) {
+			assertNull(v);
+		}
+
+		values.clear();
+		s.setEvictionListener((k, v) -> values.add(v), true);
+		s.put(1000, value(1000, 0));
+		assertFalse(values.isEmpty());
+		for (byte[] v : values) {
+			assertEquals(1000, v.length);
+		}
+	}
+
+	@Test
+	public void cacheReadsEvictedValuesForRemovalListeners() {
+		Cache<Integer, byte[]> cache = new Cache<>(new OffHeapStorage<Integer>(64 * 1024, 16 * 1024, 64));
+		cache.setRecordStats(true);
+		for (int i = 0; i < 100; i++) {
+			cache.put(i, value(1000, i));
+		}
+		long evictions = cache.getStats().getEvictionCount();
+		assertTrue(evictions > 0);
+
+		List<Integer> evicted = new ArrayList<>();
+		cache.addRemovalListener((k, v, c) -> {
+			assertEquals(RemovalCause.SIZE, c);
+			assertArrayEquals(value(1000, k), v);
+			evicted.add(k);
+		});
+		for (int i = 100; i < 200; i++) {
+			cache.put(i, value(1000, i));
+		}
+		assertEquals(cache.getStats().getEvictionCount() - evictions, evicted.size());
+	}
+}
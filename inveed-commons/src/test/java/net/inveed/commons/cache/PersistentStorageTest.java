@@ -0,0 +1,138 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PersistentStorageTest {
+	private static final int REGION_SIZE = 4096;
+	// File header and header of the record with one-byte key and value
+	private static final int FIRST_RECORD = 12;
+	private static final int SHORT_RECORD = 17 + 2;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private PersistentStorage<String, String> open(File file) throws Exception {
+		return new PersistentStorage<>(file, ISerializer.STRING, ISerializer.STRING, REGION_SIZE);
+	}
+
+	@Test
+	public void entriesSurviveReopen() throws Exception {
+		File file = folder.newFile();
+		try (PersistentStorage<String, String> s = open(file)) {
+			s.put("a", "1");
+			s.put("b", "2");
+			s.put("a", "3");
+			s.remove("b");
+		}
+		try (PersistentStorage<String, String> s = open(file)) {
+			assertEquals("3", s.get("a"));
+			assertNull(s.get("b"));
+			assertEquals(1, s.size());
+		}
+	}
+
+	@Test
+	public void recordsAfterTornRecordAreNotRevived() throws Exception {
+		File file = folder.newFile();
+		try (PersistentStorage<String, String> s = open(file)) {
+			s.put("a", "1");
+			s.put("b", "2");
+			s.put("c", "3");
+		}
+		// The second record is torn: its type wasn't written, while the third one reached the disk
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(FIRST_RECORD + SHORT_RECORD);
+			raf.write(0);
+		}
+		try (PersistentStorage<String, String> s = open(file)) {
+			assertEquals("1", s.get("a"));
+			assertNull(s.get("c"));
+			// Takes the place of the torn record exactly, the third one would follow it
+			s.put("d", "4");
+		}
+		try (PersistentStorage<String, String> s = open(file)) {
+			assertEquals("4", s.get("d"));
+			assertNull(s.get("c"));
+			assertEquals(2, s.size());
+		}
+	}
+
+	@Test
+	public void corruptedTailIsTruncated() throws Exception {
+		File file = folder.newFile();
+		try (PersistentStorage<String, String> s = open(file)) {
+			s.put("a", "1");
+			s.put("b", "2");
+			s.put("c", "3");
+		}
+		// Value of the second record doesn't match its checksum
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(FIRST_RECORD + SHORT_RECORD * 2 - 1);
+			raf.write('x');
+		}
+		try (PersistentStorage<String, String> s = open(file)) {
+			assertEquals(1, s.size());
+			s.put("e", "5");
+		}
+		try (PersistentStorage<String, String> s = open(file)) {
+			assertEquals("1", s.get("a"));
+			assertEquals("5", s.get("e"));
+			assertFalse(s.containsKey("b"));
+			assertFalse(s.containsKey("c"));
+		}
+	}
+
+	@Test
+	public void putAllAppendsEveryEntry() throws Exception {
+		File file = folder.newFile();
+		Map<String, String> m = new LinkedHashMap<>();
+		for (int i = 0; i < 500; i++) {
+			m.put("k" + i, "v" + i);
+		}
+		try (PersistentStorage<String, String> s = open(file)) {
+			s.put("k0", "old");
+			s.putAll(m);
+			assertEquals(500, s.size());
+			assertEquals("v0", s.get("k0"));
+		}
+		try (PersistentStorage<String, String> s = open(file)) {
+			assertEquals(500, s.size());
+			for (int i = 0; i < 500; i++) {
+				assertEquals("v" + i, s.get("k" + i));
+			}
+		}
+	}
+
+	@Test
+	public void readsSeeCompactedLog() throws Exception {
+		File file = folder.newFile();
+		try (PersistentStorage<String, String> s = open(file)) {
+			for (int round = 0; round < 50; round++) {
+				for (int i = 0; i < 100; i++) {
+					s.put("k" + i, "v" + round + "-" + i);
+				}
+			}
+			s.compact();
+			for (int i = 0; i < 100; i++) {
+				assertEquals("v49-" + i, s.get("k" + i));
+				assertEquals("v49-" + i, s.access("k" + i));
+			}
+			s.remove("k0");
+		}
+		try (PersistentStorage<String, String> s = open(file)) {
+			assertEquals(99, s.size());
+			assertEquals("v49-1", s.get("k1"));
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RemovalListenerTest {
+	// Records notifications as "cause key=value"
+	private static final class Recorder implements IRemovalListener<Integer, String> {
+		final List<String> events = Collections.synchronizedList(new ArrayList<>());
+		volatile Thread thread;
+
+		@Override
+		public void onRemoval(Integer key, String value, RemovalCause cause) {
+			this.thread = Thread.currentThread();
+			this.events.add(cause + " " + key + "=" + value);
+		}
+	}
+
+	@Test
+	public void listenerGetsCauseKeyAndValue() {
+		Cache<Integer, String> cache = new Cache<>();
+		Recorder r = new Recorder();
+		cache.addRemovalListener(r);
+		cache.setMaxSize(2);
+		cache.put(1, "a");
+		cache.put(2, "b");
+		cache.put(3, "c");
+		cache.put(2, "b2");
+		cache.remove(2);
+		cache.remove(2);
+		cache.invalidateAll(Arrays.asList(3, 4));
+		assertEquals(Arrays.asList("SIZE 1=a", "REPLACED 2=b", "EXPLICIT 2=b2", "EXPLICIT 3=c"), r.events);
+		assertSame(Thread.currentThread(), r.thread);
+	}
+
+	@Test
+	public void expiredEntryIsReported() throws Exception {
+		Cache<Integer, String> cache = new Cache<>();
+		Recorder r = new Recorder();
+		cache.addRemovalListener(r);
+		cache.setExpireAfterWrite(50, TimeUnit.MILLISECONDS);
+		cache.put(1, "a");
+		Thread.sleep(100);
+		assertNull(cache.get(1));
+		assertEquals(Arrays.asList("EXPIRED 1=a"), r.events);
+		assertTrue(RemovalCause.EXPIRED.wasEvicted());
+	}
+
+	@Test
+	public void clearReportsEveryEntry() {
+		Cache<Integer, String> cache = new Cache<>();
+		Recorder r = new Recorder();
+		cache.addRemovalListener(r);
+		cache.put(1, "a");
+		cache.put(2, "b");
+		cache.clear();
+		List<String> events = new ArrayList<>(r.events);
+		Collections.sort(events);
+		assertEquals(Arrays.asList("EXPLICIT 1=a", "EXPLICIT 2=b"), events);
+	}
+
+	@Test
+	public void asyncListenerIsCalledByExecutor() throws Exception {
+		Cache<Integer, String> cache = new Cache<>();
+		ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		Recorder r = new Recorder();
+		cache.addRemovalListener(r, tasks::add);
+		cache.put(1, "a");
+		cache.put(1, "b");
+		cache.remove(1);
+		assertTrue(r.events.isEmpty());
+		assertEquals(2, tasks.size());
+
+		Thread runner = new Thread(() -> {
+			Runnable t;
+			while ((t = tasks.poll()) != null) {
+				t.run();
+			}
+		});
+		runner.start();
+		runner.join();
+		assertEquals(Arrays.asList("REPLACED 1=a", "EXPLICIT 1=b"), r.events);
+		assertSame(runner, r.thread);
+	}
+
+	@Test
+	public void failingListenerDoesNotBreakOthers() {
+		Cache<Integer, String> cache = new Cache<>();
+		cache.addRemovalListener((k, v, c) -> {
+			throw new IllegalStateException("test");
+		});
+		Recorder r = new Recorder();
+		cache.addRemovalListener(r);
+		cache.put(1, "a");
+		cache.remove(1);
+		assertEquals(Arrays.asList("EXPLICIT 1=a"), r.events);
+	}
+}
@@ -0,0 +1,120 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class StripedLRUStorageTest {
+
+	@Test
+	public void shrinkKeepsExactSize() {
+		StripedLRUStorage<Integer, Integer> s = new StripedLRUStorage<>(8);
+		for (int i = 0; i < 1000; i++) {
+			s.put(i, i);
+		}
+		s.shrink(13);
+		assertTrue("size " + s.size(), s.size() <= 13);
+	}
+
+	@Test
+	public void shrinkBelowSegmentsCount() {
+		StripedLRUStorage<Integer, Integer> s = new StripedLRUStorage<>(16);
+		for (int i = 0; i < 100; i++) {
+			s.put(i, i);
+		}
+		s.shrink(3);
+		assertEquals(3, s.size());
+
+		// Every key can still be cached
+		for (int i = 100; i < 200; i++) {
+			s.put(i, i);
+			s.shrink(3);
+			assertTrue(s.containsKey(i) || s.size() == 3);
+			assertTrue(s.size() <= 3);
+		}
+	}
+
+	@Test
+	public void segmentsCountIsLimitedBySize() {
+		assertEquals(4, new StripedLRUStorage<Integer, Integer>(64, 5).getSegmentsCount());
+		assertEquals(1, new StripedLRUStorage<Integer, Integer>(64, 1).getSegmentsCount());
+		assertEquals(8, new StripedLRUStorage<Integer, Integer>(8, 1000).getSegmentsCount());
+	}
+
+	@Test
+	public void shrinkWeightKeepsExactWeight() {
+		StripedLRUStorage<Integer, Integer> s = new StripedLRUStorage<>(8);
+		s.setWeigher((k, v) -> 3);
+		for (int i = 0; i < 1000; i++) {
+			s.put(i, i);
+		}
+		s.shrinkWeight(100);
+		assertTrue("weight " + s.weight(), s.weight() <= 100);
+		s.shrinkWeight(5);
+		assertTrue("weight " + s.weight(), s.weight() <= 5);
+		assertEquals(s.size() * 3, s.weight());
+	}
+
+	@Test
+	public void concurrentPutsStayBounded() throws Exception {
+		Cache<Integer, Integer> cache = new Cache<>(new StripedLRUStorage<>(4));
+		cache.setMaxSize(100);
+		int threads = 8;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int base = t * 100_000;
+			Thread w = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < 20_000; i++) {
+					cache.put(base + i, i);
+				}
+			});
+			w.start();
+			workers.add(w);
+		}
+		start.countDown();
+		for (Thread w : workers) {
+			w.join();
+		}
+		cache.put(-1, -1);
+		assertTrue("size " + cache.size(), cache.size() <= 100);
+	}
+
+	@Test
+	public void keysInAccessOrderMergesSegments() {
+		StripedLRUStorage<Integer, Integer> s = new StripedLRUStorage<>(8);
+		for (int i = 0; i < 10_000; i++) {
+			s.put(i, i);
+		}
+		List<Integer> keys = s.keysInAccessOrder();
+		assertEquals(10_000, keys.size());
+		boolean[] seen = new boolean[10_000];
+		for (int p = 0; p < keys.size(); p++) {
+			int key = keys.get(p);
+			assertFalse("duplicate " + key, seen[key]);
+			seen[key] = true;
+			// Keys were put in their order, the merge is approximate
+			assertTrue("key " + key + " at " + p, Math.abs(p - key) < 100);
+		}
+
+		// Most segments are empty
+		s.clear();
+		s.put(1, 1);
+		s.put(2, 2);
+		keys = s.keysInAccessOrder();
+		assertEquals(2, keys.size());
+		assertTrue(keys.containsAll(Arrays.asList(1, 2)));
+	}
+}
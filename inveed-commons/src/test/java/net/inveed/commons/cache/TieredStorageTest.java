@@ -0,0 +1,166 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TieredStorageTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// Tier which is changed by another client while a value is read
+	private static final class RacingTier implements ISharedCacheTier<String, String> {
+		final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+		volatile long sequence;
+		volatile String concurrentValue;
+
+		@Override
+		public String get(String key) {
+			String ret = this.values.get(key);
+			String v = this.concurrentValue;
+			if (v != null) {
+				this.values.put(key, v);
+				this.sequence++;
+			}
+			return ret;
+		}
+
+		@Override
+		public void put(String key, String value) {
+			this.values.put(key, value);
+			this.sequence++;
+		}
+
+		@Override
+		public void remove(String key) {
+			this.values.remove(key);
+			this.sequence++;
+		}
+
+		@Override
+		public void clear() {
+			this.values.clear();
+			this.sequence++;
+		}
+
+		@Override
+		public long getInvalidationSequence() {
+			return this.sequence;
+		}
+
+		@Override
+		public boolean pollInvalidations(Consumer<? super String> listener) {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	@Test
+	public void valueChangedWhileReadIsNotCopied() {
+		RacingTier tier = new RacingTier();
+		TieredStorage<String, String> s = new TieredStorage<>(tier);
+		tier.values.put("k", "old");
+		tier.concurrentValue = "new";
+		assertEquals("old", s.get("k"));
+		assertEquals(0, s.size());
+
+		tier.concurrentValue = null;
+		assertEquals("new", s.get("k"));
+		assertEquals(1, s.size());
+	}
+
+	private SharedMemoryTier<String, String> tier(File file) throws Exception {
+		return new SharedMemoryTier<>(file, ISerializer.STRING, ISerializer.STRING, 64, 256, 64);
+	}
+
+	@Test
+	public void changesOfOtherClientsInvalidateCopies() throws Exception {
+		File file = folder.newFile();
+		file.delete();
+		try (SharedMemoryTier<String, String> ta = tier(file); SharedMemoryTier<String, String> tb = tier(file)) {
+			TieredStorage<String, String> a = new TieredStorage<>(ta);
+			TieredStorage<String, String> b = new TieredStorage<>(tb);
+			a.put("k", "1");
+			assertEquals("1", b.get("k"));
+			assertTrue(b.keySet().contains("k"));
+			a.put("k", "2");
+			assertEquals("2", b.get("k"));
+			a.remove("k");
+			assertNull(b.get("k"));
+		}
+	}
+
+	@Test
+	public void clearKeepsSharedTier() throws Exception {
+		File file = folder.newFile();
+		file.delete();
+		try (SharedMemoryTier<String, String> ta = tier(file); SharedMemoryTier<String, String> tb = tier(file)) {
+			TieredStorage<String, String> a = new TieredStorage<>(ta);
+			TieredStorage<String, String> b = new TieredStorage<>(tb);
+			a.put("k", "1");
+			b.clear();
+			assertEquals("1", a.get("k"));
+			assertEquals("1", b.get("k"));
+
+			b.clearSharedTier();
+			assertNull(a.get("k"));
+			assertFalse(a.containsKey("k"));
+		}
+	}
+
+	@Test
+	public void readersDontOverwriteNewValues() throws Exception {
+		TieredStorage<String, String> s = new TieredStorage<>(new RacingTier());
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			threads.add(new Thread(() -> {
+				while (!stop.get()) {
+					s.get("k");
+				}
+			}));
+		}
+		// Single writer, so its values are the latest ones
+		threads.add(new Thread(() -> {
+			try {
+				for (int i = 0; i < 100000; i++) {
+					String v = Integer.toString(i);
+					// Removed, so the readers miss L1 and copy values from L2
+					s.remove("k");
+					s.put("k", v);
+					assertEquals(v, s.get("k"));
+				}
+			} catch (Throwable e) {
+				failure.set(e);
+			} finally {
+				stop.set(true);
+			}
+		}));
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
+}
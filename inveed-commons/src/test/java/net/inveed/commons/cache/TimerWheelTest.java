@@ -0,0 +1,134 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimerWheelTest {
+	private static final long START = 1_000_000_000_000L;
+
+	private static TimerWheel.Node<Integer> node(int key, long time) {
+		TimerWheel.Node<Integer> ret = new TimerWheel.Node<>(key);
+		ret.time = time;
+		return ret;
+	}
+
+	private static Set<Integer> advance(TimerWheel<Integer> wheel, long now) {
+		Set<Integer> ret = new HashSet<>();
+		wheel.advance(now, (n) -> {
+			if (n.time - now > 0) {
+				return false;
+			}
+			ret.add(n.key);
+			return true;
+		});
+		return ret;
+	}
+
+	@Test
+	public void firesEveryTimerOnceWhenDue() {
+		TimerWheel<Integer> wheel = new TimerWheel<>(START);
+		long[] delays = {
+				TimeUnit.MILLISECONDS.toNanos(10),
+				TimeUnit.SECONDS.toNanos(5),
+				TimeUnit.MINUTES.toNanos(3),
+				TimeUnit.HOURS.toNanos(2),
+				TimeUnit.DAYS.toNanos(4),
+				TimeUnit.DAYS.toNanos(400) };
+		List<TimerWheel.Node<Integer>> nodes = new ArrayList<>();
+		for (int i = 0; i < delays.length; i++) {
+			TimerWheel.Node<Integer> n = node(i, START + delays[i]);
+			wheel.schedule(n);
+			nodes.add(n);
+		}
+
+		Set<Integer> fired = new HashSet<>();
+		long step = TimeUnit.SECONDS.toNanos(1);
+		long now = START;
+		while (fired.size() < delays.length) {
+			now += step;
+			for (int key : advance(wheel, now)) {
+				assertTrue("fired twice: " + key, fired.add(key));
+				long late = now - (START + delays[key]);
+				assertTrue("fired early: " + key, late >= 0);
+				assertTrue("fired late: " + key + ", " + late, late <= 3 * step);
+			}
+			if (now - START > TimeUnit.DAYS.toNanos(401)) {
+				break;
+			}
+			// Skip idle time faster
+			if (now - START > TimeUnit.MINUTES.toNanos(10)) {
+				step = TimeUnit.SECONDS.toNanos(30);
+			}
+		}
+		assertEquals(delays.length, fired.size());
+		for (TimerWheel.Node<Integer> n : nodes) {
+			assertFalse(n.isScheduled());
+		}
+	}
+
+	@Test
+	public void firesAfterLongIdle() {
+		TimerWheel<Integer> wheel = new TimerWheel<>(START);
+		for (int i = 0; i < 100; i++) {
+			wheel.schedule(node(i, START + TimeUnit.SECONDS.toNanos(i * 37)));
+		}
+		assertEquals(100, advance(wheel, START + TimeUnit.HOURS.toNanos(2)).size());
+	}
+
+	@Test
+	public void descheduledTimerDoesNotFire() {
+		TimerWheel<Integer> wheel = new TimerWheel<>(START);
+		TimerWheel.Node<Integer> a = node(1, START + TimeUnit.SECONDS.toNanos(3));
+		TimerWheel.Node<Integer> b = node(2, START + TimeUnit.SECONDS.toNanos(3));
+		wheel.schedule(a);
+		wheel.schedule(b);
+		wheel.deschedule(a);
+		assertFalse(a.isScheduled());
+		Set<Integer> fired = advance(wheel, START + TimeUnit.SECONDS.toNanos(10));
+		assertEquals(1, fired.size());
+		assertTrue(fired.contains(2));
+	}
+
+	@Test
+	public void rescheduledTimerFiresAtNewTime() {
+		TimerWheel<Integer> wheel = new TimerWheel<>(START);
+		TimerWheel.Node<Integer> a = node(1, START + TimeUnit.SECONDS.toNanos(3));
+		wheel.schedule(a);
+		a.time = START + TimeUnit.MINUTES.toNanos(5);
+		wheel.schedule(a);
+		assertTrue(advance(wheel, START + TimeUnit.MINUTES.toNanos(4)).isEmpty());
+		assertTrue(a.isScheduled());
+		assertTrue(advance(wheel, START + TimeUnit.MINUTES.toNanos(6)).contains(1));
+	}
+
+	@Test
+	public void clearUnschedulesAll() {
+		TimerWheel<Integer> wheel = new TimerWheel<>(START);
+		TimerWheel.Node<Integer> a = node(1, START + TimeUnit.SECONDS.toNanos(3));
+		TimerWheel.Node<Integer> b = node(2, START + TimeUnit.DAYS.toNanos(300));
+		wheel.schedule(a);
+		wheel.schedule(b);
+		wheel.clear();
+		assertFalse(a.isScheduled());
+		assertFalse(b.isScheduled());
+		assertTrue(advance(wheel, START + TimeUnit.DAYS.toNanos(301)).isEmpty());
+	}
+
+	@Test
+	public void worksAcrossNegativeTime() {
+		long start = -TimeUnit.SECONDS.toNanos(100);
+		TimerWheel<Integer> wheel = new TimerWheel<>(start);
+		wheel.schedule(node(1, start + TimeUnit.SECONDS.toNanos(150)));
+		assertTrue(advance(wheel, start + TimeUnit.SECONDS.toNanos(90)).isEmpty());
+		assertTrue(advance(wheel, start + TimeUnit.SECONDS.toNanos(155)).contains(1));
+	}
+}
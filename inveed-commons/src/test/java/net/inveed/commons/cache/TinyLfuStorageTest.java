@@ -0,0 +1,82 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TinyLfuStorageTest {
+
+	// Puts the entry and evicts as Cache does
+	private static void put(TinyLfuStorage<Integer, Integer> s, int key, int maxSize) {
+		s.put(key, key);
+		s.shrink(maxSize);
+	}
+
+	@Test
+	public void scanDoesNotEvictHotEntries() {
+		TinyLfuStorage<Integer, Integer> s = new TinyLfuStorage<>();
+		for (int key = 0; key < 50; key++) {
+			put(s, key, 100);
+		}
+		for (int round = 0; round < 5; round++) {
+			for (int key = 0; key < 50; key++) {
+				s.access(key);
+			}
+		}
+
+		// One-off keys, many times the capacity. Hot keys are still used, but each of them
+		// less often than once per 100 puts, so LRU would evict them.
+		for (int key = 1000; key < 7000; key++) {
+			put(s, key, 100);
+			assertTrue("size " + s.size(), s.size() <= 100);
+			if (key % 3 == 0) {
+				s.access((key / 3) % 50);
+			}
+		}
+		for (int key = 0; key < 50; key++) {
+			assertTrue("key " + key, s.containsKey(key));
+		}
+	}
+
+	@Test
+	public void sizeStaysWithinCapacity() {
+		TinyLfuStorage<Integer, Integer> s = new TinyLfuStorage<>();
+		AtomicInteger evicted = new AtomicInteger();
+		s.setEvictionListener((k, v) -> evicted.incrementAndGet());
+		Random random = new Random(1);
+		int puts = 0;
+		for (int i = 0; i < 20_000; i++) {
+			int key = random.nextInt(1000);
+			if (random.nextBoolean()) {
+				s.access(key);
+			} else if (!s.containsKey(key)) {
+				put(s, key, 64);
+				puts++;
+				assertTrue("size " + s.size(), s.size() <= 64);
+			}
+		}
+		assertEquals(64, s.size());
+		assertEquals(s.size(), s.keysInAccessOrder().size());
+		assertEquals(puts, s.size() + evicted.get());
+	}
+
+	@Test
+	public void weightStaysWithinLimit() {
+		TinyLfuStorage<Integer, Integer> s = new TinyLfuStorage<>();
+		s.setWeigher((k, v) -> 1 + (k & 3));
+		for (int key = 0; key < 1000; key++) {
+			s.put(key, key);
+			s.shrinkWeight(100);
+			assertTrue("weight " + s.weight(), s.weight() <= 100);
+		}
+		long weight = 0;
+		for (Integer key : s.keySet()) {
+			weight += 1 + (key & 3);
+		}
+		assertEquals(weight, s.weight());
+	}
+}
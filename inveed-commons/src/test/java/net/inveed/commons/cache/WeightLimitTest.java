@@ -0,0 +1,67 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WeightLimitTest {
+
+	private static void checkWeightLimit(ICacheStorage<Integer, String> storage) {
+		Cache<Integer, String> cache = new Cache<>(storage);
+		cache.setWeigher((k, v) -> v.length());
+		for (int i = 0; i < 100; i++) {
+			cache.put(i, "0123456789");
+		}
+		assertEquals(1000, cache.getWeight());
+
+		cache.setMaxWeight(255);
+		assertTrue("weight " + cache.getWeight(), cache.getWeight() <= 255);
+		assertEquals(cache.size() * 10, cache.getWeight());
+
+		for (int i = 100; i < 200; i++) {
+			cache.put(i, i % 2 == 0 ? "01234" : "0123456789012345");
+			assertTrue("weight " + cache.getWeight(), cache.getWeight() <= 255);
+		}
+
+		cache.remove(199);
+		cache.clear();
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void tinyLfuKeepsWeightLimit() {
+		checkWeightLimit(new TinyLfuStorage<>());
+	}
+
+	@Test
+	public void arrayLruKeepsWeightLimit() {
+		checkWeightLimit(new ArrayLRUStorage<>());
+	}
+
+	@Test
+	public void lruKeepsWeightLimit() {
+		checkWeightLimit(new LRUStorage<>());
+	}
+
+	@Test
+	public void arrayLruEvictsLeastRecentlyUsed() {
+		Cache<Integer, String> cache = new Cache<>(new ArrayLRUStorage<>());
+		cache.setWeigher((k, v) -> v.length());
+		cache.setMaxWeight(30);
+		cache.put(1, "0123456789");
+		cache.put(2, "0123456789");
+		cache.put(3, "0123456789");
+		cache.get(1);
+		cache.put(4, "0123456789");
+		assertTrue(cache.containsKey(1));
+		assertFalse(cache.containsKey(2));
+		assertEquals(30, cache.getWeight());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidWeightIsRejected() {
+		new Cache<Integer, String>(new TinyLfuStorage<>()).setMaxWeight(0);
+	}
+}
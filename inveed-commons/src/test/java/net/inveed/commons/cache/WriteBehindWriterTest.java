@@ -0,0 +1,159 @@
+package net.inveed.commons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class WriteBehindWriterTest {
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+	private static final class Store implements ICacheWriter<Integer, String> {
+		final Map<Integer, String> values = new ConcurrentHashMap<>();
+		final Map<Integer, Boolean> nulls = new ConcurrentHashMap<>();
+		final AtomicInteger batches = new AtomicInteger();
+		volatile boolean failing;
+
+		@Override
+		public void write(Integer key, String value) {
+			if (this.failing) {
+				throw new IllegalStateException("store is down");
+			}
+			if (value == null) {
+				this.nulls.put(key, true);
+				this.values.remove(key);
+			} else {
+				this.values.put(key, value);
+			}
+		}
+
+		@Override
+		public void writeAll(Map<? extends Integer, ? extends String> entries) {
+			this.batches.incrementAndGet();
+			ICacheWriter.super.writeAll(entries);
+		}
+
+		@Override
+		public void delete(Integer key) {
+			this.values.remove(key);
+		}
+	}
+
+	@After
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void flushWritesLastChanges() {
+		Store store = new Store();
+		try (WriteBehindWriter<Integer, String> w = new WriteBehindWriter<>(store, this.executor, 100, 1, TimeUnit.HOURS)) {
+			w.write(1, "a");
+			w.write(1, "b");
+			w.write(2, "c");
+			w.delete(2);
+			assertEquals(2, w.getPendingCount());
+			assertTrue(store.values.isEmpty());
+			w.flush();
+			assertEquals(0, w.getPendingCount());
+			assertEquals("b", store.values.get(1));
+			assertFalse(store.values.containsKey(2));
+		}
+	}
+
+	@Test
+	public void nullValuesAreWritten() {
+		Store store = new Store();
+		try (WriteBehindWriter<Integer, String> w = new WriteBehindWriter<>(store, this.executor, 100, 1, TimeUnit.HOURS)) {
+			store.values.put(1, "old");
+			w.write(1, null);
+			w.flush();
+			assertNull(store.values.get(1));
+			assertTrue(store.nulls.containsKey(1));
+		}
+	}
+
+	@Test
+	public void failedChangesAreRetried() {
+		Store store = new Store();
+		try (WriteBehindWriter<Integer, String> w = new WriteBehindWriter<>(store, this.executor, 100, 1, TimeUnit.HOURS)) {
+			w.write(1, "a");
+			w.write(2, null);
+			store.failing = true;
+			try {
+				w.flush();
+				fail("store failure was hidden");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			assertEquals(2, w.getPendingCount());
+			store.failing = false;
+			w.flush();
+			assertEquals("a", store.values.get(1));
+			assertTrue(store.nulls.containsKey(2));
+		}
+	}
+
+	@Test
+	public void flushIsBatched() {
+		Store store = new Store();
+		try (WriteBehindWriter<Integer, String> w = new WriteBehindWriter<>(store, this.executor, 10, 1, TimeUnit.HOURS)) {
+			// Full batches are flushed in background, stop it to count batches
+			this.executor.shutdownNow();
+			for (int i = 0; i < 35; i++) {
+				w.write(i, "v" + i);
+			}
+			w.flush();
+			assertEquals(4, store.batches.get());
+			assertEquals(35, store.values.size());
+		}
+	}
+
+	@Test
+	public void flushEndsWhileWritersContinue() throws Exception {
+		Store store = new Store();
+		try (WriteBehindWriter<Integer, String> w = new WriteBehindWriter<>(store, this.executor, 1_000_000, 1, TimeUnit.HOURS)) {
+			AtomicBoolean stop = new AtomicBoolean();
+			Thread writer = new Thread(() -> {
+				int i = 0;
+				while (!stop.get()) {
+					w.write(i++ & 0xFFFF, "v");
+				}
+			});
+			writer.start();
+			try {
+				Thread.sleep(50);
+				// Would never end if it flushed until the queue is empty
+				w.flush();
+			} finally {
+				stop.set(true);
+				writer.join();
+			}
+			assertFalse(store.values.isEmpty());
+		}
+	}
+
+	@Test
+	public void periodicFlush() throws Exception {
+		Store store = new Store();
+		try (WriteBehindWriter<Integer, String> w = new WriteBehindWriter<>(store, this.executor, 100, 20, TimeUnit.MILLISECONDS)) {
+			w.write(1, "a");
+			for (int i = 0; i < 100 && !store.values.containsKey(1); i++) {
+				Thread.sleep(10);
+			}
+			assertEquals("a", store.values.get(1));
+		}
+	}
+}
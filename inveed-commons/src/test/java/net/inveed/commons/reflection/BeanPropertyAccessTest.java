@@ -0,0 +1,108 @@
+package net.inveed.commons.reflection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+public class BeanPropertyAccessTest {
+	public static class FailingError extends Error {
+		private static final long serialVersionUID = 1L;
+	}
+
+	public static class Bean {
+		private String name;
+		private Object failure;
+
+		public String getName() {
+			return this.name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public int getBroken() {
+			if (this.failure instanceof Error) {
+				throw (Error) this.failure;
+			}
+			throw (RuntimeException) this.failure;
+		}
+
+		public void setBroken(int value) {
+			this.getBroken();
+		}
+
+		public Object getFailure() {
+			return this.failure;
+		}
+
+		public void setFailure(Object failure) {
+			this.failure = failure;
+		}
+	}
+
+	private static BeanPropertyDesc property(String name) {
+		return ((BeanTypeDesc<?>) JavaTypeRegistry.getType(Bean.class)).getProperty(name);
+	}
+
+	@Test
+	public void valueRoundTrip() throws Exception {
+		Bean bean = new Bean();
+		assertTrue(property("name").setValue(bean, "test"));
+		assertEquals("test", property("name").getValue(bean));
+	}
+
+	@Test
+	public void errorIsNotWrapped() throws Exception {
+		Bean bean = new Bean();
+		FailingError error = new FailingError();
+		bean.setFailure(error);
+		try {
+			property("broken").getValue(bean);
+			fail();
+		} catch (FailingError e) {
+			assertSame(error, e);
+		}
+		try {
+			property("broken").getInt(bean);
+			fail();
+		} catch (FailingError e) {
+			assertSame(error, e);
+		}
+		try {
+			property("broken").setValue(bean, 1);
+			fail();
+		} catch (FailingError e) {
+			assertSame(error, e);
+		}
+	}
+
+	@Test
+	public void exceptionOfAccessorIsWrapped() throws Exception {
+		Bean bean = new Bean();
+		ClassCastException thrown = new ClassCastException();
+		bean.setFailure(thrown);
+		try {
+			property("broken").getValue(bean);
+			fail();
+		} catch (InvocationTargetException e) {
+			assertSame(thrown, e.getCause());
+		}
+		try {
+			property("broken").setInt(bean, 1);
+			fail();
+		} catch (InvocationTargetException e) {
+			assertSame(thrown, e.getCause());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void incompatibleValueIsRejected() throws Exception {
+		property("name").setValue(new Bean(), 1);
+	}
+}
@@ -0,0 +1,208 @@
+package net.inveed.commons.reflection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import net.inveed.commons.reflection.ext.IBeanTypeExtension;
+
+public class JavaTypeRegistryTest {
+	// Counts instances per type, valid only for the types of this test
+	public static class CountingExtension<T> implements IBeanTypeExtension<T> {
+		static final ConcurrentHashMap<Class<?>, AtomicInteger> created = new ConcurrentHashMap<>();
+		static final ConcurrentHashMap<Class<?>, AtomicInteger> initialized = new ConcurrentHashMap<>();
+
+		private final BeanTypeDesc<T> type;
+
+		public CountingExtension(BeanTypeDesc<T> type) {
+			this.type = type;
+			if (this.isValid()) {
+				created.computeIfAbsent(type.getType(), k -> new AtomicInteger()).incrementAndGet();
+				// Looking up own type from the constructor
+				assertSame(type, JavaTypeRegistry.getType(type.getType()));
+			}
+		}
+
+		@Override
+		public boolean isValid() {
+			return this.type.getType().getEnclosingClass() == JavaTypeRegistryTest.class;
+		}
+
+		@Override
+		public BeanTypeDesc<T> getBeanType() {
+			return this.type;
+		}
+
+		@Override
+		public void initialize() {
+			initialized.computeIfAbsent(this.type.getType(), k -> new AtomicInteger()).incrementAndGet();
+		}
+	}
+
+	// Registered after the types are initialized
+	public static class LateExtension<T> implements IBeanTypeExtension<T> {
+		private final BeanTypeDesc<T> type;
+		volatile boolean initialized;
+
+		public LateExtension(BeanTypeDesc<T> type) {
+			this.type = type;
+		}
+
+		@Override
+		public boolean isValid() {
+			return this.type.getType() == Late.class;
+		}
+
+		@Override
+		public BeanTypeDesc<T> getBeanType() {
+			return this.type;
+		}
+
+		@Override
+		public void initialize() {
+			this.initialized = true;
+		}
+	}
+
+	// Constructors of extensions of Left and Right look up each other's type
+	public static class MutualExtension<T> implements IBeanTypeExtension<T> {
+		// Both constructors run at once
+		static final CyclicBarrier barrier = new CyclicBarrier(2);
+
+		private final BeanTypeDesc<T> type;
+
+		public MutualExtension(BeanTypeDesc<T> type) throws Exception {
+			this.type = type;
+			if (this.isValid()) {
+				barrier.await(5, TimeUnit.SECONDS);
+				Class<?> other = type.getType() == Left.class ? Right.class : Left.class;
+				assertNotNull(JavaTypeRegistry.getType(other));
+			}
+		}
+
+		@Override
+		public boolean isValid() {
+			return this.type.getType() == Left.class || this.type.getType() == Right.class;
+		}
+
+		@Override
+		public BeanTypeDesc<T> getBeanType() {
+			return this.type;
+		}
+
+		@Override
+		public void initialize() {
+		}
+	}
+
+	public static class Left {
+		public Right right;
+	}
+
+	public static class Right {
+		public Left left;
+	}
+
+	// Class literals of the generic extensions are raw
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static <T> IBeanTypeExtension<T> extension(JavaTypeDesc<T> type, Class<? extends IBeanTypeExtension> extensionType) {
+		return type.getExtension((Class<IBeanTypeExtension<T>>) extensionType);
+	}
+
+	public static class A {}
+	public static class B {}
+	public static class C {}
+	public static class D {}
+	public static class Late {}
+
+	@Test
+	public void extensionIsCreatedOncePerType() throws Exception {
+		JavaTypeRegistry.registerExtension(CountingExtension.class);
+		Class<?>[] types = {A.class, B.class, C.class, D.class};
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Thread w = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					for (Class<?> type : types) {
+						JavaTypeDesc<?> desc = JavaTypeRegistry.getType(type);
+						assertNotNull(extension(desc, CountingExtension.class));
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			w.start();
+			workers.add(w);
+		}
+		start.countDown();
+		for (Thread w : workers) {
+			w.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		for (Class<?> type : types) {
+			assertEquals(type.getName(), 1, CountingExtension.created.get(type).get());
+			assertEquals(type.getName(), 1, CountingExtension.initialized.get(type).get());
+		}
+	}
+
+	@Test
+	public void lateExtensionIsInitialized() {
+		JavaTypeDesc<?> type = JavaTypeRegistry.getType(Late.class);
+		((BeanTypeDesc<?>) type).getDeclaredProperties();
+		assertTrue(type.isInitialized());
+
+		JavaTypeRegistry.registerExtension(LateExtension.class);
+		LateExtension<?> ext = (LateExtension<?>) extension(type, LateExtension.class);
+		assertNotNull(ext);
+		assertTrue(ext.initialized);
+	}
+
+	@Test
+	public void mutuallyReferencingTypesAreExtendedInParallel() throws Exception {
+		JavaTypeRegistry.registerExtension(MutualExtension.class);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> workers = new ArrayList<>();
+		for (Class<?> type : new Class<?>[] {Left.class, Right.class}) {
+			Thread w = new Thread(() -> {
+				try {
+					assertNotNull(extension(JavaTypeRegistry.getType(type), MutualExtension.class));
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			// Don't keep the tests running if the threads deadlock
+			w.setDaemon(true);
+			w.start();
+			workers.add(w);
+		}
+		for (Thread w : workers) {
+			w.join(10000);
+			assertFalse("deadlocked", w.isAlive());
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package net.inveed.commons.reflection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import net.inveed.commons.reflection.annotation.PropertyAccessors;
+
+public class PrimitivePropertyAccessTest {
+	public static class Bean {
+		private int count;
+		private short small;
+		private Integer boxed;
+		private Number number;
+		private boolean flag;
+		private double ratio;
+
+		public int getCount() {
+			return this.count;
+		}
+
+		public void setCount(int count) {
+			this.count = count;
+		}
+
+		public short getSmall() {
+			return this.small;
+		}
+
+		public void setSmall(short small) {
+			this.small = small;
+		}
+
+		public Integer getBoxed() {
+			return this.boxed;
+		}
+
+		public void setBoxed(Integer boxed) {
+			this.boxed = boxed;
+		}
+
+		public Number getNumber() {
+			return this.number;
+		}
+
+		public void setNumber(Number number) {
+			this.number = number;
+		}
+
+		public boolean isFlag() {
+			return this.flag;
+		}
+
+		public void setFlag(boolean flag) {
+			this.flag = flag;
+		}
+
+		public double getRatio() {
+			return this.ratio;
+		}
+
+		public void setRatio(double ratio) {
+			this.ratio = ratio;
+		}
+	}
+
+	// Not public, accessed through method handles
+	@PropertyAccessors(minimumGetterAccessLevel = AccessLevel.DEFAULT, minimumSetterAccessLevel = AccessLevel.DEFAULT)
+	static class HiddenBean {
+		private long size;
+
+		long getSize() {
+			return this.size;
+		}
+
+		void setSize(long size) {
+			this.size = size;
+		}
+	}
+
+	// Accessors are not public, fields are used instead
+	@PropertyAccessors(minimumFieldAccessLevel = AccessLevel.PRIVATE)
+	public static class FieldBean {
+		private double ratio;
+		private final long total;
+		private Boolean flag;
+
+		public FieldBean() {
+			this.total = 11;
+		}
+
+		double getRatio() {
+			return this.ratio;
+		}
+
+		void setRatio(double ratio) {
+			this.ratio = ratio;
+		}
+
+		long getTotal() {
+			return this.total;
+		}
+
+		Boolean getFlag() {
+			return this.flag;
+		}
+	}
+
+	private static BeanPropertyDesc property(Class<?> type, String name) {
+		return ((BeanTypeDesc<?>) JavaTypeRegistry.getType(type)).getProperty(name);
+	}
+
+	@Test
+	public void primitiveRoundTrip() throws Exception {
+		Bean bean = new Bean();
+		assertTrue(property(Bean.class, "count").setInt(bean, 42));
+		assertEquals(42, property(Bean.class, "count").getInt(bean));
+		assertTrue(property(Bean.class, "flag").setBoolean(bean, true));
+		assertTrue(property(Bean.class, "flag").getBoolean(bean));
+		assertTrue(property(Bean.class, "ratio").setDouble(bean, 0.5));
+		assertEquals(0.5, property(Bean.class, "ratio").getDouble(bean), 0);
+	}
+
+	@Test
+	public void wideningConversions() throws Exception {
+		Bean bean = new Bean();
+		bean.setSmall((short) 7);
+		assertEquals(7, property(Bean.class, "small").getInt(bean));
+		assertEquals(7L, property(Bean.class, "small").getLong(bean));
+		assertEquals(7.0, property(Bean.class, "small").getDouble(bean), 0);
+		assertTrue(property(Bean.class, "ratio").setInt(bean, 3));
+		assertEquals(3.0, bean.getRatio(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void narrowingIsRejected() throws Exception {
+		property(Bean.class, "count").setLong(new Bean(), 1L);
+	}
+
+	@Test
+	public void wrapperProperty() throws Exception {
+		Bean bean = new Bean();
+		assertTrue(property(Bean.class, "boxed").setInt(bean, 5));
+		assertEquals(Integer.valueOf(5), bean.getBoxed());
+		assertEquals(5, property(Bean.class, "boxed").getInt(bean));
+
+		assertTrue(property(Bean.class, "number").setLong(bean, 6L));
+		assertEquals(Long.valueOf(6), bean.getNumber());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullWrapperValueIsRejected() throws Exception {
+		property(Bean.class, "boxed").getInt(new Bean());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void supertypeOfWrapperCannotBeRead() throws Exception {
+		Bean bean = new Bean();
+		bean.setNumber(1);
+		property(Bean.class, "number").getInt(bean);
+	}
+
+	@Test
+	public void nonPublicAccessors() throws Exception {
+		HiddenBean bean = new HiddenBean();
+		BeanPropertyDesc size = property(HiddenBean.class, "size");
+		assertTrue(size.setInt(bean, 9));
+		assertEquals(9L, size.getLong(bean));
+		assertEquals(9.0, size.getDouble(bean), 0);
+		assertFalse(size.setInt(new Bean(), 1));
+	}
+
+	@Test
+	public void fields() throws Exception {
+		FieldBean bean = new FieldBean();
+		BeanPropertyDesc ratio = property(FieldBean.class, "ratio");
+		assertTrue(ratio.setLong(bean, 2L));
+		assertEquals(2.0, ratio.getDouble(bean), 0);
+		BeanPropertyDesc total = property(FieldBean.class, "total");
+		assertEquals(11L, total.getLong(bean));
+		assertTrue(total.setInt(bean, 12));
+		assertEquals(12L, total.getLong(bean));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullWrapperFieldIsRejected() throws Exception {
+		property(FieldBean.class, "flag").getBoolean(new FieldBean());
+	}
+}